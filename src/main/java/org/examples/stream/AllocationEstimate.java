@@ -0,0 +1,54 @@
+package org.examples.stream;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Rough count of objects a piece of code allocates: a fixed part, a part per element processed and a part per distinct key
+ * (for grouping). The numbers come from the structure of the JDK stream implementation, not from measurements.
+ */
+public final class AllocationEstimate {
+  public static final AllocationEstimate NONE = new AllocationEstimate(0, 0, 0);
+
+  public final int fixed;
+  public final int perElement;
+  public final int perKey;
+
+  public AllocationEstimate(int fixed, int perElement, int perKey) {
+    this.fixed = fixed;
+    this.perElement = perElement;
+    this.perKey = perKey;
+  }
+
+  @NotNull
+  public AllocationEstimate plus(int fixed, int perElement, int perKey) {
+    return new AllocationEstimate(this.fixed + fixed, this.perElement + perElement, this.perKey + perKey);
+  }
+
+  @NotNull
+  public AllocationEstimate plus(@NotNull AllocationEstimate other) {
+    return plus(other.fixed, other.perElement, other.perKey);
+  }
+
+  @NotNull
+  public AllocationEstimate minus(@NotNull AllocationEstimate other) {
+    return plus(-other.fixed, -other.perElement, -other.perKey);
+  }
+
+  /**
+   * @return e.g. "7 + 2n + k" where n is the number of elements and k the number of keys
+   */
+  @Override
+  public String toString() {
+    StringBuilder result = new StringBuilder().append(fixed);
+    appendTerm(result, perElement, "n");
+    appendTerm(result, perKey, "k");
+    return result.toString();
+  }
+
+  private static void appendTerm(@NotNull StringBuilder result, int factor, @NotNull String variable) {
+    if (factor == 0) return;
+    result.append(factor > 0 ? " + " : " - ");
+    if (Math.abs(factor) != 1) result.append(Math.abs(factor));
+    result.append(variable);
+  }
+}
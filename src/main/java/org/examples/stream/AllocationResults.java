@@ -0,0 +1,113 @@
+package org.examples.stream;
+
+import com.intellij.openapi.components.Service;
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.util.text.StringUtil;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Bytes allocated per pipeline run, measured by {@link MeasureStreamAllocationAction}, shown on the example pages below the
+ * code. Examples of methods having both a boxed and a primitive variant, e.g. {@code map} and {@code mapToInt}, are measured
+ * in both variants, so the allocation cost is visible where the API is chosen.
+ * <p>
+ * Results are kept for the IDE session only, they depend on the JDK and the JVM options of the project.
+ */
+@Service
+public final class AllocationResults {
+  /**
+   * Number of elements the pipelines are measured on
+   */
+  static final int SIZE = 10_000;
+
+  /**
+   * Measured pipeline, labeled with its text
+   */
+  static final class Row {
+    final String myLabel;
+    final long myBytes;
+
+    Row(@NotNull String label, long bytes) {
+      myLabel = label;
+      myBytes = bytes;
+    }
+  }
+
+  /*
+   * Operations applied to a stream of integers, boxed variant first
+   */
+  private static final List<String> MAP_VARIANTS = List.of(
+    ".map(x -> x * 2).reduce(0, Integer::sum)",
+    ".mapToInt(x -> x * 2).sum()"
+  );
+  private static final List<String> FLAT_MAP_VARIANTS = List.of(
+    ".flatMap(x -> Stream.of(x, x + 1)).reduce(0, Integer::sum)",
+    ".flatMapToInt(x -> IntStream.of(x, x + 1)).sum()"
+  );
+  private static final List<String> FILTER_VARIANTS = List.of(
+    ".filter(x -> x % 2 == 0).map(x -> x * 2).reduce(0, Integer::sum)",
+    ".mapToInt(Integer::intValue).filter(x -> x % 2 == 0).map(x -> x * 2).sum()"
+  );
+  private static final Map<String, List<String>> VARIANTS = Map.of(
+    "java.util.stream.Stream.map1", MAP_VARIANTS,
+    "java.util.stream.Stream.mapToInt1", MAP_VARIANTS,
+    "java.util.stream.Stream.flatMap1", FLAT_MAP_VARIANTS,
+    "java.util.stream.Stream.filter1", FILTER_VARIANTS
+  );
+
+  private final Map<String, List<Row>> myRows = new ConcurrentHashMap<>();
+
+  public static AllocationResults getInstance() {
+    return ServiceManager.getService(AllocationResults.class);
+  }
+
+  /**
+   * @return operations of the boxed and primitive variants measured for the example, empty if the example has none
+   */
+  @NotNull
+  static List<String> getVariants(@NotNull String exampleKey) {
+    return VARIANTS.getOrDefault(exampleKey, Collections.emptyList());
+  }
+
+  /**
+   * Replaces the rows shown for the example, rows with the labels of the new ones are replaced
+   */
+  public void record(@NotNull String exampleKey, @NotNull List<Row> rows) {
+    myRows.compute(exampleKey, (key, previous) -> {
+      List<Row> result = new ArrayList<>();
+      if (previous != null) {
+        for (Row row : previous) {
+          if (rows.stream().noneMatch(added -> added.myLabel.equals(row.myLabel))) result.add(row);
+        }
+      }
+      result.addAll(rows);
+      return Collections.unmodifiableList(result);
+    });
+  }
+
+  /**
+   * @return the example with a table of the measured allocations appended to its body, or the example if nothing is measured
+   */
+  @NotNull
+  public String appendResults(@NotNull String example, @NotNull String exampleKey) {
+    List<Row> rows = myRows.get(exampleKey);
+    if (rows == null || rows.isEmpty()) return example;
+
+    StringBuilder table = new StringBuilder("<div class='content'><p><b>Allocation per operation</b> on ")
+      .append(SIZE).append(" integers, measured in a forked JVM.<table>");
+    for (Row row : rows) {
+      table.append("<tr><td><code>").append(StringUtil.escapeXmlEntities(row.myLabel)).append("</code></td>")
+        .append("<td align='right'>").append(StringUtil.formatFileSize(row.myBytes)).append("</td>")
+        .append("<td align='right'>").append(String.format("%.1f B/element", (double)row.myBytes / SIZE)).append("</td></tr>");
+    }
+    table.append("</table></div>");
+
+    int bodyEnd = StringUtil.indexOfIgnoreCase(example, "</body>", 0);
+    return bodyEnd < 0 ? example + table : example.substring(0, bodyEnd) + table + example.substring(bodyEnd);
+  }
+}
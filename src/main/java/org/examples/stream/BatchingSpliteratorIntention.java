@@ -0,0 +1,202 @@
+package org.examples.stream;
+
+import com.intellij.codeInsight.intention.PsiElementBaseIntentionAction;
+import com.intellij.openapi.editor.Editor;
+import com.intellij.openapi.project.Project;
+import com.intellij.psi.*;
+import com.intellij.psi.codeStyle.JavaCodeStyleManager;
+import com.intellij.psi.util.PsiTreeUtil;
+import com.intellij.psi.util.PsiUtil;
+import org.jetbrains.annotations.NonNls;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Wraps the iterator behind the source of a parallel stream with a spliterator splitting off batches of a fixed size.
+ * <p>
+ * Iterator backed spliterators split off array batches growing by 1024 elements, so a parallel pipeline over a few thousand
+ * elements runs in two or three tasks, the first of them much smaller than the last. Fixed batches give parts of equal sizes,
+ * which pays off when the work per element is large. The generated {@code BatchingSpliterator} class is added to the top level
+ * class once and reused by the later wraps.
+ * <p>
+ * Sources which are streams themselves, like {@code Files.lines()}, are wrapped with {@code BatchingSpliterator.of()}, which
+ * closes them when the new stream is closed, so a try-with-resources around the pipeline still releases the file.
+ */
+public class BatchingSpliteratorIntention extends PsiElementBaseIntentionAction {
+  private static final @NonNls String CLASS_NAME = "BatchingSpliterator";
+  private static final int BATCH_SIZE = 1024;
+  private static final @NonNls String METHOD_NAME = "of";
+  private static final @NonNls String METHOD_TEXT =
+    "  /**\n" +
+    "   * Batches the elements of a stream backed by an iterator, closing the result closes the source, e.g. the file of Files.lines().\n" +
+    "   */\n" +
+    "  static <T> java.util.stream.Stream<T> " + METHOD_NAME + "(java.util.stream.Stream<T> source, int batchSize) {\n" +
+    "    return java.util.stream.StreamSupport.stream(new " + CLASS_NAME + "<>(source.iterator(), batchSize, ORDERED), source.isParallel())\n" +
+    "      .onClose(source::close);\n" +
+    "  }\n";
+  private static final @NonNls String CLASS_TEXT =
+    "/**\n" +
+    " * Splits off batches of a fixed size from an iterator, so that a parallel stream over it gets parts of equal sizes.\n" +
+    " */\n" +
+    "static final class " + CLASS_NAME + "<T> implements java.util.Spliterator<T> {\n" +
+    "  private final java.util.Iterator<? extends T> iterator;\n" +
+    "  private final int batchSize;\n" +
+    "  private final int characteristics;\n" +
+    "\n" +
+    "  " + CLASS_NAME + "(java.util.Iterator<? extends T> iterator, int batchSize, int characteristics) {\n" +
+    "    this.iterator = iterator;\n" +
+    "    this.batchSize = batchSize;\n" +
+    "    this.characteristics = characteristics & ~(SIZED | SUBSIZED | SORTED);\n" +
+    "  }\n" +
+    "\n" +
+    METHOD_TEXT +
+    "\n" +
+    "  @Override\n" +
+    "  public boolean tryAdvance(java.util.function.Consumer<? super T> action) {\n" +
+    "    if (!iterator.hasNext()) return false;\n" +
+    "    action.accept(iterator.next());\n" +
+    "    return true;\n" +
+    "  }\n" +
+    "\n" +
+    "  @Override\n" +
+    "  public void forEachRemaining(java.util.function.Consumer<? super T> action) {\n" +
+    "    iterator.forEachRemaining(action);\n" +
+    "  }\n" +
+    "\n" +
+    "  @Override\n" +
+    "  public java.util.Spliterator<T> trySplit() {\n" +
+    "    Object[] batch = new Object[batchSize];\n" +
+    "    int size = 0;\n" +
+    "    while (size < batchSize && iterator.hasNext()) {\n" +
+    "      batch[size++] = iterator.next();\n" +
+    "    }\n" +
+    "    return size == 0 ? null : java.util.Spliterators.spliterator(batch, 0, size, characteristics);\n" +
+    "  }\n" +
+    "\n" +
+    "  @Override\n" +
+    "  public long estimateSize() {\n" +
+    "    return Long.MAX_VALUE;\n" +
+    "  }\n" +
+    "\n" +
+    "  @Override\n" +
+    "  public int characteristics() {\n" +
+    "    return characteristics;\n" +
+    "  }\n" +
+    "}";
+
+  @NotNull
+  @Override
+  public String getFamilyName() {
+    return "Split stream source in fixed size batches";
+  }
+
+  @NotNull
+  @Override
+  public String getText() {
+    return getFamilyName();
+  }
+
+  @Override
+  public boolean isAvailable(@NotNull Project project, Editor editor, @NotNull PsiElement element) {
+    return getSource(element) != null && PsiTreeUtil.getTopmostParentOfType(element, PsiClass.class) != null;
+  }
+
+  @Override
+  public void invoke(@NotNull Project project, Editor editor, @NotNull PsiElement element) {
+    PsiExpression source = getSource(element);
+    PsiClass topClass = PsiTreeUtil.getTopmostParentOfType(element, PsiClass.class);
+    if (source == null || topClass == null) return;
+    PsiElementFactory factory = JavaPsiFacade.getElementFactory(project);
+    JavaCodeStyleManager styleManager = JavaCodeStyleManager.getInstance(project);
+    PsiClass existing = topClass.findInnerClassByName(CLASS_NAME, false);
+    if (existing == null) {
+      PsiClass generated = factory.createClassFromText(CLASS_TEXT, topClass).getInnerClasses()[0];
+      styleManager.shortenClassReferences(topClass.add(generated));
+    }
+    else if (existing.findMethodsByName(METHOD_NAME, false).length == 0) {
+      // generated by an earlier version
+      styleManager.shortenClassReferences(existing.add(factory.createMethodFromText(METHOD_TEXT, existing)));
+    }
+
+    PsiExpression spliterator = getSpliteratorArgument(source);
+    if (spliterator != null) {
+      styleManager.shortenClassReferences(spliterator.replace(factory.createExpressionFromText(getWrapText(spliterator), spliterator)));
+      return;
+    }
+    String collection = getCollectionText(source);
+    String text;
+    if (collection != null) {
+      boolean parallel = "parallelStream".equals(StreamChain.getName((PsiMethodCallExpression)source));
+      text = StreamChain.STREAM_SUPPORT + ".stream(new " + CLASS_NAME + "<>(" + collection + ".iterator(), " + BATCH_SIZE + ", " +
+             "java.util.Spliterator.ORDERED), " + parallel + ")";
+    }
+    else {
+      text = CLASS_NAME + "." + METHOD_NAME + "(" + source.getText() + ", " + BATCH_SIZE + ")";
+    }
+    styleManager.shortenClassReferences(source.replace(factory.createExpressionFromText(text, source)));
+  }
+
+  /**
+   * @return iterator backed source of the parallel stream which call name is the element
+   */
+  @Nullable
+  private static PsiExpression getSource(@NotNull PsiElement element) {
+    StreamChain chain = StreamChain.atIdentifier(element);
+    if (chain == null || !chain.isParallel()) return null;
+    PsiExpression source = chain.getSource();
+    return ParallelStreamSourceInspection.isIteratorBacked(source) ? source : null;
+  }
+
+  /**
+   * @return the spliterator argument of {@code StreamSupport.stream(spliterator, parallel)}, if it can be wrapped in place
+   */
+  @Nullable
+  private static PsiExpression getSpliteratorArgument(@NotNull PsiExpression source) {
+    if (!(source instanceof PsiMethodCallExpression)) return null;
+    PsiMethodCallExpression call = (PsiMethodCallExpression)source;
+    if (!StreamChain.STREAM_SUPPORT.equals(StreamChain.getClassName(call))) return null;
+    PsiExpression[] arguments = call.getArgumentList().getExpressions();
+    if (arguments.length != 2) return null;
+    PsiExpression spliterator = PsiUtil.skipParenthesizedExprDown(arguments[0]);
+    return spliterator instanceof PsiMethodCallExpression ? spliterator : null;
+  }
+
+  /**
+   * @return {@code new BatchingSpliterator<>(...)} for {@code Spliterators.spliteratorUnknownSize(iterator, characteristics)}
+   * or {@code iterable.spliterator()}, which keeps the characteristics of the iterable spliterator, e.g. ORDERED of a list.
+   * They are asked from the iterable if that doesn't evaluate the qualifier twice, otherwise the iteration order is kept.
+   */
+  @NotNull
+  private static String getWrapText(@NotNull PsiExpression spliterator) {
+    PsiMethodCallExpression call = (PsiMethodCallExpression)spliterator;
+    PsiExpression[] arguments = call.getArgumentList().getExpressions();
+    if ("spliteratorUnknownSize".equals(StreamChain.getName(call)) && arguments.length == 2) {
+      return "new " + CLASS_NAME + "<>(" + arguments[0].getText() + ", " + BATCH_SIZE + ", " + arguments[1].getText() + ")";
+    }
+    PsiExpression qualifier = call.getMethodExpression().getQualifierExpression();
+    String iterable = qualifier != null ? qualifier.getText() + "." : "";
+    PsiExpression stripped = PsiUtil.skipParenthesizedExprDown(qualifier);
+    String characteristics = stripped == null || stripped instanceof PsiReferenceExpression || stripped instanceof PsiThisExpression
+                             ? iterable + "spliterator().characteristics()"
+                             : "java.util.Spliterator.ORDERED";
+    return "new " + CLASS_NAME + "<>(" + iterable + "iterator(), " + BATCH_SIZE + ", " + characteristics + ")";
+  }
+
+  /**
+   * @return the collection a stream is created from, or null if the source is a stream of its own, e.g. {@code Files.lines()}
+   */
+  @Nullable
+  private static String getCollectionText(@NotNull PsiExpression source) {
+    if (source instanceof PsiMethodCallExpression) {
+      PsiMethodCallExpression call = (PsiMethodCallExpression)source;
+      PsiExpression qualifier = call.getMethodExpression().getQualifierExpression();
+      String name = StreamChain.getName(call);
+      if (qualifier != null && ("stream".equals(name) || "parallelStream".equals(name)) &&
+          call.getArgumentList().getExpressionCount() == 0 &&
+          !StreamChain.STREAM_SUPPORT.equals(StreamChain.getClassName(call))) {
+        return qualifier.getText();
+      }
+    }
+    return null;
+  }
+}
@@ -1,6 +1,13 @@
 package org.examples.stream;
 
+import com.intellij.psi.PsiClass;
+import com.intellij.psi.PsiMethod;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
 import java.util.HashMap;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 public class CodeExamples {
     //will not properly work with ... parameters
@@ -19,4 +26,28 @@ public class CodeExamples {
             put("java.util.stream.Stream.mapToInt1", "/examples/Stream/Stream.mapToInt1.html");
         }
     };
+
+    /**
+     * Names of all methods having examples, e.g. "map" for "java.util.stream.Stream.map1"
+     */
+    public static final Set<String> methodNames = classToFileMap.keySet().stream()
+            .map(CodeExamples::getMethodName)
+            .collect(Collectors.toUnmodifiableSet());
+
+    /**
+     * @return key of {@link #classToFileMap} for the method, it's not checked if there is an example for the key
+     */
+    @Nullable
+    public static String getExampleKey(@NotNull PsiMethod method) {
+        final PsiClass psiClass = method.getContainingClass();
+        if (psiClass == null) return null;
+        return psiClass.getQualifiedName() + "." + method.getName() + method.getParameterList().getParametersCount();
+    }
+
+    @NotNull
+    public static String getMethodName(@NotNull String exampleKey) {
+        int end = exampleKey.length();
+        while (end > 0 && Character.isDigit(exampleKey.charAt(end - 1))) end--;
+        return exampleKey.substring(exampleKey.lastIndexOf('.', end) + 1, end);
+    }
 }
@@ -67,6 +67,20 @@ public abstract class DockablePopupManager<T extends JComponent & Disposable> {
 
   protected abstract void doUpdateComponent(@NotNull PsiElement element);
 
+  /**
+   * Called on auto-update from source, by default it's the same as a regular update.
+   */
+  protected void doAutoUpdateComponent(Editor editor, PsiFile psiFile) {
+    doUpdateComponent(editor, psiFile, false);
+  }
+
+  /**
+   * Called on auto-update from source, by default it's the same as a regular update.
+   */
+  protected void doAutoUpdateComponent(@NotNull PsiElement element) {
+    doUpdateComponent(element);
+  }
+
   protected abstract @NlsContexts.TabTitle String getTitle(PsiElement element);
 
   protected abstract String getToolWindowId();
@@ -103,7 +117,10 @@ public abstract class DockablePopupManager<T extends JComponent & Disposable> {
     contentManager.addContentManagerListener(new ContentManagerListener() {
       @Override
       public void contentRemoved(@NotNull ContentManagerEvent event) {
-        restorePopupBehavior();
+        // other tabs, e.g. the profiling results added by showContent(), don't switch back to the popup
+        if (event.getContent().getComponent() == component) {
+          restorePopupBehavior();
+        }
       }
     });
 
@@ -133,6 +150,34 @@ public abstract class DockablePopupManager<T extends JComponent & Disposable> {
     }
   }
 
+  /**
+   * Shows the component in a closable tab of the tool window, replacing the tab with the same title. The tool window is
+   * registered if it's not shown yet, the popup behavior is not changed.
+   */
+  public void showContent(@NotNull JComponent component, @NotNull @NlsContexts.TabTitle String title) {
+    ToolWindowManager toolWindowManager = ToolWindowManager.getInstance(myProject);
+    ToolWindow toolWindow = toolWindowManager.getToolWindow(getToolWindowId());
+    if (toolWindow == null) {
+      toolWindow = toolWindowManager
+        .registerToolWindow(RegisterToolWindowTask.closable(getToolWindowId(), AllIcons.Toolwindows.Documentation, ToolWindowAnchor.RIGHT));
+      setToolWindowDefaultState(toolWindow);
+    }
+    else {
+      toolWindow.setAvailable(true);
+    }
+
+    ContentManager contentManager = toolWindow.getContentManager();
+    Content previous = contentManager.findContent(title);
+    if (previous != null) {
+      contentManager.removeContent(previous, true);
+    }
+    Content content = ContentFactory.SERVICE.getInstance().createContent(component, title, false);
+    content.setCloseable(true);
+    contentManager.addContent(content);
+    contentManager.setSelectedContent(content);
+    toolWindow.show(null);
+  }
+
   protected abstract void installComponentActions(@NotNull ToolWindow toolWindow, T component);
 
   protected abstract void setToolWindowDefaultState(@NotNull ToolWindow toolWindow);
@@ -168,7 +213,7 @@ public abstract class DockablePopupManager<T extends JComponent & Disposable> {
     boolean enabled = state && myToolWindow != null;
     if (enabled) {
       if (myAutoUpdateRequest == null) {
-        myAutoUpdateRequest = () -> updateComponent(false);
+        myAutoUpdateRequest = () -> updateComponent(false, true);
 
         UIUtil.invokeLaterIfNeeded(() -> IdeEventQueue.getInstance().addIdleListener(myAutoUpdateRequest, 500));
       }
@@ -182,6 +227,10 @@ public abstract class DockablePopupManager<T extends JComponent & Disposable> {
   }
 
   protected void updateComponent(boolean requestFocus) {
+    updateComponent(requestFocus, false);
+  }
+
+  private void updateComponent(boolean requestFocus, boolean autoUpdate) {
     if (myProject.isDisposed()) {
       return;
     }
@@ -190,11 +239,11 @@ public abstract class DockablePopupManager<T extends JComponent & Disposable> {
       .getDataContextFromFocusAsync()
       .onSuccess(dataContext -> {
         if (!myProject.isOpen()) return;
-        updateComponentInner(dataContext, requestFocus);
+        updateComponentInner(dataContext, requestFocus, autoUpdate);
       });
   }
 
-  private void updateComponentInner(@NotNull DataContext dataContext, boolean requestFocus) {
+  private void updateComponentInner(@NotNull DataContext dataContext, boolean requestFocus, boolean autoUpdate) {
     if (CommonDataKeys.PROJECT.getData(dataContext) != myProject) {
       return;
     }
@@ -203,7 +252,12 @@ public abstract class DockablePopupManager<T extends JComponent & Disposable> {
     if (editor == null) {
       PsiElement element = CommonDataKeys.PSI_ELEMENT.getData(dataContext);
       if (element != null) {
-        doUpdateComponent(element);
+        if (autoUpdate) {
+          doAutoUpdateComponent(element);
+        }
+        else {
+          doUpdateComponent(element);
+        }
       }
       return;
     }
@@ -217,13 +271,22 @@ public abstract class DockablePopupManager<T extends JComponent & Disposable> {
       Editor injectedEditor = InjectedLanguageUtil.getEditorForInjectedLanguageNoCommit(editor, file);
       PsiFile injectedFile = PsiUtilBase.getPsiFileInEditor(injectedEditor, myProject);
       if (injectedFile != null) {
-        doUpdateComponent(injectedEditor, injectedFile, requestFocus);
+        updateComponent(injectedEditor, injectedFile, requestFocus, autoUpdate);
       }
       else if (file != null) {
-        doUpdateComponent(editor, file, requestFocus);
+        updateComponent(editor, file, requestFocus, autoUpdate);
       }
     });
   }
 
+  private void updateComponent(@NotNull Editor editor, @NotNull PsiFile file, boolean requestFocus, boolean autoUpdate) {
+    if (autoUpdate) {
+      doAutoUpdateComponent(editor, file);
+    }
+    else {
+      doUpdateComponent(editor, file, requestFocus);
+    }
+  }
+
   public abstract void restorePopupBehavior();
 }
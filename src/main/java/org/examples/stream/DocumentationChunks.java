@@ -0,0 +1,117 @@
+package org.examples.stream;
+
+import com.intellij.lang.documentation.DocumentationMarkup;
+import com.intellij.openapi.util.text.StringUtil;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits decorated example html for progressive rendering.
+ * <p>
+ * The first chunk is a complete document holding the definition, the beginning of the content up to
+ * the first code block and everything following the content div. The remaining chunks are fragments
+ * which are meant to be appended to the end of the content div one by one.
+ */
+final class DocumentationChunks {
+  static final int MIN_CHUNK_LENGTH = 2048;
+
+  private static final String CONTENT_ONLY_START = "<div class='content-only'>";
+  private static final String[] FIRST_CODE_BLOCK_END = {"</pre>"};
+  private static final String[] BLOCK_ENDS = {"</pre>", "</table>", "</ul>", "</ol>", "</p>"};
+  private static final String[] NESTED_STARTS = {"<pre", "<table", "<ul", "<ol", "<div"};
+  private static final String[] NESTED_ENDS = {"</pre>", "</table>", "</ul>", "</ol>", "</div>"};
+
+  private DocumentationChunks() {
+  }
+
+  @NotNull
+  static List<String> split(@NotNull String html) {
+    List<String> chunks = new ArrayList<>();
+    int contentStart = StringUtil.indexOfIgnoreCase(html, DocumentationMarkup.CONTENT_START, 0);
+    int contentStartLength = DocumentationMarkup.CONTENT_START.length();
+    if (contentStart < 0) {
+      contentStart = StringUtil.indexOfIgnoreCase(html, CONTENT_ONLY_START, 0);
+      contentStartLength = CONTENT_ONLY_START.length();
+    }
+    int bodyStart = contentStart + contentStartLength;
+    int contentEnd = contentStart < 0 ? -1 : findContentEnd(html, bodyStart);
+    int headEnd = contentEnd < 0 ? -1 : nextBoundary(html, bodyStart, contentEnd, 0, FIRST_CODE_BLOCK_END);
+    if (headEnd < 0 || headEnd >= contentEnd) {
+      chunks.add(html);
+      return chunks;
+    }
+
+    chunks.add(html.substring(0, headEnd) + html.substring(contentEnd));
+    int start = headEnd;
+    while (start < contentEnd) {
+      int end = nextBoundary(html, start, contentEnd, MIN_CHUNK_LENGTH, BLOCK_ENDS);
+      if (end < 0) end = contentEnd;
+      if (!StringUtil.isEmptyOrSpaces(html.substring(start, end))) {
+        chunks.add(html.substring(start, end));
+      }
+      start = end;
+    }
+    return chunks;
+  }
+
+  /**
+   * @return offset of the {@code </div>} closing the content div opened before {@code from}, or -1
+   */
+  private static int findContentEnd(@NotNull String html, int from) {
+    int depth = 0;
+    int offset = from;
+    while (offset < html.length()) {
+      int open = StringUtil.indexOfIgnoreCase(html, "<div", offset);
+      int close = StringUtil.indexOfIgnoreCase(html, "</div>", offset);
+      if (close < 0) return -1;
+      if (open >= 0 && open < close) {
+        depth++;
+        offset = open + 4;
+      }
+      else if (depth == 0) {
+        return close;
+      }
+      else {
+        depth--;
+        offset = close + 6;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * @return offset right after the first top-level one of {@code blockEnds} which is at least {@code minLength} chars away from {@code from},
+   * or -1 if there is no such block end before {@code limit}
+   */
+  private static int nextBoundary(@NotNull String html, int from, int limit, int minLength, String @NotNull [] blockEnds) {
+    int depth = 0;
+    for (int i = from; i < limit; i++) {
+      if (html.charAt(i) != '<') continue;
+      if (html.startsWith("</", i)) {
+        if (depth > 0 && startsWithAny(html, i, NESTED_ENDS)) depth--;
+        if (depth == 0) {
+          for (String blockEnd : blockEnds) {
+            if (html.regionMatches(true, i, blockEnd, 0, blockEnd.length())) {
+              int end = i + blockEnd.length();
+              if (end - from >= minLength) return end;
+              break;
+            }
+          }
+        }
+      }
+      else if (startsWithAny(html, i, NESTED_STARTS)) {
+        depth++;
+      }
+    }
+    return -1;
+  }
+
+  private static boolean startsWithAny(@NotNull String html, int offset, String @NotNull [] prefixes) {
+    for (String prefix : prefixes) {
+      if (html.regionMatches(true, offset, prefix, 0, prefix.length())) return true;
+    }
+    return false;
+  }
+}
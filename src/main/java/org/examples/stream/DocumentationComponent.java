@@ -9,7 +9,6 @@ import com.intellij.icons.AllIcons;
 import com.intellij.ide.DataManager;
 import com.intellij.ide.actions.WindowAction;
 import com.intellij.ide.util.PropertiesComponent;
-import com.intellij.lang.documentation.DocumentationMarkup;
 import com.intellij.openapi.Disposable;
 import com.intellij.openapi.actionSystem.*;
 import com.intellij.openapi.actionSystem.ex.AnActionListener;
@@ -17,6 +16,7 @@ import com.intellij.openapi.actionSystem.impl.ActionButton;
 import com.intellij.openapi.actionSystem.impl.ActionManagerImpl;
 import com.intellij.openapi.actionSystem.impl.ActionToolbarImpl;
 import com.intellij.openapi.actionSystem.impl.MenuItemPresentationFactory;
+import com.intellij.openapi.application.AccessToken;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.editor.colors.ColorKey;
@@ -72,11 +72,11 @@ import javax.swing.text.html.HTMLDocument;
 import javax.swing.text.html.HTMLEditorKit;
 import java.awt.*;
 import java.awt.event.*;
+import java.io.IOException;
 import java.lang.ref.Reference;
 import java.lang.ref.WeakReference;
 import java.util.List;
 import java.util.*;
-import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 public class DocumentationComponent extends JPanel implements Disposable, DataProvider, WidthBasedLayout {
@@ -93,9 +93,6 @@ public class DocumentationComponent extends JPanel implements Disposable, DataPr
   private static final JBDimension MAX_DEFAULT = new JBDimension(650, 500);
   private static final JBDimension MIN_DEFAULT = new JBDimension(300, 36);
 
-  private static final Pattern EXTERNAL_LINK_PATTERN = Pattern.compile("(<a\\s*href=[\"']http[^>]*>)([^>]*)(</a>)");
-  private static final @NonNls String EXTERNAL_LINK_REPLACEMENT = "$1$2<icon src='AllIcons.Ide.External_link_arrow'>$3";
-
   private DocumentationManager myManager;
   private SmartPsiElementPointer<PsiElement> myElement;
   private long myModificationCount;
@@ -112,13 +109,17 @@ public class DocumentationComponent extends JPanel implements Disposable, DataPr
   private Runnable myToolWindowCallback;
   private final ActionButton myCorner;
 
+  private final DocumentationDecorator myDecorator = new DocumentationDecorator();
   private final MyScrollPane myScrollPane;
   private final JEditorPane myEditorPane;
   private @Nls String myText; // myEditorPane.getText() surprisingly crashes.., let's cache the text
   private @Nls String myDecoratedText; // myEditorPane.getText() surprisingly crashes.., let's cache the text
   private final JComponent myControlPanel;
   private int myHighlightedLink = -1;
+  private int myRenderGeneration;
+  private boolean myRenderingChunks;
   private Object myHighlightingTag;
+  private int @Nullable [] myLinkOffsets;
   private final boolean myStoreSize;
   private boolean myManuallyResized;
 
@@ -583,12 +584,17 @@ public class DocumentationComponent extends JPanel implements Disposable, DataPr
 
     highlightLink(myHighlightedLink);
 
-    myEditorPane.setText(myDecoratedText);
+    // definition and the first code block are painted right away, the rest of the content is appended in later EDT frames
+    List<String> chunks = DocumentationChunks.split(myDecoratedText);
+    int generation = ++myRenderGeneration;
+    myRenderingChunks = chunks.size() > 1;
+    myEditorPane.setText(chunks.get(0));
+    resetLinkOffsets();
     applyFontProps();
 
     showHint();
 
-    SwingUtilities.invokeLater(() -> {
+    Runnable scrollToRef = () -> {
       myEditorPane.scrollRectToVisible(viewRectToUse); // if ref is defined but is not found in document, this provides a default location
       if (refToUse != null) {
         UIUtil.scrollToReference(myEditorPane, refToUse);
@@ -596,10 +602,52 @@ public class DocumentationComponent extends JPanel implements Disposable, DataPr
       else if (ScreenReader.isActive()) {
         myEditorPane.setCaretPosition(0);
       }
-    });
+    };
+    SwingUtilities.invokeLater(() -> appendChunks(chunks, 1, generation, scrollToRef));
+  }
+
+  private void appendChunks(@NotNull List<String> chunks, int index, int generation, @NotNull Runnable onFinish) {
+    if (generation != myRenderGeneration || myManager == null) return; // another text was set meanwhile
+    if (index >= chunks.size()) {
+      boolean wasRendering = myRenderingChunks;
+      myRenderingChunks = false;
+      // resize popup according to the whole content, if user didn't set popup size manually
+      if (wasRendering && !myManuallyResized && myHint != null && myHint.getDimensionServiceKey() == null) showHint();
+      onFinish.run();
+      return;
+    }
+    HTMLDocument document = (HTMLDocument)myEditorPane.getDocument();
+    Element content = findContentElement(document);
+    if (content == null) {
+      myEditorPane.setText(myDecoratedText);
+      resetLinkOffsets();
+      applyFontProps();
+      appendChunks(chunks, chunks.size(), generation, onFinish);
+      return;
+    }
+    try {
+      document.insertBeforeEnd(content, chunks.get(index));
+      resetLinkOffsets();
+    }
+    catch (BadLocationException | IOException e) {
+      LOG.warn("Error appending documentation chunk", e);
+    }
+    SwingUtilities.invokeLater(() -> appendChunks(chunks, index + 1, generation, onFinish));
+  }
+
+  @Nullable
+  private static Element findContentElement(@NotNull HTMLDocument document) {
+    Element content = document.getElement(document.getDefaultRootElement(), HTML.Attribute.CLASS, "content");
+    return content != null ? content : document.getElement(document.getDefaultRootElement(), HTML.Attribute.CLASS, "content-only");
   }
 
   protected void showHint() {
+    try (AccessToken ignored = EdtWatchdog.start("DocumentationComponent.showHint")) {
+      doShowHint();
+    }
+  }
+
+  private void doShowHint() {
     if (myHint == null) return;
 
     setHintSize();
@@ -675,8 +723,18 @@ public class DocumentationComponent extends JPanel implements Disposable, DataPr
 
   @Override
   public int getPreferredHeight(int width) {
+    try (AccessToken ignored = EdtWatchdog.start("DocumentationComponent.getPreferredHeight")) {
+      return doGetPreferredHeight(width);
+    }
+  }
+
+  private int doGetPreferredHeight(int width) {
     myEditorPane.setBounds(0, 0, width, MAX_DEFAULT.height);
-    myEditorPane.setText(myDecoratedText);
+    if (!myRenderingChunks) {
+      // while chunks are being appended, measure what is already rendered, the hint is resized when rendering finishes
+      myEditorPane.setText(myDecoratedText);
+      resetLinkOffsets();
+    }
     Dimension preferredSize = myEditorPane.getPreferredSize();
 
     int height = preferredSize.height;
@@ -739,62 +797,13 @@ public class DocumentationComponent extends JPanel implements Disposable, DataPr
     return null;
   }
 
-  @Contract(pure = true)
   private String decorate(String text) {
-    text = StringUtil.replaceIgnoreCase(text, "</html>", "");
-    text = StringUtil.replaceIgnoreCase(text, "</body>", "");
-    text = StringUtil.replaceIgnoreCase(text, DocumentationMarkup.SECTIONS_START + DocumentationMarkup.SECTIONS_END, "");
-    text = StringUtil.replaceIgnoreCase(text, DocumentationMarkup.SECTIONS_START + "<p>" + DocumentationMarkup.SECTIONS_END, "");
-    boolean hasContent = text.contains(DocumentationMarkup.CONTENT_START);
-    if (!hasContent) {
-      if (!text.contains(DocumentationMarkup.DEFINITION_START)) {
-        int bodyStart = findContentStart(text);
-        if (bodyStart > 0) {
-          text = text.substring(0, bodyStart) +
-                 DocumentationMarkup.CONTENT_START +
-                 text.substring(bodyStart) +
-                 DocumentationMarkup.CONTENT_END;
-        }
-        else {
-          text = DocumentationMarkup.CONTENT_START + text + DocumentationMarkup.CONTENT_END;
-        }
-        hasContent = true;
-      } else if (!text.contains(DocumentationMarkup.SECTIONS_START)){
-        text = StringUtil.replaceIgnoreCase(text, DocumentationMarkup.DEFINITION_START, "<div class='definition-only'><pre>");
-      }
-    }
-    if (!text.contains(DocumentationMarkup.DEFINITION_START)) {
-      text = text.replace("class='content'", "class='content-only'");
-    }
-    String location = getLocationText();
-    if (location != null) {
-      text = text + getBottom(hasContent) + location + "</div>";
-    }
-    text = text.replaceAll("<p>\\s*(<(?:[uo]l|h\\d|p))", "$1");
-    text = addExternalLinksIcon(text);
-    return text;
-  }
-
-  private static int findContentStart(String text) {
-    int index = StringUtil.indexOfIgnoreCase(text, "<body>", 0);
-    if (index >= 0) return index + 6;
-    index = StringUtil.indexOfIgnoreCase(text, "</head>", 0);
-    if (index >= 0) return index + 7;
-    index = StringUtil.indexOfIgnoreCase(text, "</style>", 0);
-    if (index >= 0) return index + 8;
-    index = StringUtil.indexOfIgnoreCase(text, "<html>", 0);
-    if (index >= 0) return index + 6;
-    return -1;
-  }
-
-  @NotNull
-  private static String getBottom(boolean hasContent) {
-    return "<div class='" + (hasContent ? "bottom" : "bottom-no-content") + "'>";
+    return myDecorator.decorate(text, getLocationText());
   }
 
   @Contract(pure = true)
   public static String addExternalLinksIcon(String text) {
-    return EXTERNAL_LINK_PATTERN.matcher(text).replaceAll(EXTERNAL_LINK_REPLACEMENT);
+    return DocumentationDecorator.addExternalLinksIcon(text);
   }
 
   private @NonNls String getLocationText() {
@@ -831,6 +840,12 @@ public class DocumentationComponent extends JPanel implements Disposable, DataPr
   }
 
   private void applyFontProps() {
+    try (AccessToken ignored = EdtWatchdog.start("DocumentationComponent.applyFontProps")) {
+      doApplyFontProps();
+    }
+  }
+
+  private void doApplyFontProps() {
     Document document = myEditorPane.getDocument();
     if (!(document instanceof StyledDocument)) {
       return;
@@ -930,39 +945,58 @@ public class DocumentationComponent extends JPanel implements Disposable, DataPr
   public void dispose() {
     myEditorPane.getCaret().setVisible(false); // Caret, if blinking, has to be deactivated.
     myKeyboardActions.clear();
+    myText = "";
+    myDecoratedText = "";
     myElement = null;
     myManager = null;
     myHint = null;
   }
 
   private int getLinkCount() {
-    HTMLDocument document = (HTMLDocument)myEditorPane.getDocument();
-    int linkCount = 0;
-    for (HTMLDocument.Iterator it = document.getIterator(HTML.Tag.A); it.isValid(); it.next()) {
-      if (it.getAttributes().isDefined(HTML.Attribute.HREF)) linkCount++;
-    }
-    return linkCount;
+    return getLinkOffsets().length / 2;
   }
 
-  @Nullable
-  private HTMLDocument.Iterator getLink(int n) {
-    if (n >= 0) {
+  /**
+   * @return start and end offsets of every link in the rendered document, collected once per document
+   */
+  private int @NotNull [] getLinkOffsets() {
+    int[] offsets = myLinkOffsets;
+    if (offsets == null) {
       HTMLDocument document = (HTMLDocument)myEditorPane.getDocument();
-      int linkCount = 0;
+      offsets = ArrayUtil.EMPTY_INT_ARRAY;
+      int size = 0;
       for (HTMLDocument.Iterator it = document.getIterator(HTML.Tag.A); it.isValid(); it.next()) {
-        if (it.getAttributes().isDefined(HTML.Attribute.HREF) && linkCount++ == n) return it;
+        if (!it.getAttributes().isDefined(HTML.Attribute.HREF)) continue;
+        if (size == offsets.length) offsets = Arrays.copyOf(offsets, Math.max(8, size * 2));
+        offsets[size++] = it.getStartOffset();
+        offsets[size++] = it.getEndOffset();
       }
+      offsets = size == offsets.length ? offsets : Arrays.copyOf(offsets, size);
+      myLinkOffsets = offsets;
     }
-    return null;
+    return offsets;
+  }
+
+  private void resetLinkOffsets() {
+    myLinkOffsets = null;
+  }
+
+  @Nullable
+  private String getLinkHref(int n) {
+    if (n < 0 || n >= getLinkCount()) return null;
+    HTMLDocument document = (HTMLDocument)myEditorPane.getDocument();
+    Element element = document.getCharacterElement(getLinkOffsets()[2 * n]);
+    Object link = element.getAttributes().getAttribute(HTML.Tag.A);
+    return link instanceof AttributeSet ? (String)((AttributeSet)link).getAttribute(HTML.Attribute.HREF) : null;
   }
 
   private void highlightLink(int n) {
     myHighlightedLink = n;
     Highlighter highlighter = myEditorPane.getHighlighter();
-    HTMLDocument.Iterator link = getLink(n);
-    if (link != null) {
-      int startOffset = link.getStartOffset();
-      int endOffset = link.getEndOffset();
+    if (n >= 0 && n < getLinkCount()) {
+      int[] offsets = getLinkOffsets();
+      int startOffset = offsets[2 * n];
+      int endOffset = offsets[2 * n + 1];
       try {
         if (myHighlightingTag == null) {
           myHighlightingTag = highlighter.addHighlight(startOffset, endOffset, LINK_HIGHLIGHTER);
@@ -987,9 +1021,8 @@ public class DocumentationComponent extends JPanel implements Disposable, DataPr
   }
 
   private void activateLink(int n) {
-    HTMLDocument.Iterator link = getLink(n);
-    if (link != null) {
-      String href = (String)link.getAttributes().getAttribute(HTML.Attribute.HREF);
+    String href = getLinkHref(n);
+    if (href != null) {
       myManager.navigateByLink(this, null, href);
     }
   }
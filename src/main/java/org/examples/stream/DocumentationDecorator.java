@@ -0,0 +1,204 @@
+package org.examples.stream;
+
+import com.intellij.lang.documentation.DocumentationMarkup;
+import com.intellij.openapi.util.text.StringUtil;
+import org.jetbrains.annotations.NonNls;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Decorates example html before it's shown in {@link DocumentationComponent}.
+ * <p>
+ * Closing tags and empty sections are removed first: the text around a removed tag can join into another removed tag,
+ * a content start or a link. The other rewritings (content wrapping, definition-only and content-only classes,
+ * paragraphs before block tags) are then done in a single pass into a buffer reused between invocations, and external
+ * link icons are added last, because a dropped paragraph can join a link as well.
+ */
+final class DocumentationDecorator {
+  /**
+   * Starts a page decorated in advance by {@link #decorateInAdvance}, the sections appended to it afterwards are
+   * already in their final form, so only the location is added.
+   */
+  static final @NonNls String DECORATED_MARKER = "<!--decorated-->";
+  /**
+   * Same as {@link #DECORATED_MARKER} for a page without content, which gets another bottom style
+   */
+  static final @NonNls String DECORATED_NO_CONTENT_MARKER = "<!--decorated-no-content-->";
+  private static final @NonNls String EXTERNAL_LINK_ICON = "<icon src='AllIcons.Ide.External_link_arrow'>";
+  private static final @NonNls String DEFINITION_ONLY_START = "<div class='definition-only'><pre>";
+  private static final @NonNls String CONTENT_CLASS = "class='content'";
+  private static final @NonNls String CONTENT_ONLY_CLASS = "class='content-only'";
+  private static final @NonNls String CONTENT_ONLY_START = "<div class='content-only'>";
+  private static final @NonNls String BOTTOM_START = "<div class='bottom'>";
+  private static final @NonNls String BOTTOM_NO_CONTENT_START = "<div class='bottom-no-content'>";
+  /**
+   * Removed one after another in this order, so that a tag joined by an earlier removal is removed as well
+   */
+  private static final @NonNls String[] REMOVED_TAGS = {
+    "</html>",
+    "</body>",
+    DocumentationMarkup.SECTIONS_START + DocumentationMarkup.SECTIONS_END,
+    DocumentationMarkup.SECTIONS_START + "<p>" + DocumentationMarkup.SECTIONS_END
+  };
+
+  private final StringBuilder myBuffer = new StringBuilder();
+  private boolean myHasContent;
+
+  /**
+   * @return the text decorated without location, starting with one of the markers which let {@link #decorate} add it later
+   */
+  @NotNull
+  String decorateInAdvance(@NotNull String text) {
+    String decorated = decorate(text, null);
+    return (myHasContent ? DECORATED_MARKER : DECORATED_NO_CONTENT_MARKER) + decorated;
+  }
+
+  @NotNull
+  String decorate(@NotNull String text, @Nullable String location) {
+    if (text.startsWith(DECORATED_MARKER)) {
+      return appendLocation(text.substring(DECORATED_MARKER.length()), true, location);
+    }
+    if (text.startsWith(DECORATED_NO_CONTENT_MARKER)) {
+      return appendLocation(text.substring(DECORATED_NO_CONTENT_MARKER.length()), false, location);
+    }
+    for (String tag : REMOVED_TAGS) {
+      text = StringUtil.replaceIgnoreCase(text, tag, "");
+    }
+    boolean hasContent = text.contains(DocumentationMarkup.CONTENT_START);
+    boolean hasDefinition = text.contains(DocumentationMarkup.DEFINITION_START);
+    boolean wrapContent = !hasContent && !hasDefinition;
+    boolean definitionOnly = !hasContent && hasDefinition && !text.contains(DocumentationMarkup.SECTIONS_START);
+    boolean contentOnly = !hasDefinition || definitionOnly;
+    int contentStart = wrapContent ? findContentStart(text) : -1;
+
+    StringBuilder out = myBuffer;
+    out.setLength(0);
+    out.ensureCapacity(text.length() + 128);
+    if (wrapContent && contentStart < 0) {
+      out.append(CONTENT_ONLY_START);
+    }
+
+    int length = text.length();
+    int copyFrom = 0;
+    int paragraphCheckSkippedAt = -1;
+    for (int i = 0; i < length; i++) {
+      if (i == contentStart) {
+        out.append(text, copyFrom, i).append(CONTENT_ONLY_START);
+        copyFrom = i;
+      }
+      char c = text.charAt(i);
+      if (c == 'c') {
+        if (contentOnly && text.startsWith(CONTENT_CLASS, i)) {
+          out.append(text, copyFrom, i).append(CONTENT_ONLY_CLASS);
+          copyFrom = i + CONTENT_CLASS.length();
+          i = copyFrom - 1;
+        }
+        continue;
+      }
+      if (c != '<') continue;
+
+      if (definitionOnly && text.regionMatches(true, i, DocumentationMarkup.DEFINITION_START, 0,
+                                                    DocumentationMarkup.DEFINITION_START.length())) {
+        out.append(text, copyFrom, i).append(DEFINITION_ONLY_START);
+        copyFrom = i + DocumentationMarkup.DEFINITION_START.length();
+        i = copyFrom - 1;
+      }
+      else if (i != paragraphCheckSkippedAt && text.startsWith("<p>", i)) {
+        int blockStart = skipWhitespaces(text, i + 3);
+        if (isBlockStart(text, blockStart)) {
+          // paragraph right before a list, a header or another paragraph only adds a gap
+          out.append(text, copyFrom, i);
+          copyFrom = blockStart;
+          paragraphCheckSkippedAt = blockStart;
+          i = blockStart - 1;
+        }
+      }
+    }
+    if (contentStart == length) {
+      out.append(text, copyFrom, length).append(CONTENT_ONLY_START);
+      copyFrom = length;
+    }
+    out.append(text, copyFrom, length);
+    if (wrapContent) {
+      out.append(DocumentationMarkup.CONTENT_END);
+    }
+    myHasContent = hasContent || wrapContent;
+    if (location != null) {
+      out.append(myHasContent ? BOTTOM_START : BOTTOM_NO_CONTENT_START).append(location).append("</div>");
+    }
+    return addExternalLinksIcon(out.toString());
+  }
+
+  @NotNull
+  private static String appendLocation(@NotNull String decorated, boolean hasContent, @Nullable String location) {
+    if (location == null) return decorated;
+    return decorated + (hasContent ? BOTTOM_START : BOTTOM_NO_CONTENT_START) + location + "</div>";
+  }
+
+  /**
+   * Adds external link icon to every http link in the text.
+   */
+  @NotNull
+  static String addExternalLinksIcon(@NotNull String text) {
+    StringBuilder out = null;
+    int copyFrom = 0;
+    int linkIconAt = -1;
+    for (int i = text.indexOf("<a"); i >= 0; i = text.indexOf("<a", i + 2)) {
+      if (i < linkIconAt) continue;
+      linkIconAt = findExternalLinkEnd(text, i);
+      if (linkIconAt < 0) continue;
+      if (out == null) out = new StringBuilder(text.length() + EXTERNAL_LINK_ICON.length());
+      out.append(text, copyFrom, linkIconAt).append(EXTERNAL_LINK_ICON);
+      copyFrom = linkIconAt;
+    }
+    return out == null ? text : out.append(text, copyFrom, text.length()).toString();
+  }
+
+  /**
+   * Matches {@code <a href='http...'>text</a>} starting at {@code offset}.
+   *
+   * @return offset of the closing {@code </a>} or -1 if there is no external link at the offset
+   */
+  private static int findExternalLinkEnd(@NotNull String text, int offset) {
+    int i = skipWhitespaces(text, offset + 2);
+    if (!text.startsWith("href=", i)) return -1;
+    i += 5;
+    if (i >= text.length() || text.charAt(i) != '"' && text.charAt(i) != '\'') return -1;
+    if (!text.startsWith("http", i + 1)) return -1;
+    int startTagEnd = text.indexOf('>', i + 5);
+    if (startTagEnd < 0) return -1;
+    int endTagEnd = text.indexOf('>', startTagEnd + 1);
+    if (endTagEnd < 0 || endTagEnd - 3 <= startTagEnd || !text.startsWith("</a", endTagEnd - 3)) return -1;
+    return endTagEnd - 3;
+  }
+
+  private static boolean isBlockStart(@NotNull String text, int offset) {
+    if (offset + 2 > text.length() || text.charAt(offset) != '<') return false;
+    char tag = text.charAt(offset + 1);
+    if (tag == 'p') return true;
+    if (offset + 3 > text.length()) return false;
+    char next = text.charAt(offset + 2);
+    return (tag == 'u' || tag == 'o') && next == 'l' || tag == 'h' && next >= '0' && next <= '9';
+  }
+
+  private static int skipWhitespaces(@NotNull String text, int offset) {
+    while (offset < text.length() && isWhitespace(text.charAt(offset))) offset++;
+    return offset;
+  }
+
+  private static boolean isWhitespace(char c) {
+    return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+  }
+
+  private static int findContentStart(@NotNull String text) {
+    int index = StringUtil.indexOfIgnoreCase(text, "<body>", 0);
+    if (index >= 0) return index + 6;
+    index = StringUtil.indexOfIgnoreCase(text, "</head>", 0);
+    if (index >= 0) return index + 7;
+    index = StringUtil.indexOfIgnoreCase(text, "</style>", 0);
+    if (index >= 0) return index + 8;
+    index = StringUtil.indexOfIgnoreCase(text, "<html>", 0);
+    if (index >= 0) return index + 6;
+    return -1;
+  }
+}
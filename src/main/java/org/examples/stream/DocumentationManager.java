@@ -25,6 +25,8 @@ import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.application.ModalityState;
 import com.intellij.openapi.application.ReadAction;
 import com.intellij.openapi.command.CommandProcessor;
+import com.intellij.openapi.components.Service;
+import com.intellij.openapi.components.ServiceManager;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.editor.Editor;
 import com.intellij.openapi.project.IndexNotReadyException;
@@ -35,7 +37,6 @@ import com.intellij.openapi.roots.ui.configuration.ProjectSettingsService;
 import com.intellij.openapi.ui.popup.JBPopup;
 import com.intellij.openapi.ui.popup.JBPopupFactory;
 import com.intellij.openapi.util.*;
-import com.intellij.openapi.util.io.FileUtil;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.openapi.wm.*;
 import com.intellij.openapi.wm.ex.ToolWindowEx;
@@ -54,22 +55,31 @@ import com.intellij.util.concurrency.AppExecutorUtil;
 import com.intellij.util.containers.ContainerUtil;
 import com.intellij.util.ui.UIUtil;
 import org.jetbrains.annotations.*;
+import org.examples.stream.ExampleTaskScheduler.Priority;
 import org.jetbrains.concurrency.CancellablePromise;
 
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.MouseEvent;
+import java.io.IOException;
 import java.lang.ref.WeakReference;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.UnaryOperator;
 
 import static java.util.Objects.isNull;
-import static java.util.Objects.nonNull;
 
-public class DocumentationManager extends DockablePopupManager<DocumentationComponent> {
+/**
+ * Shows examples in a popup or in the documentation tool window. There's one per project, so that the popup, the tool
+ * window and the fetches scheduled for them are shared by every place showing an example.
+ */
+@Service
+public final class DocumentationManager extends DockablePopupManager<DocumentationComponent> {
   public static final String NEW_JAVADOC_LOCATION_AND_SIZE = "javadoc.popup.new";
   private static final String NO_EXAMPLE_FOUND = "No example found.";
 
@@ -96,15 +106,13 @@ public class DocumentationManager extends DockablePopupManager<DocumentationComp
     ActionPlaces.JAVADOC_TOOLBAR
   };
 
-  private Editor myEditor;
-  private final Alarm myUpdateDocAlarm;
-  private WeakReference<JBPopup> myDocInfoHintRef;//null, but maybe not always
-  private WeakReference<Component> myFocusedBeforePopup;
+  private final AtomicReference<State> myState = new AtomicReference<>(State.EMPTY);
+  /**
+   * Fetches started so far, a fetch waiting for its element is dropped once a newer one has started
+   */
+  private final AtomicLong myFetchCount = new AtomicLong();
   public static final Key<SmartPsiElementPointer<?>> ORIGINAL_ELEMENT_KEY = Key.create("Original element");
 
-  private boolean myCloseOnSneeze;
-  private @Nls String myPrecalculatedDocumentation;
-
   private AnAction myRestorePopupAction;
 
   private ToolWindow myDefaultDocToolWindow;
@@ -165,7 +173,7 @@ public class DocumentationManager extends DockablePopupManager<DocumentationComp
     myLangToolWindows.clear();
 
     restartAutoUpdate(false);
-    Component previouslyFocused = SoftReference.dereference(myFocusedBeforePopup);
+    Component previouslyFocused = SoftReference.dereference(myState.get().focusedBeforePopup);
     if (previouslyFocused != null && previouslyFocused.isShowing()) {
       UIUtil.runWhenFocused(previouslyFocused, () -> updateComponent(true));
       IdeFocusManager.getInstance(myProject).requestFocus(previouslyFocused, true);
@@ -214,13 +222,17 @@ public class DocumentationManager extends DockablePopupManager<DocumentationComp
     toolWindow.setAutoHide(false);
   }
 
+  public static DocumentationManager getInstance(@NotNull Project project) {
+    return ServiceManager.getService(project, DocumentationManager.class);
+  }
+
   public DocumentationManager(@NotNull Project project) {
     super(project);
     AnActionListener actionListener = new AnActionListener() {
       @Override
       public void beforeActionPerformed(@NotNull AnAction action, @NotNull DataContext dataContext, @NotNull AnActionEvent event) {
         if (getDocInfoHint() != null &&
-            LookupManager.getActiveLookup(myEditor) == null && // let the lookup manage all the actions
+            LookupManager.getActiveLookup(getEditor()) == null && // let the lookup manage all the actions
             !Conditions.instanceOf(ACTION_CLASSES_TO_IGNORE).value(action) &&
             !ArrayUtil.contains(event.getPlace(), ACTION_PLACES_TO_IGNORE) &&
             !ContainerUtil.exists(ACTION_IDS_TO_IGNORE, id -> ActionManager.getInstance().getAction(id) == action)) {
@@ -231,13 +243,12 @@ public class DocumentationManager extends DockablePopupManager<DocumentationComp
       @Override
       public void beforeEditorTyping(char c, @NotNull DataContext dataContext) {
         JBPopup hint = getDocInfoHint();
-        if (hint != null && LookupManager.getActiveLookup(myEditor) == null) {
+        if (hint != null && LookupManager.getActiveLookup(getEditor()) == null) {
           hint.cancel();
         }
       }
     };
     ApplicationManager.getApplication().getMessageBus().connect(project).subscribe(AnActionListener.TOPIC, actionListener);
-    myUpdateDocAlarm = new Alarm(Alarm.ThreadToUse.POOLED_THREAD, myProject);
   }
 
   private void closeDocHint() {
@@ -245,9 +256,9 @@ public class DocumentationManager extends DockablePopupManager<DocumentationComp
     if (hint == null) {
       return;
     }
-    myCloseOnSneeze = false;
+    updateState(state -> state.withCloseOnSneeze(false));
     hint.cancel();
-    Component toFocus = SoftReference.dereference(myFocusedBeforePopup);
+    Component toFocus = SoftReference.dereference(myState.get().focusedBeforePopup);
     hint.cancel();
     if (toFocus != null) {
       IdeFocusManager.getInstance(myProject).requestFocus(toFocus, true);
@@ -256,6 +267,12 @@ public class DocumentationManager extends DockablePopupManager<DocumentationComp
 
   protected void showJavaDocInfo(@NotNull PsiElement element,
                                  PsiElement original) {
+    showJavaDocInfo(element, original, Priority.INTERACTIVE);
+  }
+
+  private void showJavaDocInfo(@NotNull PsiElement element,
+                               PsiElement original,
+                               @NotNull Priority priority) {
     if (!element.isValid()) {
       return;
     }
@@ -269,7 +286,7 @@ public class DocumentationManager extends DockablePopupManager<DocumentationComp
       }
     };
 
-    doShowJavaDocInfo(element, false, updateProcessor, original, null);
+    doShowJavaDocInfo(element, false, updateProcessor, original, null, priority);
   }
 
   private CompletableFuture<PsiElement> asCompletableFuture(CancellablePromise<PsiElement> elementPromise) {
@@ -290,25 +307,30 @@ public class DocumentationManager extends DockablePopupManager<DocumentationComp
   protected void showJavaDocInfo(Editor editor,
                                  @Nullable PsiFile file,
                                  boolean requestFocus) {
-    myEditor = editor;
-    Project project = getProject(file);
-    PsiDocumentManager.getInstance(project).commitAllDocuments();
-
-    if (file != null && !file.isValid()) {
-      file = null; // commit could invalidate the file
-    }
-    PsiFile finalFile = file;
+    showJavaDocInfo(editor, file, requestFocus, Priority.INTERACTIVE);
+  }
 
-    PsiElement originalElement = getContextElement(editor, file);
+  private void showJavaDocInfo(Editor editor,
+                               @Nullable PsiFile file,
+                               boolean requestFocus,
+                               @NotNull Priority priority) {
+    updateState(state -> state.withEditor(editor));
+    Project project = getProject(file);
 
+    // documents are committed in background, so a big uncommitted file doesn't freeze EDT here;
+    // the context element is computed inside the same read action as it depends on committed PSI
     CancellablePromise<PsiElement> elementPromise =
-      ReadAction.nonBlocking(() -> findTargetElementFromContext(editor, finalFile, originalElement)).coalesceBy(this)
+      ReadAction.nonBlocking(() -> {
+        PsiFile committedFile = file != null && file.isValid() ? file : null; // commit could invalidate the file
+        return findTargetElementFromContext(editor, committedFile, getContextElement(editor, committedFile));
+      }).withDocumentsCommitted(project).coalesceBy(this)
         .submit(AppExecutorUtil.getAppExecutorService());
     CompletableFuture<PsiElement> elementFuture = asCompletableFuture(elementPromise);
 
     PopupUpdateProcessor updateProcessor = new PopupUpdateProcessor(project) {
       @Override
       public void updatePopup(Object lookupIteObject) {
+        PsiElement originalElement = getOriginalElement(elementFuture.getNow(null));
         if (lookupIteObject == null) {
           doShowJavaDocInfo(elementFuture, false, this, originalElement, NO_EXAMPLE_FOUND);
           return;
@@ -318,7 +340,7 @@ public class DocumentationManager extends DockablePopupManager<DocumentationComp
           return;
         }
 
-        DocumentationProvider documentationProvider = getProviderFromElement(finalFile);
+        DocumentationProvider documentationProvider = getProviderFromElement(file);
 
         PsiElement element = documentationProvider.getDocumentationElementForLookupItem(
           PsiManager.getInstance(myProject),
@@ -331,12 +353,11 @@ public class DocumentationManager extends DockablePopupManager<DocumentationComp
           return;
         }
 
-        if (myEditor != null) {
+        Editor editor = getEditor();
+        if (editor != null) {
           PsiFile file = element.getContainingFile();
           if (file != null) {
-            Editor editor = myEditor;
-            showJavaDocInfo(myEditor, file, false);
-            myEditor = editor;
+            showJavaDocInfo(editor, file, false);
           }
         }
         else {
@@ -345,7 +366,7 @@ public class DocumentationManager extends DockablePopupManager<DocumentationComp
       }
     };
 
-    doShowJavaDocInfo(elementFuture, requestFocus, updateProcessor, originalElement, null);
+    doShowJavaDocInfo(elementFuture, requestFocus, updateProcessor, null, null, priority);
   }
 
   public PsiElement findTargetElement(Editor editor, PsiFile file) {
@@ -361,6 +382,15 @@ public class DocumentationManager extends DockablePopupManager<DocumentationComp
                                    @NotNull PopupUpdateProcessor updateProcessor,
                                    PsiElement originalElement,
                                    @Nullable @Nls String documentation) {
+    doShowJavaDocInfo(element, requestFocus, updateProcessor, originalElement, documentation, Priority.INTERACTIVE);
+  }
+
+  private void doShowJavaDocInfo(@NotNull PsiElement element,
+                                 boolean requestFocus,
+                                 @NotNull PopupUpdateProcessor updateProcessor,
+                                 PsiElement originalElement,
+                                 @Nullable @Nls String documentation,
+                                 @NotNull Priority priority) {
     if (!myProject.isOpen()) return;
 
     ReadAction.run(() -> {
@@ -372,7 +402,7 @@ public class DocumentationManager extends DockablePopupManager<DocumentationComp
 
     ToolWindow newToolWindow = myDefaultDocToolWindow;
 
-    myPrecalculatedDocumentation = documentation;
+    updateState(state -> state.withPrecalculatedDocumentation(documentation));
     if (newToolWindow == null && PropertiesComponent.getInstance().isTrueValue(SHOW_EXAMPLE_IN_TOOL_WINDOW)) {
       createToolWindow(element, originalElement);
     }
@@ -391,7 +421,7 @@ public class DocumentationManager extends DockablePopupManager<DocumentationComp
           }
         }
         if (!sameElement || !component.isUpToDate()) {
-          cancelAndFetchDocInfo(component, new MyCollector(element, originalElement, null, false));
+          cancelAndFetchDocInfo(component, new MyCollector(element, originalElement, null, false), priority);
         }
       }
 
@@ -401,7 +431,7 @@ public class DocumentationManager extends DockablePopupManager<DocumentationComp
     }
     else if (prevHint != null && prevHint.isVisible() && prevHint instanceof AbstractPopup) {
       DocumentationComponent component = (DocumentationComponent)((AbstractPopup)prevHint).getComponent();
-      cancelAndFetchDocInfo(component, new MyCollector(element, originalElement, null, false));
+      cancelAndFetchDocInfo(component, new MyCollector(element, originalElement, null, false), priority);
     }
     else {
       showInPopup(element, requestFocus, updateProcessor, originalElement);
@@ -413,6 +443,15 @@ public class DocumentationManager extends DockablePopupManager<DocumentationComp
                                    @NotNull PopupUpdateProcessor updateProcessor,
                                    PsiElement originalElement,
                                    @Nullable String documentation) {
+    doShowJavaDocInfo(elementFuture, requestFocus, updateProcessor, originalElement, documentation, Priority.INTERACTIVE);
+  }
+
+  private void doShowJavaDocInfo(@NotNull CompletableFuture<PsiElement> elementFuture,
+                                 boolean requestFocus,
+                                 @NotNull PopupUpdateProcessor updateProcessor,
+                                 PsiElement originalElement,
+                                 @Nullable String documentation,
+                                 @NotNull Priority priority) {
     if (!myProject.isOpen()) return;
 
     PsiElement targetElement = null;
@@ -425,28 +464,53 @@ public class DocumentationManager extends DockablePopupManager<DocumentationComp
     }
 
     if (targetElement != null) {
-      doShowJavaDocInfo(targetElement, requestFocus, updateProcessor, originalElement,
-                        documentation);
+      doShowJavaDocInfo(targetElement, requestFocus, updateProcessor, getOriginalElement(targetElement, originalElement),
+                        documentation, priority);
+    }
+    else if (documentation == null && canShowPopupShell()) {
+      // show the popup straight away, it is filled in when the element is resolved on committed PSI
+      showInPopup(elementFuture, requestFocus, updateProcessor, originalElement);
     }
     else {
       elementFuture.thenAccept(element -> {
         if (element != null) {
-          AppUIUtil.invokeOnEdt(() -> doShowJavaDocInfo(element, requestFocus, updateProcessor, originalElement, documentation));
+          AppUIUtil.invokeOnEdt(() -> doShowJavaDocInfo(element, requestFocus, updateProcessor,
+                                                        getOriginalElement(element, originalElement), documentation, priority));
         }
       });
     }
   }
 
+  private boolean canShowPopupShell() {
+    if (myDefaultDocToolWindow != null || PropertiesComponent.getInstance().isTrueValue(SHOW_EXAMPLE_IN_TOOL_WINDOW)) {
+      return false;
+    }
+    JBPopup prevHint = getDocInfoHint();
+    return prevHint == null || !prevHint.isVisible();
+  }
+
+  private static PsiElement getOriginalElement(@NotNull PsiElement element, @Nullable PsiElement originalElement) {
+    return originalElement != null ? originalElement : ReadAction.compute(() -> getOriginalElement(element));
+  }
+
   private void showInPopup(@NotNull PsiElement element,
                            boolean requestFocus,
                            PopupUpdateProcessor updateProcessor,
                            PsiElement originalElement) {
+    showInPopup(CompletableFuture.completedFuture(element), requestFocus, updateProcessor, originalElement);
+  }
+
+  private void showInPopup(@NotNull CompletableFuture<PsiElement> elementFuture,
+                           boolean requestFocus,
+                           PopupUpdateProcessor updateProcessor,
+                           PsiElement originalElement) {
     Component focusedComponent = WindowManagerEx.getInstanceEx().getFocusedComponent(myProject);
-    myFocusedBeforePopup = new WeakReference<>(focusedComponent);
+    WeakReference<Component> focusedRef = new WeakReference<>(focusedComponent);
+    updateState(state -> state.withFocusedBeforePopup(focusedRef));
 
     DocumentationComponent component = new DocumentationComponent(this, true);
 
-    boolean hasLookup = LookupManager.getActiveLookup(myEditor) != null;
+    boolean hasLookup = LookupManager.getActiveLookup(getEditor()) != null;
     AbstractPopup hint = (AbstractPopup)JBPopupFactory
       .getInstance().createComponentPopupBuilder(component, component)
       .setProject(myProject)
@@ -462,16 +526,14 @@ public class DocumentationManager extends DockablePopupManager<DocumentationComp
         if (MenuSelectionManager.defaultManager().getSelectedPath().length > 0) {
           return false;
         }
-        myCloseOnSneeze = false;
-
         findQuickSearchComponent().ifPresent(QuickSearchComponent::unregisterHint);
 
         Disposer.dispose(component);
-        myEditor = null;
+        updateState(state -> state.withCloseOnSneeze(false).withEditor(null));
         return Boolean.TRUE;
       })
       .setKeyEventHandler(e -> {
-        if (myCloseOnSneeze) {
+        if (myState.get().closeOnSneeze) {
           closeDocHint();
         }
         if (AbstractPopup.isCloseRequest(e) && getDocInfoHint() != null) {
@@ -484,6 +546,8 @@ public class DocumentationManager extends DockablePopupManager<DocumentationComp
 
     component.setHint(hint);
     component.setToolWindowCallback(() -> {
+      PsiElement element = elementFuture.getNow(null);
+      if (element == null) return;
       createToolWindow(element, originalElement);
       myToolWindow.setAutoHide(false);
       hint.cancel();
@@ -493,21 +557,19 @@ public class DocumentationManager extends DockablePopupManager<DocumentationComp
       hint.setDimensionServiceKey(NEW_JAVADOC_LOCATION_AND_SIZE);
     }
 
-    if (myEditor == null) {
-      // subsequent invocation of javadoc popup from completion will have myEditor == null because of cancel invoked,
-      // so reevaluate the editor for proper popup placement
-      Lookup lookup = LookupManager.getInstance(myProject).getActiveLookup();
-      myEditor = lookup != null ? lookup.getEditor() : null;
-    }
-    cancelAndFetchDocInfo(component, new MyCollector(element, originalElement, null, false));
-
-    myDocInfoHintRef = new WeakReference<>(hint);
+    Lookup lookup = LookupManager.getInstance(myProject).getActiveLookup();
+    // subsequent invocation of javadoc popup from completion will have no editor because of cancel invoked,
+    // so reevaluate the editor for proper popup placement
+    Editor lookupEditor = lookup != null ? lookup.getEditor() : null;
+    WeakReference<JBPopup> hintRef = new WeakReference<>(hint);
+    updateState(state -> state.withEditor(state.editor != null ? state.editor : lookupEditor).withDocInfoHint(hintRef));
+    cancelAndFetchDocInfo(component, new MyCollector(elementFuture, originalElement, null, false));
 
     findQuickSearchComponent().ifPresent(quickSearch -> quickSearch.registerHint(hint));
 
     IdeEventQueue.getInstance().addDispatcher(e -> {
       if (e.getID() == MouseEvent.MOUSE_PRESSED && e.getSource() == hint.getPopupWindow()) {
-        myCloseOnSneeze = false;
+        updateState(state -> state.withCloseOnSneeze(false));
       }
       return false;
     }, component);
@@ -646,26 +708,35 @@ public class DocumentationManager extends DockablePopupManager<DocumentationComp
 
   @Nullable
   public JBPopup getDocInfoHint() {
-    if (myDocInfoHintRef == null) return null;
-    JBPopup hint = myDocInfoHintRef.get();
+    WeakReference<JBPopup> hintRef = myState.get().docInfoHintRef;
+    if (hintRef == null) return null;
+    JBPopup hint = hintRef.get();
     if (hint == null || !hint.isVisible() && !ApplicationManager.getApplication().isUnitTestMode()) {
       if (hint != null) {
         // hint's window might've been hidden by AWT without notifying us
         // dispose to remove the popup from IDE hierarchy and avoid leaking components
         hint.cancel();
       }
-      myDocInfoHintRef = null;
+      // a newer hint might've been shown meanwhile, it must not be forgotten
+      State.forgetDocInfoHint(myState, hintRef);
       return null;
     }
     return hint;
   }
 
   private void cancelAndFetchDocInfo(@NotNull DocumentationComponent component, @NotNull DocumentationCollector provider) {
-    myUpdateDocAlarm.cancelAllRequests();
-    doFetchDocInfo(component, provider);
+    cancelAndFetchDocInfo(component, provider, Priority.INTERACTIVE);
+  }
+
+  private void cancelAndFetchDocInfo(@NotNull DocumentationComponent component,
+                                     @NotNull DocumentationCollector provider,
+                                     @NotNull Priority priority) {
+    ExampleTaskScheduler.getInstance().cancelAll(this);
+    doFetchDocInfo(component, provider, priority, myFetchCount.incrementAndGet());
   }
 
   void updateToolWindowTabName(@NotNull PsiElement element) {
+    ApplicationManager.getApplication().assertIsDispatchThread();
     if (myToolWindow != null) {
         Content content = myToolWindow.getContentManager().getSelectedContent();
         if (content != null) content.setDisplayName(getTitle(element));
@@ -673,9 +744,12 @@ public class DocumentationManager extends DockablePopupManager<DocumentationComp
   }
 
   private void doFetchDocInfo(@NotNull DocumentationComponent component,
-                                        @NotNull DocumentationCollector collector) {
-    if (myPrecalculatedDocumentation != null) {
-      LOG.debug("Setting precalculated documentation:\n", myPrecalculatedDocumentation);
+                              @NotNull DocumentationCollector collector,
+                              @NotNull Priority priority,
+                              long fetch) {
+    String precalculatedDocumentation = State.takePrecalculatedDocumentation(myState);
+    if (precalculatedDocumentation != null) {
+      LOG.debug("Setting precalculated documentation:\n", precalculatedDocumentation);
       // if precalculated documentation is provided, we also expect precalculated target element to be provided
       // so we're not waiting for its calculation here
       PsiElement element = collector.getElement(false);
@@ -684,8 +758,7 @@ public class DocumentationManager extends DockablePopupManager<DocumentationComp
         component.setText(NO_EXAMPLE_FOUND, null);
         return;
       }
-      component.setData(element, myPrecalculatedDocumentation, collector.ref);
-      myPrecalculatedDocumentation = null;
+      component.setData(element, precalculatedDocumentation, collector.ref);
       return;
     }
 
@@ -696,60 +769,68 @@ public class DocumentationManager extends DockablePopupManager<DocumentationComp
 
     ModalityState modality = ModalityState.defaultModalityState();
 
-    myUpdateDocAlarm.addRequest(() -> {
-      if (myProject.isDisposed()) return;
-      LOG.debug("Started fetching documentation...");
+    // submitted once the element is known, so that a worker of the scheduler isn't blocked waiting for it
+    collector.whenElementReady(() -> {
+      if (myFetchCount.get() != fetch) return;
+      ExampleTaskScheduler.getInstance().submit(priority, this, () -> fetchDocInfo(component, collector, modality));
+    });
+  }
 
-      PsiElement element = collector.getElement(true);
-      if (element == null || !ReadAction.compute(element::isValid)) {
-        LOG.debug("Element for which documentation was requested is not available anymore");
-        GuiUtils.invokeLaterIfNeeded(() -> component.setText(NO_EXAMPLE_FOUND, null), ModalityState.any());
-        return;
-      }
+  private void fetchDocInfo(@NotNull DocumentationComponent component,
+                            @NotNull DocumentationCollector collector,
+                            @NotNull ModalityState modality) {
+    if (myProject.isDisposed()) return;
+    LOG.debug("Started fetching documentation...");
 
-      component.startWait();
+    PsiElement element = collector.getElement(false);
+    if (element == null || !ReadAction.compute(element::isValid)) {
+      LOG.debug("Element for which documentation was requested is not available anymore");
+      GuiUtils.invokeLaterIfNeeded(() -> component.setText(NO_EXAMPLE_FOUND, null), ModalityState.any());
+      return;
+    }
 
-      Throwable fail = null;
-      String text = null;
-      try {
-        text = collector.getDocumentation();
-      }
-      catch (Throwable e) {
-        LOG.info(e);
-        fail = e;
-      }
+    component.startWait();
 
-      if (fail != null) {
-        Throwable finalFail = fail;
-        GuiUtils.invokeLaterIfNeeded(() -> {
-          String message = finalFail instanceof IndexNotReadyException
-                           ? "Documentation is not available until indices are built."
-                           : "Cannot fetch remote documentation: internal error";
-          component.setText(message, null);
-        }, ModalityState.any());
-        return;
-      }
+    Throwable fail = null;
+    String text = null;
+    try {
+      text = collector.getDocumentation();
+    }
+    catch (Throwable e) {
+      LOG.info(e);
+      fail = e;
+    }
 
-      LOG.debug("Documentation fetched successfully:\n", text);
+    if (fail != null) {
+      Throwable finalFail = fail;
+      GuiUtils.invokeLaterIfNeeded(() -> {
+        String message = finalFail instanceof IndexNotReadyException
+                         ? "Documentation is not available until indices are built."
+                         : "Cannot fetch remote documentation: internal error";
+        component.setText(message, null);
+      }, ModalityState.any());
+      return;
+    }
 
-      String finalText = text;
-      PsiDocumentManager.getInstance(myProject).performLaterWhenAllCommitted(() -> {
-        if (!element.isValid()) {
-          LOG.debug("Element for which documentation was requested is not valid");
-          return;
-        }
-        String currentText = component.getText();
-        if (finalText == null) {
-          component.setText(NO_EXAMPLE_FOUND, element);
-        }
-        else if (finalText.isEmpty()) {
-          component.setText(currentText, element);
-        }
-        else {
-          component.setData(element, finalText, collector.ref);
-        }
-      }, modality);
-    }, 10);
+    LOG.debug("Documentation fetched successfully:\n", text);
+
+    String finalText = text;
+    PsiDocumentManager.getInstance(myProject).performLaterWhenAllCommitted(() -> {
+      if (!element.isValid()) {
+        LOG.debug("Element for which documentation was requested is not valid");
+        return;
+      }
+      String currentText = component.getText();
+      if (finalText == null) {
+        component.setText(NO_EXAMPLE_FOUND, element);
+      }
+      else if (finalText.isEmpty()) {
+        component.setText(currentText, element);
+      }
+      else {
+        component.setData(element, finalText, collector.ref);
+      }
+    }, modality);
   }
 
   @NotNull
@@ -850,7 +931,7 @@ public class DocumentationManager extends DockablePopupManager<DocumentationComp
   }
 
   public void navigateByLink(@NotNull DocumentationComponent component, @Nullable PsiElement context, @NotNull String url) {
-    myPrecalculatedDocumentation = null;
+    updateState(state -> state.withPrecalculatedDocumentation(null));
     component.setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
     PsiElement psiElement = context;
     if (psiElement == null) {
@@ -883,6 +964,9 @@ public class DocumentationManager extends DockablePopupManager<DocumentationComp
         ProjectSettingsService.getInstance(myProject).openLibraryOrSdkSettings(libraryEntry);
       }
     }
+    else if (url.startsWith(DocumentationManagerProtocol.USAGE_PROTOCOL)) {
+      StreamCallSiteIndex.navigateToUsage(myProject, url);
+    }
     else if (url.startsWith(DocumentationManagerProtocol.PSI_ELEMENT_PROTOCOL)) {
       Pair<@NotNull PsiElement, @Nullable String> target = getTarget(psiElement, url);
       if (target != null) {
@@ -946,6 +1030,16 @@ public class DocumentationManager extends DockablePopupManager<DocumentationComp
     showJavaDocInfo(element, element);
   }
 
+  @Override
+  protected void doAutoUpdateComponent(Editor editor, PsiFile psiFile) {
+    showJavaDocInfo(editor, psiFile, false, Priority.AUTO_UPDATE);
+  }
+
+  @Override
+  protected void doAutoUpdateComponent(@NotNull PsiElement element) {
+    showJavaDocInfo(element, element, Priority.AUTO_UPDATE);
+  }
+
   @Override
   protected String getTitle(PsiElement element) {
     String title = SymbolPresentationUtil.getSymbolPresentableText(element);
@@ -953,7 +1047,85 @@ public class DocumentationManager extends DockablePopupManager<DocumentationComp
   }
 
   protected Editor getEditor() {
-    return myEditor;
+    return myState.get().editor;
+  }
+
+  private void updateState(@NotNull UnaryOperator<State> update) {
+    myState.updateAndGet(update);
+  }
+
+  /**
+   * Popup related state, which is read and updated both from EDT and pooled threads,
+   * so it's only replaced as a whole with {@link #updateState}.
+   * <p>
+   * The tool windows aren't part of it: {@code myToolWindow} is written by {@link DockablePopupManager} itself, and both it and
+   * {@code myDefaultDocToolWindow} are only used on EDT, like the tool windows they refer to.
+   */
+  static final class State {
+    static final State EMPTY = new State(null, null, false, null, null);
+
+    final @Nullable Editor editor;
+    final @Nullable WeakReference<JBPopup> docInfoHintRef;
+    final boolean closeOnSneeze;
+    final @Nullable @Nls String precalculatedDocumentation;
+    final @Nullable WeakReference<Component> focusedBeforePopup;
+
+    private State(@Nullable Editor editor,
+                  @Nullable WeakReference<JBPopup> docInfoHintRef,
+                  boolean closeOnSneeze,
+                  @Nullable @Nls String precalculatedDocumentation,
+                  @Nullable WeakReference<Component> focusedBeforePopup) {
+      this.editor = editor;
+      this.docInfoHintRef = docInfoHintRef;
+      this.closeOnSneeze = closeOnSneeze;
+      this.precalculatedDocumentation = precalculatedDocumentation;
+      this.focusedBeforePopup = focusedBeforePopup;
+    }
+
+    @NotNull
+    State withEditor(@Nullable Editor editor) {
+      return editor == this.editor
+             ? this : new State(editor, docInfoHintRef, closeOnSneeze, precalculatedDocumentation, focusedBeforePopup);
+    }
+
+    @NotNull
+    State withDocInfoHint(@Nullable WeakReference<JBPopup> docInfoHintRef) {
+      return docInfoHintRef == this.docInfoHintRef
+             ? this : new State(editor, docInfoHintRef, closeOnSneeze, precalculatedDocumentation, focusedBeforePopup);
+    }
+
+    @NotNull
+    State withCloseOnSneeze(boolean closeOnSneeze) {
+      return closeOnSneeze == this.closeOnSneeze
+             ? this : new State(editor, docInfoHintRef, closeOnSneeze, precalculatedDocumentation, focusedBeforePopup);
+    }
+
+    @NotNull
+    State withPrecalculatedDocumentation(@Nullable @Nls String precalculatedDocumentation) {
+      return precalculatedDocumentation == this.precalculatedDocumentation
+             ? this : new State(editor, docInfoHintRef, closeOnSneeze, precalculatedDocumentation, focusedBeforePopup);
+    }
+
+    /**
+     * @return the precalculated documentation, which is cleared at the same time, so only one fetch shows it
+     */
+    @Nullable
+    static String takePrecalculatedDocumentation(@NotNull AtomicReference<State> state) {
+      return state.getAndUpdate(current -> current.withPrecalculatedDocumentation(null)).precalculatedDocumentation;
+    }
+
+    /**
+     * Forgets the hint, unless a newer one has been shown meanwhile
+     */
+    static void forgetDocInfoHint(@NotNull AtomicReference<State> state, @NotNull WeakReference<JBPopup> hintRef) {
+      state.updateAndGet(current -> current.docInfoHintRef == hintRef ? current.withDocInfoHint(null) : current);
+    }
+
+    @NotNull
+    State withFocusedBeforePopup(@Nullable WeakReference<Component> focusedBeforePopup) {
+      return focusedBeforePopup == this.focusedBeforePopup
+             ? this : new State(editor, docInfoHintRef, closeOnSneeze, precalculatedDocumentation, focusedBeforePopup);
+    }
   }
 
   private abstract static class DocumentationCollector {
@@ -971,6 +1143,10 @@ public class DocumentationManager extends DockablePopupManager<DocumentationComp
       this.ref = ref;
     }
 
+    void whenElementReady(@NotNull Runnable runnable) {
+      myElementFuture.whenComplete((element, error) -> runnable.run());
+    }
+
     @Nullable
     public PsiElement getElement(boolean wait) {
       try {
@@ -1009,7 +1185,7 @@ public class DocumentationManager extends DockablePopupManager<DocumentationComp
 
     @Override
     @Nullable
-    public String getDocumentation() {
+    public String getDocumentation() throws IOException {
       PsiElement element = getElement(true);
       if (element == null) {
         return null;
@@ -1017,33 +1193,34 @@ public class DocumentationManager extends DockablePopupManager<DocumentationComp
       DocumentationProvider provider = ReadAction.compute(() -> getProviderFromElement(element, originalElement));
       LOG.debug("Using provider ", provider);
 
-      return ReadAction.nonBlocking(() -> {
-        if (!element.isValid()) return null;
-        SmartPsiElementPointer<?> originalPointer = element.getUserData(ORIGINAL_ELEMENT_KEY);
-        PsiElement originalPsi = originalPointer != null ? originalPointer.getElement() : null;
-        if (element instanceof PsiReference) {
+      if (element instanceof PsiReference) {
+        return ReadAction.nonBlocking(() -> {
+          if (!element.isValid()) return null;
+          SmartPsiElementPointer<?> originalPointer = element.getUserData(ORIGINAL_ELEMENT_KEY);
+          PsiElement originalPsi = originalPointer != null ? originalPointer.getElement() : null;
           return onHover ? provider.generateHoverDoc(element, originalPsi) : provider.generateDoc(element, originalPsi);
-        }
-        final PsiClass psiClass = ((PsiMember) element).getContainingClass();
-        if (nonNull(psiClass)) {
-          final int parametersCount = ((PsiMethod) element).getParameterList().getParametersCount();
-          final String fullMethodName = getFullMethodName(psiClass, element, parametersCount);
-          final String filePath = CodeExamples.classToFileMap.get(fullMethodName);
-          if (isNull(filePath)) return null;
-          return FileUtil.loadTextAndClose(DocumentationManager.class.getResourceAsStream(filePath));
-        }
-        return null;
-      }).executeSynchronously();
-    }
-
-    private String getFullMethodName(PsiClass psiClass, PsiElement psiElement, int parametersCount) {
-      final String methodName = ((PsiMember) psiElement).getName();
-      return psiClass.getQualifiedName() + "." + methodName + parametersCount;
+        }).executeSynchronously();
+      }
+      if (!(element instanceof PsiMethod)) return null;
+      final String fullMethodName = ReadAction.nonBlocking(
+        () -> element.isValid() ? CodeExamples.getExampleKey((PsiMethod) element) : null).executeSynchronously();
+      if (isNull(fullMethodName)) return null;
+      final String filePath = CodeExamples.classToFileMap.get(fullMethodName);
+      if (isNull(filePath)) return null;
+      // outside of the read action, which is restarted on every write action
+      ExampleUsageStatistics.getInstance().recordUsage(fullMethodName);
+      final String example = ExampleCache.getInstance().getExample(filePath);
+      if (isNull(example)) return null;
+      // the static example is decorated once and cached in memory and on disk, the sections below depend on the project and the session
+      String decorated = ExampleDiskCache.getInstance().getDecorated(filePath, example);
+      String measured = AllocationResults.getInstance().appendResults(decorated, fullMethodName);
+      return ReadAction.nonBlocking(() -> StreamCallSiteIndex.appendUsages(measured, element.getProject(), fullMethodName))
+        .executeSynchronously();
     }
   }
 
   private Optional<QuickSearchComponent> findQuickSearchComponent() {
-    Component c = SoftReference.dereference(myFocusedBeforePopup);
+    Component c = SoftReference.dereference(myState.get().focusedBeforePopup);
     while (c != null) {
       if (c instanceof QuickSearchComponent) {
         return Optional.of((QuickSearchComponent)c);
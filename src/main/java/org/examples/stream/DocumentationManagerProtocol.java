@@ -34,4 +34,10 @@ public interface DocumentationManagerProtocol {
    * with {@link #PSI_ELEMENT_PROTOCOL} links, full link should look like {@code psi_element://link###ref}.
    */
   @NonNls String PSI_ELEMENT_PROTOCOL_REF_SEPARATOR = "###";
+
+  /**
+   * The protocol used for linking to stream call sites in project files, full link should look like
+   * {@code stream_usage://file_url#offset}.
+   */
+  @NonNls String USAGE_PROTOCOL = "stream_usage://";
 }
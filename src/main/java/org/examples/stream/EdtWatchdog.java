@@ -0,0 +1,158 @@
+package org.examples.stream;
+
+import com.intellij.ide.util.PropertiesComponent;
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.AccessToken;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.components.Service;
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import org.jetbrains.annotations.NonNls;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times plugin-owned sections running on EDT.
+ * <p>
+ * When a section runs longer than the budget (16 ms by default, see {@link #EDT_BUDGET_PROPERTY}), a stack sample of EDT is
+ * logged while the section is still running. Per-section aggregates are kept for the whole session and logged on exit.
+ * <p>
+ * The budget is read once per session. Starting a section only publishes its start, which a single sampler running every
+ * budget checks; sections nested in another one are timed, but only the outermost one is sampled.
+ * <pre>{@code
+ * try (AccessToken ignored = EdtWatchdog.start("DocumentationComponent.showHint")) {
+ *   ...
+ * }
+ * }</pre>
+ */
+@Service
+public final class EdtWatchdog implements Disposable {
+  private static final Logger LOG = Logger.getInstance(EdtWatchdog.class);
+  public static final @NonNls String EDT_BUDGET_PROPERTY = "code.example.edt.budget.ms";
+  private static final int DEFAULT_BUDGET_MS = 16;
+
+  private final Map<String, SectionStatistics> mySections = new ConcurrentHashMap<>();
+  private final long myBudgetNs;
+  private final ScheduledFuture<?> mySampler;
+  /**
+   * Outermost section running on EDT, written on EDT and read by the sampler
+   */
+  private volatile RunningSection myRunning;
+  /**
+   * Last section the stack sample was logged for, accessed by the sampler only
+   */
+  private RunningSection myLogged;
+
+  public EdtWatchdog() {
+    long budgetMs = Math.max(1, PropertiesComponent.getInstance().getInt(EDT_BUDGET_PROPERTY, DEFAULT_BUDGET_MS));
+    myBudgetNs = TimeUnit.MILLISECONDS.toNanos(budgetMs);
+    mySampler = AppExecutorUtil.getAppScheduledExecutorService()
+      .scheduleWithFixedDelay(this::sample, budgetMs, budgetMs, TimeUnit.MILLISECONDS);
+  }
+
+  public static EdtWatchdog getInstance() {
+    return ServiceManager.getService(EdtWatchdog.class);
+  }
+
+  /**
+   * Starts timing of the section, sections started outside of EDT are not timed.
+   */
+  @NotNull
+  public static AccessToken start(@NotNull @NonNls String section) {
+    if (!ApplicationManager.getApplication().isDispatchThread()) return AccessToken.EMPTY_ACCESS_TOKEN;
+    return getInstance().doStart(section);
+  }
+
+  @NotNull
+  private AccessToken doStart(@NotNull String section) {
+    boolean outermost = myRunning == null;
+    RunningSection running = new RunningSection(section, Thread.currentThread(), System.nanoTime());
+    if (outermost) myRunning = running;
+    return new AccessToken() {
+      @Override
+      public void finish() {
+        if (outermost) myRunning = null;
+        long elapsedNs = System.nanoTime() - running.myStartNs;
+        mySections.computeIfAbsent(section, __ -> new SectionStatistics()).add(elapsedNs, elapsedNs > myBudgetNs);
+      }
+    };
+  }
+
+  private void sample() {
+    RunningSection running = myRunning;
+    if (running == null || running == myLogged || System.nanoTime() - running.myStartNs <= myBudgetNs) return;
+    myLogged = running;
+    Throwable sample = new Throwable("EDT stack sample");
+    sample.setStackTrace(running.myEdt.getStackTrace());
+    LOG.warn(running.myName + " runs on EDT longer than " + TimeUnit.NANOSECONDS.toMillis(myBudgetNs) + " ms", sample);
+  }
+
+  /**
+   * @return statistics of every section timed so far, sorted by section name
+   */
+  @NotNull
+  public Map<String, SectionStatistics> getStatistics() {
+    return new TreeMap<>(mySections);
+  }
+
+  @Override
+  public void dispose() {
+    mySampler.cancel(false);
+    if (!mySections.isEmpty()) {
+      LOG.info("EDT sections: " + getStatistics());
+    }
+  }
+
+  private static final class RunningSection {
+    final String myName;
+    final Thread myEdt;
+    final long myStartNs;
+
+    RunningSection(@NotNull String name, @NotNull Thread edt, long startNs) {
+      myName = name;
+      myEdt = edt;
+      myStartNs = startNs;
+    }
+  }
+
+  public static final class SectionStatistics {
+    private long myCount;
+    private long myOverBudgetCount;
+    private long myTotalNs;
+    private long myMaxNs;
+
+    synchronized void add(long elapsedNs, boolean overBudget) {
+      myCount++;
+      if (overBudget) myOverBudgetCount++;
+      myTotalNs += elapsedNs;
+      myMaxNs = Math.max(myMaxNs, elapsedNs);
+    }
+
+    public synchronized long getCount() {
+      return myCount;
+    }
+
+    public synchronized long getOverBudgetCount() {
+      return myOverBudgetCount;
+    }
+
+    public synchronized double getAverageMs() {
+      return myCount == 0 ? 0 : myTotalNs / 1e6 / myCount;
+    }
+
+    public synchronized double getMaxMs() {
+      return myMaxNs / 1e6;
+    }
+
+    @Override
+    public synchronized String toString() {
+      return String.format("count=%d, overBudget=%d, avg=%.2fms, max=%.2fms", myCount, myOverBudgetCount, getAverageMs(), getMaxMs());
+    }
+  }
+}
@@ -0,0 +1,174 @@
+package org.examples.stream;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.components.Service;
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.LowMemoryWatcher;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.reference.SoftReference;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Example pages loaded from plugin resources, shared by all projects.
+ * <p>
+ * Pages are kept as soft-referenced UTF-8 bytes, which takes half of the memory of a {@link String} for
+ * the mostly ascii examples, and are dropped altogether on {@link LowMemoryWatcher} signals. Least recently shown pages
+ * are evicted once the retained bytes exceed {@link #RETAINED_BYTES_BUDGET}.
+ */
+@Service
+public final class ExampleCache implements Disposable {
+  private static final Logger LOG = Logger.getInstance(ExampleCache.class);
+  /**
+   * Retained bytes the cache stays under, the page just loaded is kept even if it alone exceeds it.
+   */
+  public static final long RETAINED_BYTES_BUDGET = 512 * 1024;
+  private static final int ARRAY_HEADER_BYTES = 16;
+
+  /**
+   * In access order, guarded by itself
+   */
+  private final Map<String, SoftReference<byte[]>> myExamples = new LinkedHashMap<>(16, 0.75f, true);
+  private final AtomicLong myHits = new AtomicLong();
+  private final AtomicLong myMisses = new AtomicLong();
+  private final AtomicLong myReleases = new AtomicLong();
+  private final AtomicLong myEvictions = new AtomicLong();
+
+  public ExampleCache() {
+    LowMemoryWatcher.register(this::release, this);
+  }
+
+  public static ExampleCache getInstance() {
+    return ServiceManager.getService(ExampleCache.class);
+  }
+
+  /**
+   * @param path resource path as stored in {@link CodeExamples#classToFileMap}
+   * @return example page or null if there is no such resource
+   */
+  @Nullable
+  public String getExample(@NotNull String path) throws IOException {
+    byte[] bytes;
+    synchronized (myExamples) {
+      bytes = SoftReference.dereference(myExamples.get(path));
+    }
+    if (bytes != null) {
+      myHits.incrementAndGet();
+      return new String(bytes, StandardCharsets.UTF_8);
+    }
+    myMisses.incrementAndGet();
+
+    InputStream stream = ExampleCache.class.getResourceAsStream(path);
+    if (stream == null) return null;
+    try (InputStream input = stream) {
+      bytes = FileUtil.loadBytes(input);
+    }
+    synchronized (myExamples) {
+      myExamples.put(path, new SoftReference<>(bytes));
+      evictOverBudget();
+    }
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  public boolean isCached(@NotNull String path) {
+    synchronized (myExamples) {
+      // a plain lookup, so that checking doesn't make the page recently used
+      for (Map.Entry<String, SoftReference<byte[]>> entry : myExamples.entrySet()) {
+        if (entry.getKey().equals(path)) return entry.getValue().get() != null;
+      }
+      return false;
+    }
+  }
+
+  public void release() {
+    synchronized (myExamples) {
+      if (!myExamples.isEmpty()) {
+        myReleases.incrementAndGet();
+      }
+      myExamples.clear();
+    }
+  }
+
+  @NotNull
+  public Statistics getStatistics() {
+    int entries = 0;
+    long retainedBytes = 0;
+    synchronized (myExamples) {
+      for (SoftReference<byte[]> reference : myExamples.values()) {
+        byte[] bytes = reference.get();
+        if (bytes != null) {
+          entries++;
+          retainedBytes += bytes.length + ARRAY_HEADER_BYTES;
+        }
+      }
+    }
+    return new Statistics(entries, retainedBytes, myHits.get(), myMisses.get(), myReleases.get(), myEvictions.get());
+  }
+
+  /**
+   * Removes collected pages and then the least recently used ones, until the cache is within its budget
+   */
+  private void evictOverBudget() {
+    long retainedBytes = 0;
+    for (Iterator<SoftReference<byte[]>> iterator = myExamples.values().iterator(); iterator.hasNext(); ) {
+      byte[] bytes = iterator.next().get();
+      if (bytes == null) iterator.remove();
+      else retainedBytes += bytes.length + ARRAY_HEADER_BYTES;
+    }
+    for (Iterator<SoftReference<byte[]>> iterator = myExamples.values().iterator();
+         retainedBytes > RETAINED_BYTES_BUDGET && myExamples.size() > 1; ) {
+      byte[] bytes = iterator.next().get();
+      iterator.remove();
+      myEvictions.incrementAndGet();
+      if (bytes != null) retainedBytes -= bytes.length + ARRAY_HEADER_BYTES;
+    }
+    if (retainedBytes > RETAINED_BYTES_BUDGET) {
+      LOG.debug("Example alone exceeds the cache budget of " + RETAINED_BYTES_BUDGET + " bytes: " + retainedBytes);
+    }
+  }
+
+  @Override
+  public void dispose() {
+    synchronized (myExamples) {
+      myExamples.clear();
+    }
+  }
+
+  public static final class Statistics {
+    public final int entries;
+    public final long retainedBytes;
+    public final long hits;
+    public final long misses;
+    public final long releases;
+    public final long evictions;
+
+    Statistics(int entries, long retainedBytes, long hits, long misses, long releases, long evictions) {
+      this.entries = entries;
+      this.retainedBytes = retainedBytes;
+      this.hits = hits;
+      this.misses = misses;
+      this.releases = releases;
+      this.evictions = evictions;
+    }
+
+    public double getHitRatio() {
+      long total = hits + misses;
+      return total == 0 ? 0 : (double)hits / total;
+    }
+
+    @Override
+    public String toString() {
+      return "entries=" + entries + ", retainedBytes=" + retainedBytes + " of " + RETAINED_BYTES_BUDGET + ", hits=" + hits +
+             ", misses=" + misses + ", releases=" + releases + ", evictions=" + evictions;
+    }
+  }
+}
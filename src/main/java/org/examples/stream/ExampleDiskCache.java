@@ -0,0 +1,170 @@
+package org.examples.stream;
+
+import com.intellij.ide.plugins.IdeaPluginDescriptor;
+import com.intellij.ide.plugins.PluginManagerCore;
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.components.Service;
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.extensions.PluginId;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.reference.SoftReference;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import org.jetbrains.annotations.NonNls;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps decorated example html on disk under the IDE system directory, so the first example shown after
+ * IDE restart doesn't have to be decorated again.
+ * <p>
+ * Entries are stored in a directory named after the plugin version, directories of other versions are removed
+ * on startup. The entry file name is a hash of the static example file and {@link #DECORATOR_VERSION}: sections added
+ * when the example is shown (allocations, usages) and its location are appended after decoration, and the decorated
+ * html doesn't depend on the font or the theme. Least recently used entries are removed beyond {@link #MAX_CACHE_BYTES}.
+ * <p>
+ * Decorated pages are also kept in memory by their resource path, so the disk is only read on the first show of an example
+ * in the session. An entry is marked as used by its modification time, which is updated at most once per session.
+ */
+@Service
+public final class ExampleDiskCache {
+  private static final Logger LOG = Logger.getInstance(ExampleDiskCache.class);
+  private static final @NonNls String PLUGIN_ID = "org.example.StreamExamples";
+  private static final @NonNls String CACHE_DIR_NAME = "stream-examples";
+  /**
+   * Must be changed with every change of {@link DocumentationDecorator} output
+   */
+  private static final int DECORATOR_VERSION = 2;
+  private static final long MAX_CACHE_BYTES = 4 * 1024 * 1024;
+
+  private final Path myCacheDir;
+  private final Map<String, SoftReference<String>> myDecorated = new ConcurrentHashMap<>();
+  /**
+   * Names of the entries used in this session
+   */
+  private final Set<String> myTouched = ConcurrentHashMap.newKeySet();
+
+  public ExampleDiskCache() {
+    Path root = Paths.get(PathManager.getSystemPath(), CACHE_DIR_NAME);
+    myCacheDir = root.resolve(FileUtil.sanitizeFileName(getPluginVersion()));
+    AppExecutorUtil.getAppExecutorService().execute(() -> removeOtherVersions(root));
+  }
+
+  public static ExampleDiskCache getInstance() {
+    return ServiceManager.getService(ExampleDiskCache.class);
+  }
+
+  /**
+   * May read and write the cache directory, so must not be called on EDT.
+   *
+   * @param path    resource path of the example, as stored in {@link CodeExamples#classToFileMap}
+   * @param example static example html, as read from the example file
+   * @return the example decorated in advance, see {@link DocumentationDecorator#decorateInAdvance}
+   */
+  @NotNull
+  public String getDecorated(@NotNull String path, @NotNull String example) {
+    String decorated = SoftReference.dereference(myDecorated.get(path));
+    if (decorated == null) {
+      decorated = readOrDecorate(example);
+      myDecorated.put(path, new SoftReference<>(decorated));
+    }
+    return decorated;
+  }
+
+  @NotNull
+  private String readOrDecorate(@NotNull String example) {
+    String key = getKey(example);
+    Path file = myCacheDir.resolve(key);
+    try {
+      String cached = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+      if (myTouched.add(key)) {
+        Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+      }
+      return cached;
+    }
+    catch (NoSuchFileException ignored) {
+    }
+    catch (IOException e) {
+      LOG.debug("Cannot read cached example " + file, e);
+    }
+
+    String decorated = new DocumentationDecorator().decorateInAdvance(example);
+    write(file, decorated);
+    myTouched.add(key);
+    removeLeastRecentlyUsed();
+    return decorated;
+  }
+
+  @NotNull
+  private static String getKey(@NotNull String example) {
+    MessageDigest digest = createDigest();
+    digest.update(example.getBytes(StandardCharsets.UTF_8));
+    digest.update((byte)0);
+    digest.update((byte)DECORATOR_VERSION);
+    return StringUtil.toHexString(digest.digest()) + ".html";
+  }
+
+  @NotNull
+  private static MessageDigest createDigest() {
+    try {
+      return MessageDigest.getInstance("SHA-1");
+    }
+    catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static void write(@NotNull Path file, @NotNull String decorated) {
+    try {
+      Files.createDirectories(file.getParent());
+      Path temp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+      Files.write(temp, decorated.getBytes(StandardCharsets.UTF_8));
+      Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+    catch (IOException e) {
+      LOG.debug("Cannot cache example " + file, e);
+    }
+  }
+
+  private void removeLeastRecentlyUsed() {
+    File[] entries = myCacheDir.toFile().listFiles((dir, name) -> name.endsWith(".html"));
+    if (entries == null) return;
+    long size = Arrays.stream(entries).mapToLong(File::length).sum();
+    if (size <= MAX_CACHE_BYTES) return;
+    Arrays.sort(entries, Comparator.comparingLong(File::lastModified));
+    for (File entry : entries) {
+      if (size <= MAX_CACHE_BYTES) break;
+      long length = entry.length();
+      if (FileUtil.delete(entry)) size -= length;
+    }
+  }
+
+  private void removeOtherVersions(@NotNull Path root) {
+    File[] versions = root.toFile().listFiles();
+    if (versions == null) return;
+    for (File version : versions) {
+      if (!version.toPath().equals(myCacheDir)) {
+        FileUtil.delete(version);
+      }
+    }
+  }
+
+  @NotNull
+  private static String getPluginVersion() {
+    IdeaPluginDescriptor plugin = PluginManagerCore.getPlugin(PluginId.getId(PLUGIN_ID));
+    return plugin != null && plugin.getVersion() != null ? plugin.getVersion() : "dev";
+  }
+}
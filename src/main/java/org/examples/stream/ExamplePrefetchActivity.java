@@ -0,0 +1,15 @@
+package org.examples.stream;
+
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.startup.StartupActivity;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Prefetches the examples the user shows most often, see {@link ExampleUsageStatistics}.
+ */
+public class ExamplePrefetchActivity implements StartupActivity.DumbAware {
+  @Override
+  public void runActivity(@NotNull Project project) {
+    ExampleUsageStatistics.getInstance().prefetch();
+  }
+}
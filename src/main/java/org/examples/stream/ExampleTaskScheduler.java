@@ -0,0 +1,150 @@
+package org.examples.stream;
+
+import com.intellij.openapi.components.Service;
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+
+/**
+ * Runs example fetching work in pooled threads with priority lanes.
+ * <p>
+ * At most {@link #MAX_CONCURRENCY} tasks run at once and background lanes never take the last slot, so an interactive
+ * popup request doesn't wait behind tool window auto-updates or prefetching. A background task waiting for longer
+ * than {@link #STARVATION_TIMEOUT_MS} is taken before newer interactive tasks.
+ * <p>
+ * Tasks must not wait for other work, e.g. for the element of a popup to be resolved, as that blocks one of the few slots;
+ * they are submitted once everything they need is at hand.
+ */
+@Service
+public final class ExampleTaskScheduler {
+  private static final Logger LOG = Logger.getInstance(ExampleTaskScheduler.class);
+  static final int MAX_CONCURRENCY = 2;
+  static final long STARVATION_TIMEOUT_MS = 1000;
+
+  public enum Priority {
+    /** Popup or tool window update explicitly requested by the user */
+    INTERACTIVE,
+    /** Tool window refresh on caret movement */
+    AUTO_UPDATE,
+    /** Speculative loading of examples which may be requested later */
+    PREFETCH
+  }
+
+  private final Executor myExecutor;
+  private final Object myLock = new Object();
+  private final ArrayDeque<Task>[] myLanes;
+  private int myRunning;
+  private int myRunningBackground;
+
+  public ExampleTaskScheduler() {
+    this(AppExecutorUtil.createBoundedApplicationPoolExecutor("Stream Examples", MAX_CONCURRENCY));
+  }
+
+  @SuppressWarnings("unchecked")
+  ExampleTaskScheduler(@NotNull Executor executor) {
+    myExecutor = executor;
+    myLanes = new ArrayDeque[Priority.values().length];
+    for (int i = 0; i < myLanes.length; i++) {
+      myLanes[i] = new ArrayDeque<>();
+    }
+  }
+
+  public static ExampleTaskScheduler getInstance() {
+    return ServiceManager.getService(ExampleTaskScheduler.class);
+  }
+
+  /**
+   * @param owner tasks of the same owner can be cancelled together with {@link #cancelAll(Object)}
+   */
+  public void submit(@NotNull Priority priority, @NotNull Object owner, @NotNull Runnable runnable) {
+    synchronized (myLock) {
+      myLanes[priority.ordinal()].add(new Task(priority, owner, runnable, System.currentTimeMillis()));
+    }
+    drain();
+  }
+
+  /**
+   * Removes not yet started tasks of the owner, already running tasks are not interrupted.
+   */
+  public void cancelAll(@NotNull Object owner) {
+    synchronized (myLock) {
+      for (ArrayDeque<Task> lane : myLanes) {
+        lane.removeIf(task -> task.owner == owner);
+      }
+    }
+  }
+
+  private void drain() {
+    while (true) {
+      Task task;
+      synchronized (myLock) {
+        if (myRunning >= MAX_CONCURRENCY) return;
+        task = pollNext(System.currentTimeMillis());
+        if (task == null) return;
+        myRunning++;
+        if (task.priority != Priority.INTERACTIVE) myRunningBackground++;
+      }
+      myExecutor.execute(() -> run(task));
+    }
+  }
+
+  private Task pollNext(long now) {
+    boolean backgroundAllowed = myRunningBackground < MAX_CONCURRENCY - 1;
+    if (backgroundAllowed) {
+      Task starving = null;
+      for (int i = Priority.INTERACTIVE.ordinal() + 1; i < myLanes.length; i++) {
+        Task head = myLanes[i].peek();
+        if (head != null && now - head.submitted >= STARVATION_TIMEOUT_MS && (starving == null || head.submitted < starving.submitted)) {
+          starving = head;
+        }
+      }
+      if (starving != null) {
+        return myLanes[starving.priority.ordinal()].poll();
+      }
+    }
+    for (ArrayDeque<Task> lane : myLanes) {
+      Task head = lane.peek();
+      if (head != null && (head.priority == Priority.INTERACTIVE || backgroundAllowed)) {
+        return lane.poll();
+      }
+    }
+    return null;
+  }
+
+  private void run(@NotNull Task task) {
+    try {
+      task.runnable.run();
+    }
+    catch (ProcessCanceledException ignored) {
+    }
+    catch (Throwable e) {
+      LOG.error(e);
+    }
+    finally {
+      synchronized (myLock) {
+        myRunning--;
+        if (task.priority != Priority.INTERACTIVE) myRunningBackground--;
+      }
+      drain();
+    }
+  }
+
+  private static final class Task {
+    final Priority priority;
+    final Object owner;
+    final Runnable runnable;
+    final long submitted;
+
+    Task(@NotNull Priority priority, @NotNull Object owner, @NotNull Runnable runnable, long submitted) {
+      this.priority = priority;
+      this.owner = owner;
+      this.runnable = runnable;
+      this.submitted = submitted;
+    }
+  }
+}
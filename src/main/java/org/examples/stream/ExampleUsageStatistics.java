@@ -0,0 +1,161 @@
+package org.examples.stream;
+
+import com.intellij.ide.util.PropertiesComponent;
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.components.*;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.text.StringUtil;
+import org.jetbrains.annotations.NonNls;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Counts how often each example is shown and prefetches the most used ones into {@link ExampleCache} on startup.
+ * <p>
+ * Counts are kept in memory and saved with the application settings, keys are the ones of {@link CodeExamples#classToFileMap}.
+ * Counts of earlier versions, stored in {@link PropertiesComponent}, are taken over once.
+ * <p>
+ * A prefetched example saves a cache miss the first time it's shown in the session, the share of cache hits produced that way
+ * is reported by {@link #getDiagnostics}.
+ */
+@Service
+@State(name = "StreamExampleUsageStatistics", storages = @Storage(value = "streamExamples.xml", roamingType = RoamingType.DISABLED))
+public final class ExampleUsageStatistics implements PersistentStateComponent<ExampleUsageStatistics.Counts>, Disposable {
+  private static final Logger LOG = Logger.getInstance(ExampleUsageStatistics.class);
+  private static final @NonNls String USAGE_COUNTS_PROPERTY = "code.example.usage.counts";
+  static final int PREFETCH_COUNT = 5;
+
+  public static final class Counts {
+    public Map<String, Integer> counts = new HashMap<>();
+  }
+
+  private final Map<String, Integer> myCounts = new ConcurrentHashMap<>();
+  private final AtomicBoolean myPrefetched = new AtomicBoolean();
+  /**
+   * Prefetched paths not shown yet in this session
+   */
+  private final Set<String> myUnusedPrefetches = ConcurrentHashMap.newKeySet();
+  private final AtomicLong myPrefetchCount = new AtomicLong();
+  private final AtomicLong myPrefetchHits = new AtomicLong();
+
+  public static ExampleUsageStatistics getInstance() {
+    return ServiceManager.getService(ExampleUsageStatistics.class);
+  }
+
+  @NotNull
+  @Override
+  public Counts getState() {
+    Counts state = new Counts();
+    state.counts = new TreeMap<>(myCounts);
+    return state;
+  }
+
+  @Override
+  public void loadState(@NotNull Counts state) {
+    myCounts.clear();
+    state.counts.forEach((key, count) -> {
+      if (count != null && count > 0) myCounts.put(key, count);
+    });
+    migrateProperty();
+  }
+
+  @Override
+  public void noStateLoaded() {
+    migrateProperty();
+  }
+
+  /**
+   * Adds the counts of earlier versions to the loaded ones. The property is removed then, so it's done only once.
+   */
+  private void migrateProperty() {
+    PropertiesComponent properties = PropertiesComponent.getInstance();
+    String value = properties.getValue(USAGE_COUNTS_PROPERTY);
+    if (value == null) return;
+    for (String entry : StringUtil.split(value, ",")) {
+      int separator = entry.lastIndexOf('=');
+      if (separator <= 0) continue;
+      int count = StringUtil.parseInt(entry.substring(separator + 1), 0);
+      if (count > 0) {
+        myCounts.merge(entry.substring(0, separator), count, Integer::sum);
+      }
+    }
+    properties.unsetValue(USAGE_COUNTS_PROPERTY);
+  }
+
+  /**
+   * Must be called once per shown example, outside of read actions which may be restarted.
+   */
+  public void recordUsage(@NotNull String exampleKey) {
+    myCounts.merge(exampleKey, 1, Integer::sum);
+    String path = CodeExamples.classToFileMap.get(exampleKey);
+    if (path != null && myUnusedPrefetches.remove(path) && ExampleCache.getInstance().isCached(path)) {
+      myPrefetchHits.incrementAndGet();
+    }
+  }
+
+  /**
+   * @return example keys sorted by usage count, most used first
+   */
+  @NotNull
+  public List<String> getMostUsed(int limit) {
+    return myCounts.entrySet().stream()
+      .sorted(Map.Entry.<String, Integer>comparingByValue().reversed())
+      .limit(limit)
+      .map(Map.Entry::getKey)
+      .collect(Collectors.toList());
+  }
+
+  /**
+   * Loads the most used examples in the prefetch lane of {@link ExampleTaskScheduler}, only once per IDE session.
+   */
+  public void prefetch() {
+    if (!myPrefetched.compareAndSet(false, true)) return;
+
+    Set<String> paths = new LinkedHashSet<>();
+    for (String key : getMostUsed(PREFETCH_COUNT)) {
+      String path = CodeExamples.classToFileMap.get(key);
+      if (path != null) paths.add(path);
+    }
+    for (String path : paths) {
+      ExampleTaskScheduler.getInstance().submit(ExampleTaskScheduler.Priority.PREFETCH, this, () -> {
+        try {
+          // an example already shown before the prefetch ran didn't profit from it
+          if (ExampleCache.getInstance().isCached(path)) return;
+          ExampleCache.getInstance().getExample(path);
+          myPrefetchCount.incrementAndGet();
+          myUnusedPrefetches.add(path);
+        }
+        catch (IOException e) {
+          LOG.debug("Cannot prefetch example " + path, e);
+        }
+      });
+    }
+    LOG.debug("Prefetching examples: ", paths);
+  }
+
+  /**
+   * Diagnostics line with the share of the cache hits produced by prefetching and the cache statistics.
+   */
+  @NotNull
+  public String getDiagnostics() {
+    ExampleCache.Statistics statistics = ExampleCache.getInstance().getStatistics();
+    long prefetchHits = myPrefetchHits.get();
+    double prefetchShare = statistics.hits == 0 ? 0 : (double)prefetchHits / statistics.hits;
+    return String.format("prefetched=%d, shown after prefetch=%d, share of cache hits from prefetching=%.2f, hit ratio=%.2f, %s, " +
+                         "most used=%s", myPrefetchCount.get(), prefetchHits, prefetchShare, statistics.getHitRatio(), statistics,
+                         getMostUsed(PREFETCH_COUNT));
+  }
+
+  @Override
+  public void dispose() {
+    // other services might be already disposed on exit, so the cache statistics are not queried here
+    LOG.info("Most used examples: " + getMostUsed(PREFETCH_COUNT) + ", prefetched=" + myPrefetchCount.get() +
+             ", shown after prefetch=" + myPrefetchHits.get());
+  }
+}
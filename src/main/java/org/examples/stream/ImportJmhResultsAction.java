@@ -0,0 +1,143 @@
+package org.examples.stream;
+
+import com.intellij.codeInsight.daemon.DaemonCodeAnalyzer;
+import com.intellij.icons.AllIcons;
+import com.intellij.openapi.actionSystem.AnAction;
+import com.intellij.openapi.actionSystem.AnActionEvent;
+import com.intellij.openapi.fileChooser.FileChooser;
+import com.intellij.openapi.fileChooser.FileChooserDescriptor;
+import com.intellij.openapi.fileChooser.FileChooserDescriptorFactory;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.Task;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.ui.Messages;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.openapi.vfs.VfsUtilCore;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.JavaPsiFacade;
+import com.intellij.psi.PsiClass;
+import com.intellij.psi.PsiMethod;
+import com.intellij.psi.search.GlobalSearchScope;
+import com.intellij.ui.DoubleClickListener;
+import com.intellij.ui.ScrollPaneFactory;
+import com.intellij.ui.SimpleListCellRenderer;
+import com.intellij.ui.components.JBLabel;
+import com.intellij.ui.components.JBList;
+import com.intellij.util.ui.JBUI;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.MouseEvent;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Imports a JMH result file written with {@code -rf json}: its results are shown after the stream pipelines of the benchmark
+ * methods by {@link JmhResultInlayProvider} and listed in the example tool window, regressions first. {@link Baseline}
+ * imports the file the current results are compared to.
+ */
+public class ImportJmhResultsAction extends AnAction {
+  /**
+   * Imports the baseline result file, the results imported before and after it are compared to it
+   */
+  public static final class Baseline extends ImportJmhResultsAction {
+    @Override
+    boolean isBaseline() {
+      return true;
+    }
+  }
+
+  boolean isBaseline() {
+    return false;
+  }
+
+  @Override
+  public void update(@NotNull AnActionEvent event) {
+    event.getPresentation().setEnabledAndVisible(event.getProject() != null);
+  }
+
+  @Override
+  public void actionPerformed(@NotNull AnActionEvent event) {
+    Project project = event.getProject();
+    if (project == null) return;
+    FileChooserDescriptor descriptor = FileChooserDescriptorFactory.createSingleFileDescriptor("json")
+      .withTitle(isBaseline() ? "Import JMH Baseline" : "Import JMH Results");
+    VirtualFile file = FileChooser.chooseFile(descriptor, project, null);
+    if (file == null) return;
+    Path path = VfsUtilCore.virtualToIoFile(file).toPath();
+    boolean baseline = isBaseline();
+
+    new Task.Backgroundable(project, "Reading JMH results", true) {
+      private List<JmhResults.Result> myImported;
+      private String myError;
+
+      @Override
+      public void run(@NotNull ProgressIndicator indicator) {
+        try {
+          myImported = JmhResults.read(path);
+        }
+        catch (IOException e) {
+          myError = "Can't read " + path.getFileName() + ": " + e.getMessage();
+        }
+      }
+
+      @Override
+      public void onSuccess() {
+        if (myImported == null) {
+          Messages.showErrorDialog(project, myError, "JMH Results");
+          return;
+        }
+        JmhResults results = JmhResults.getInstance(project);
+        if (baseline) results.setBaseline(myImported);
+        else results.setResults(myImported);
+        DaemonCodeAnalyzer.getInstance(project).restart();
+        if (!results.isEmpty()) DocumentationManager.getInstance(project).showContent(createResultList(project, results), "JMH");
+      }
+    }.queue();
+  }
+
+  @NotNull
+  private static JComponent createResultList(@NotNull Project project, @NotNull JmhResults results) {
+    List<JmhResults.Result> all = results.getAllResults();
+    all.sort(Comparator.comparing((JmhResults.Result result) -> !results.isRegression(result)));
+    long regressions = all.stream().filter(results::isRegression).count();
+
+    JBList<JmhResults.Result> list = new JBList<>(all);
+    list.setCellRenderer(SimpleListCellRenderer.create((label, result, index) -> {
+      label.setText(StringUtil.getShortName(StringUtil.getPackageName(result.myBenchmark)) + "." +
+                    StringUtil.getShortName(result.myBenchmark) + "  " + JmhResultInlayProvider.getText(results, result));
+      label.setIcon(results.isRegression(result) ? AllIcons.General.Warning : null);
+    }));
+    new DoubleClickListener() {
+      @Override
+      protected boolean onDoubleClick(@NotNull MouseEvent event) {
+        JmhResults.Result result = list.getSelectedValue();
+        PsiMethod method = result != null ? findBenchmark(project, result.myBenchmark) : null;
+        if (method != null) method.navigate(true);
+        return method != null;
+      }
+    }.installOn(list);
+
+    String summary = all.size() + " benchmark results";
+    if (regressions > 0) summary += ", " + regressions + " regressed beyond their errors";
+    summary += ", double-click to open";
+    JBLabel header = new JBLabel(summary);
+    header.setBorder(JBUI.Borders.empty(8));
+    JPanel panel = new JPanel(new BorderLayout());
+    panel.add(header, BorderLayout.NORTH);
+    panel.add(ScrollPaneFactory.createScrollPane(list), BorderLayout.CENTER);
+    return panel;
+  }
+
+  @Nullable
+  private static PsiMethod findBenchmark(@NotNull Project project, @NotNull String benchmark) {
+    String className = StringUtil.getPackageName(benchmark).replace('$', '.');
+    PsiClass psiClass = JavaPsiFacade.getInstance(project).findClass(className, GlobalSearchScope.allScope(project));
+    PsiMethod[] methods = psiClass != null ? psiClass.findMethodsByName(StringUtil.getShortName(benchmark), false) : PsiMethod.EMPTY_ARRAY;
+    return methods.length > 0 ? methods[0] : null;
+  }
+}
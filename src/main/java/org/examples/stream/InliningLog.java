@@ -0,0 +1,143 @@
+package org.examples.stream;
+
+import org.jetbrains.annotations.NonNls;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Inlining decisions parsed from the output of {@code -XX:+PrintCompilation -XX:+PrintInlining}, by callee. A callee is named
+ * as HotSpot prints it, with the binary class name, e.g. {@code java.util.stream.ReferencePipeline::map}.
+ * <p>
+ * The same callee is usually decided on at several call sites: in the compiled loop of the benchmark and in the compiled
+ * {@code forEachRemaining} of the spliterator, so the decisions are kept as a list.
+ */
+final class InliningLog {
+  /**
+   * e.g. {@code @ 12   java.util.stream.ReferencePipeline::map (26 bytes)   inline (hot)}
+   */
+  private static final Pattern DECISION = Pattern.compile("^\\s*@\\s*\\d+\\s+(\\S+::\\S+)\\s*(?:\\(\\d+ bytes\\))?\\s*(.*)$");
+  /**
+   * e.g. {@code 2034  412 %     4       StreamPipelineBenchmark::main @ 20 (215 bytes)}
+   */
+  private static final Pattern COMPILATION = Pattern.compile("^\\s*\\d+\\s+\\d+\\s.*?\\s(\\S+::\\S+)");
+  private static final @NonNls String FAILED = "failed to inline";
+  private static final List<String> INLINED_PREFIXES = List.of("inline", "force inline", "intrinsic", "(intrinsic)", "accessor");
+  /**
+   * Reasons of failures due to more receiver types seen at the call site than C2 inlines, the interface call stays virtual
+   */
+  private static final Set<String> MEGAMORPHIC_REASONS = Set.of("virtual call", "no static binding");
+
+  static final class Decision {
+    final boolean myInlined;
+    final String myReason;
+
+    Decision(boolean inlined, @NotNull String reason) {
+      myInlined = inlined;
+      myReason = reason;
+    }
+  }
+
+  private final Map<String, List<Decision>> myDecisions = new HashMap<>();
+  private final Set<String> myCompiled = new HashSet<>();
+
+  private InliningLog() {
+  }
+
+  @NotNull
+  static InliningLog parse(@NotNull List<String> lines) {
+    InliningLog log = new InliningLog();
+    for (String line : lines) {
+      Matcher decision = DECISION.matcher(line);
+      if (decision.matches()) {
+        String message = decision.group(2).trim();
+        if (message.isEmpty()) continue;
+        log.myDecisions.computeIfAbsent(decision.group(1), k -> new ArrayList<>()).add(toDecision(message));
+        continue;
+      }
+      Matcher compilation = COMPILATION.matcher(line);
+      if (compilation.find()) log.myCompiled.add(compilation.group(1));
+    }
+    return log;
+  }
+
+  @NotNull
+  private static Decision toDecision(@NotNull String message) {
+    int failed = message.indexOf(FAILED);
+    if (failed >= 0) {
+      String reason = message.substring(failed + FAILED.length()).trim();
+      return new Decision(false, reason.startsWith(":") ? reason.substring(1).trim() : reason);
+    }
+    if (message.contains("failed")) return new Decision(false, message);
+    for (String prefix : INLINED_PREFIXES) {
+      if (message.startsWith(prefix)) return new Decision(true, message);
+    }
+    return new Decision(false, message);
+  }
+
+  /**
+   * @return decisions on inlining the callee, empty if no compiled method calls it
+   */
+  @NotNull
+  List<Decision> getDecisions(@NotNull String callee) {
+    return myDecisions.getOrDefault(callee, Collections.emptyList());
+  }
+
+  /**
+   * @return decisions on inlining methods of the name declared in the classes of the package, e.g. the implementations of
+   * {@code map} in {@code java.util.stream}, which are not known from the interface method the source calls
+   */
+  @NotNull
+  List<Decision> getDecisions(@NotNull String packagePrefix, @NotNull String methodName) {
+    List<Decision> result = new ArrayList<>();
+    for (Map.Entry<String, List<Decision>> entry : myDecisions.entrySet()) {
+      String callee = entry.getKey();
+      if (callee.startsWith(packagePrefix) && callee.endsWith("::" + methodName)) result.addAll(entry.getValue());
+    }
+    return result;
+  }
+
+  /**
+   * @return true if the method was compiled on its own, which also happens when its call sites didn't inline it
+   */
+  boolean isCompiled(@NotNull String method) {
+    return myCompiled.contains(method);
+  }
+
+  /**
+   * @return number of call sites of functional interfaces left virtual, because they saw too many lambda classes
+   */
+  int getMegamorphicCount() {
+    int count = 0;
+    for (Map.Entry<String, List<Decision>> entry : myDecisions.entrySet()) {
+      if (!entry.getKey().startsWith("java.util.function.")) continue;
+      for (Decision decision : entry.getValue()) {
+        if (!decision.myInlined && MEGAMORPHIC_REASONS.contains(decision.myReason)) count++;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * @return advice for a failure reason of HotSpot, or null if there's nothing to do about it in the pipeline
+   */
+  @Nullable
+  static String getAdvice(@NotNull String reason) {
+    if (reason.contains("too big") || reason.contains("too large") || reason.contains("DesiredMethodLimit")) {
+      return "the body is larger than C2 inlines, move the work to a small method or split it between stages";
+    }
+    if (reason.contains("too deep")) {
+      return "the stream internals exceed MaxInlineLevel, a shorter pipeline or a loop gets inlined completely";
+    }
+    if (reason.contains("already compiled into a big method")) {
+      return "the lambda was compiled alone into large code first, keep its body small";
+    }
+    if (MEGAMORPHIC_REASONS.contains(reason)) {
+      return "the call site saw more than two lambda classes, it's shared by the pipelines of the program";
+    }
+    return null;
+  }
+}
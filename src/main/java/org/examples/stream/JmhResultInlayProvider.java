@@ -0,0 +1,141 @@
+package org.examples.stream;
+
+import com.intellij.codeInsight.hints.*;
+import com.intellij.codeInsight.hints.presentation.InlayPresentation;
+import com.intellij.codeInsight.hints.presentation.PresentationFactory;
+import com.intellij.lang.Language;
+import com.intellij.lang.java.JavaLanguage;
+import com.intellij.openapi.editor.Editor;
+import com.intellij.psi.*;
+import com.intellij.psi.util.ClassUtil;
+import com.intellij.psi.util.PsiTreeUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.swing.*;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Shows the JMH results imported with {@link ImportJmhResultsAction} after the stream pipelines of the benchmark methods,
+ * e.g. {@code .collect(toList()) [thrpt 1234 +- 12.3 ops/ms, 14.2% worse than baseline: regression]}.
+ * <p>
+ * The pipelines of a benchmark method share its results, as JMH measures the method as a whole.
+ */
+@SuppressWarnings("UnstableApiUsage")
+public class JmhResultInlayProvider implements InlayHintsProvider<NoSettings> {
+  private static final SettingsKey<NoSettings> KEY = new SettingsKey<>("stream.examples.jmh");
+
+  @NotNull
+  @Override
+  public SettingsKey<NoSettings> getKey() {
+    return KEY;
+  }
+
+  @NotNull
+  @Override
+  public String getName() {
+    return "JMH results";
+  }
+
+  @Nullable
+  @Override
+  public String getPreviewText() {
+    return null;
+  }
+
+  @NotNull
+  @Override
+  public NoSettings createSettings() {
+    return new NoSettings();
+  }
+
+  @NotNull
+  @Override
+  public ImmediateConfigurable createConfigurable(@NotNull NoSettings settings) {
+    return new ImmediateConfigurable() {
+      @NotNull
+      @Override
+      public JComponent createComponent(@NotNull ChangeListener listener) {
+        return new JPanel();
+      }
+
+      @Override
+      public void reset() {
+      }
+
+      @NotNull
+      @Override
+      public String getMainCheckboxText() {
+        return "Show imported JMH results for stream pipelines";
+      }
+
+      @NotNull
+      @Override
+      public List<Case> getCases() {
+        return Collections.emptyList();
+      }
+    };
+  }
+
+  @Override
+  public boolean isLanguageSupported(@NotNull Language language) {
+    return language.isKindOf(JavaLanguage.INSTANCE);
+  }
+
+  @Override
+  public boolean isVisibleInSettings() {
+    return true;
+  }
+
+  @Nullable
+  @Override
+  public InlayHintsCollector getCollectorFor(@NotNull PsiFile file, @NotNull Editor editor, @NotNull NoSettings settings,
+                                             @NotNull InlayHintsSink sink) {
+    JmhResults results = JmhResults.getInstance(file.getProject());
+    if (results.isEmpty()) return null;
+    return new FactoryInlayHintsCollector(editor) {
+      @Override
+      public boolean collect(@NotNull PsiElement element, @NotNull Editor editor, @NotNull InlayHintsSink sink) {
+        if (!(element instanceof PsiMethodCallExpression) || !StreamChain.isOperation((PsiMethodCallExpression)element)) return true;
+        StreamChain chain = StreamChain.of((PsiMethodCallExpression)element);
+        if (chain == null || chain.getLastCall() != element || chain.getTerminal() == null) return true;
+        PsiMethod method = PsiTreeUtil.getParentOfType(element, PsiMethod.class);
+        if (method == null) return true;
+
+        for (JmhResults.Result result : getResults(results, method)) {
+          PresentationFactory factory = getFactory();
+          InlayPresentation presentation = factory.roundWithBackground(factory.smallText(getText(results, result)));
+          sink.addInlineElement(element.getTextRange().getEndOffset(), true, presentation);
+        }
+        return true;
+      }
+    };
+  }
+
+  /**
+   * @return results of the benchmark, JMH names nested benchmark classes either way depending on the version
+   */
+  @NotNull
+  static List<JmhResults.Result> getResults(@NotNull JmhResults results, @NotNull PsiMethod method) {
+    PsiClass psiClass = method.getContainingClass();
+    if (psiClass == null) return Collections.emptyList();
+    String qualifiedName = psiClass.getQualifiedName();
+    List<JmhResults.Result> found = qualifiedName != null ? results.getResults(qualifiedName + "." + method.getName())
+                                                          : Collections.emptyList();
+    String binaryName = found.isEmpty() ? ClassUtil.getJVMClassName(psiClass) : null;
+    return binaryName != null ? results.getResults(binaryName + "." + method.getName()) : found;
+  }
+
+  /**
+   * @return e.g. "thrpt 1234 +- 12.3 ops/ms, 14.2% worse than baseline: regression"
+   */
+  @NotNull
+  static String getText(@NotNull JmhResults results, @NotNull JmhResults.Result result) {
+    String text = result.myMode + " " + result.getText();
+    Double improvement = results.getImprovement(result);
+    if (improvement == null) return text;
+    text += String.format(", %.1f%% %s than baseline", Math.abs(improvement) * 100, improvement >= 0 ? "better" : "worse");
+    return results.isRegression(result) ? text + ": regression" : text;
+  }
+}
@@ -0,0 +1,175 @@
+package org.examples.stream;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.intellij.openapi.components.Service;
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.project.Project;
+import org.jetbrains.annotations.NonNls;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * JMH results imported from the JSON written with {@code -rf json}, by benchmark method, optionally compared to a baseline
+ * result file. The stream pipelines of the benchmark methods show their results with {@link JmhResultInlayProvider}.
+ * <p>
+ * A score is a regression if it's worse than the baseline by more than the errors of both scores together, so the noise of
+ * the runs isn't reported. Higher is better for throughput, lower for the time modes.
+ */
+@Service
+public final class JmhResults {
+  private static final @NonNls String THROUGHPUT_MODE = "thrpt";
+
+  /**
+   * Primary metric of a benchmark run in a mode with a combination of parameters
+   */
+  static final class Result {
+    final String myBenchmark;
+    final String myMode;
+    final String myParams;
+    final double myScore;
+    final double myError;
+    final String myUnit;
+
+    Result(@NotNull String benchmark, @NotNull String mode, @NotNull String params, double score, double error, @NotNull String unit) {
+      myBenchmark = benchmark;
+      myMode = mode;
+      myParams = params;
+      myScore = score;
+      myError = error;
+      myUnit = unit;
+    }
+
+    /**
+     * @return the benchmark, mode and parameters, the same run in another result file has the same key
+     */
+    @NotNull
+    String getKey() {
+      return myBenchmark + " " + myMode + " " + myParams;
+    }
+
+    /**
+     * @return e.g. "1234.5 +- 12.3 ops/ms (size=1000)"
+     */
+    @NotNull
+    String getText() {
+      String text = String.format("%.4g +- %.2g %s", myScore, myError, myUnit);
+      return myParams.isEmpty() ? text : text + " (" + myParams + ")";
+    }
+  }
+
+  private volatile Map<String, List<Result>> myResults = Collections.emptyMap();
+  private volatile Map<String, Result> myBaseline = Collections.emptyMap();
+
+  public static JmhResults getInstance(@NotNull Project project) {
+    return ServiceManager.getService(project, JmhResults.class);
+  }
+
+  /**
+   * Replaces the shown results, the baseline is kept to compare the new results to
+   */
+  void setResults(@NotNull List<Result> results) {
+    myResults = results.stream().collect(Collectors.groupingBy(result -> result.myBenchmark));
+  }
+
+  void setBaseline(@NotNull List<Result> baseline) {
+    Map<String, Result> byKey = new HashMap<>();
+    for (Result result : baseline) {
+      byKey.put(result.getKey(), result);
+    }
+    myBaseline = byKey;
+  }
+
+  boolean isEmpty() {
+    return myResults.isEmpty();
+  }
+
+  /**
+   * @return results of the benchmark method, by its fully qualified name, e.g. {@code org.example.Bench.sortedList}
+   */
+  @NotNull
+  List<Result> getResults(@NotNull String benchmark) {
+    return myResults.getOrDefault(benchmark, Collections.emptyList());
+  }
+
+  @NotNull
+  List<Result> getAllResults() {
+    List<Result> all = new ArrayList<>();
+    myResults.values().forEach(all::addAll);
+    all.sort(Comparator.comparing(Result::getKey));
+    return all;
+  }
+
+  /**
+   * @return relative change of the score against the baseline, positive if it's better, null if there's no baseline
+   */
+  @Nullable
+  Double getImprovement(@NotNull Result result) {
+    Result baseline = myBaseline.get(result.getKey());
+    if (baseline == null || baseline.myScore == 0) return null;
+    double change = (result.myScore - baseline.myScore) / baseline.myScore;
+    return isHigherBetter(result) ? change : -change;
+  }
+
+  /**
+   * @return true if the score is worse than the baseline beyond the errors of both
+   */
+  boolean isRegression(@NotNull Result result) {
+    Result baseline = myBaseline.get(result.getKey());
+    if (baseline == null) return false;
+    double worse = isHigherBetter(result) ? baseline.myScore - result.myScore : result.myScore - baseline.myScore;
+    return worse > result.myError + baseline.myError;
+  }
+
+  private static boolean isHigherBetter(@NotNull Result result) {
+    return THROUGHPUT_MODE.equals(result.myMode);
+  }
+
+  /**
+   * @return primary metrics of the runs in the JMH result file
+   * @throws IOException if the file can't be read or isn't a JMH result file
+   */
+  @NotNull
+  static List<Result> read(@NotNull Path path) throws IOException {
+    JsonElement root;
+    try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+      root = JsonParser.parseReader(reader);
+    }
+    catch (JsonParseException e) {
+      throw new IOException("Not a JSON file: " + e.getMessage(), e);
+    }
+    if (!root.isJsonArray()) throw new IOException("Not a JMH result file, runs are expected in an array");
+
+    List<Result> results = new ArrayList<>();
+    for (JsonElement element : (JsonArray)root) {
+      JsonObject run = element.isJsonObject() ? element.getAsJsonObject() : null;
+      JsonObject metric = run != null && run.has("primaryMetric") ? run.getAsJsonObject("primaryMetric") : null;
+      if (metric == null || !run.has("benchmark") || !metric.has("score")) {
+        throw new IOException("Not a JMH result file, a run has no benchmark or score");
+      }
+      List<String> params = new ArrayList<>();
+      if (run.has("params")) {
+        for (Map.Entry<String, JsonElement> param : run.getAsJsonObject("params").entrySet()) {
+          params.add(param.getKey() + "=" + param.getValue().getAsString());
+        }
+      }
+      double error = metric.has("scoreError") && metric.get("scoreError").isJsonPrimitive() &&
+                     metric.getAsJsonPrimitive("scoreError").isNumber() ? metric.get("scoreError").getAsDouble() : 0;
+      results.add(new Result(run.get("benchmark").getAsString(), run.has("mode") ? run.get("mode").getAsString() : "",
+                             String.join(", ", params), metric.get("score").getAsDouble(), error,
+                             metric.has("scoreUnit") ? metric.get("scoreUnit").getAsString() : ""));
+    }
+    return results;
+  }
+}
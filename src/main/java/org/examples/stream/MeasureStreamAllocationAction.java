@@ -0,0 +1,143 @@
+package org.examples.stream;
+
+import com.intellij.codeInsight.hint.HintManager;
+import com.intellij.execution.ExecutionException;
+import com.intellij.openapi.actionSystem.AnAction;
+import com.intellij.openapi.actionSystem.AnActionEvent;
+import com.intellij.openapi.actionSystem.CommonDataKeys;
+import com.intellij.openapi.application.AccessToken;
+import com.intellij.openapi.editor.Editor;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.Task;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.projectRoots.Sdk;
+import com.intellij.openapi.ui.Messages;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.psi.*;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.*;
+
+/**
+ * Measures the bytes allocated by the stream pipeline at the caret and by the boxed and primitive variants of the examples of
+ * its operations, each in a forked JVM, and shows the results on the example page of the first operation having an example.
+ * Allocation is measured with {@code ThreadMXBean.getThreadAllocatedBytes} summed over all threads, so the worker threads of
+ * parallel pipelines are counted too.
+ */
+public class MeasureStreamAllocationAction extends AnAction {
+  private static final List<String> JVM_OPTIONS = List.of("-Xmx2g");
+  private static final int MAX_LABEL_LENGTH = 80;
+
+  @Override
+  public void update(@NotNull AnActionEvent event) {
+    try (AccessToken ignored = EdtWatchdog.start("MeasureStreamAllocationAction.update")) {
+      Editor editor = event.getData(CommonDataKeys.EDITOR);
+      PsiFile file = event.getData(CommonDataKeys.PSI_FILE);
+      event.getPresentation().setEnabledAndVisible(editor != null && file != null &&
+                                                   ProfileStreamScalingAction.findChain(editor, file) != null);
+    }
+  }
+
+  @Override
+  public void actionPerformed(@NotNull AnActionEvent event) {
+    Project project = event.getProject();
+    Editor editor = event.getData(CommonDataKeys.EDITOR);
+    PsiFile file = event.getData(CommonDataKeys.PSI_FILE);
+    StreamChain chain = editor != null && file != null ? ProfileStreamScalingAction.findChain(editor, file) : null;
+    if (project == null || chain == null) return;
+
+    Sdk jdk = PipelineBenchmark.findJdk(file);
+    if (jdk == null) {
+      HintManager.getInstance().showErrorHint(editor, "Measuring runs the pipeline with the project JDK, which must be 11 or newer");
+      return;
+    }
+
+    Set<String> exampleKeys = new LinkedHashSet<>();
+    PsiMethodCallExpression exampleCall = null;
+    PsiMethod exampleMethod = null;
+    for (PsiMethodCallExpression operation : chain.getOperations()) {
+      String key = StreamExampleLineMarkerProvider.getExampleKey(operation);
+      if (key == null || !CodeExamples.classToFileMap.containsKey(key)) continue;
+      exampleKeys.add(key);
+      if (exampleMethod == null) {
+        exampleMethod = operation.resolveMethod();
+        exampleCall = operation;
+      }
+    }
+    String unsupported = PipelineBenchmark.findUnsupported(chain);
+    PipelineBenchmark selected = unsupported == null ? PipelineBenchmark.create(chain) : null;
+    if (selected == null && exampleKeys.stream().allMatch(key -> AllocationResults.getVariants(key).isEmpty())) {
+      HintManager.getInstance().showErrorHint(editor, unsupported);
+      return;
+    }
+    String selectedLabel = StringUtil.shortenTextWithEllipsis(
+      StringUtil.collapseWhiteSpace(chain.getLastCall().getText()), MAX_LABEL_LENGTH, 0);
+    SmartPointerManager pointers = SmartPointerManager.getInstance(project);
+    SmartPsiElementPointer<PsiMethod> methodPointer = exampleMethod != null ? pointers.createSmartPsiElementPointer(exampleMethod) : null;
+    SmartPsiElementPointer<PsiMethodCallExpression> callPointer =
+      exampleCall != null ? pointers.createSmartPsiElementPointer(exampleCall) : null;
+
+    new Task.Backgroundable(project, "Measuring stream allocations", true) {
+      private final Map<String, List<AllocationResults.Row>> myRows = new LinkedHashMap<>();
+      private long mySelectedBytes = -1;
+      private String myError;
+
+      @Override
+      public void run(@NotNull ProgressIndicator indicator) {
+        try {
+          Map<List<String>, List<AllocationResults.Row>> measured = new HashMap<>();
+          for (String key : exampleKeys) {
+            List<String> variants = AllocationResults.getVariants(key);
+            if (variants.isEmpty()) continue;
+            List<AllocationResults.Row> rows = measured.get(variants);
+            if (rows == null) {
+              rows = new ArrayList<>();
+              for (String operations : variants) {
+                indicator.setText("Measuring stream()" + operations);
+                long bytes = measure(PipelineBenchmark.overIntegers(operations), jdk, indicator);
+                rows.add(new AllocationResults.Row("stream()" + operations, bytes));
+              }
+              measured.put(variants, rows);
+            }
+            myRows.put(key, new ArrayList<>(rows));
+          }
+          if (selected != null) {
+            indicator.setText("Measuring " + selectedLabel);
+            mySelectedBytes = measure(selected, jdk, indicator);
+          }
+        }
+        catch (ExecutionException e) {
+          myError = e.getMessage();
+        }
+      }
+
+      @Override
+      public void onSuccess() {
+        if (myError != null) {
+          Messages.showErrorDialog(project, myError, "Stream Allocation Measurement");
+          return;
+        }
+        for (String key : exampleKeys) {
+          List<AllocationResults.Row> rows = myRows.computeIfAbsent(key, k -> new ArrayList<>());
+          if (mySelectedBytes >= 0) rows.add(new AllocationResults.Row("Selected: " + selectedLabel, mySelectedBytes));
+          AllocationResults.getInstance().record(key, rows);
+        }
+
+        PsiMethod method = methodPointer != null ? methodPointer.getElement() : null;
+        PsiMethodCallExpression call = callPointer != null ? callPointer.getElement() : null;
+        if (method != null && call != null) {
+          DocumentationManager.getInstance(project).showJavaDocInfo(method, call);
+        }
+        else if (mySelectedBytes >= 0 && !editor.isDisposed()) {
+          HintManager.getInstance().showInformationHint(editor, "The pipeline allocates " + StringUtil.formatFileSize(mySelectedBytes) +
+                                                                " per run on " + AllocationResults.SIZE + " elements");
+        }
+      }
+    }.queue();
+  }
+
+  private static long measure(@NotNull PipelineBenchmark benchmark, @NotNull Sdk jdk, @NotNull ProgressIndicator indicator)
+    throws ExecutionException {
+    return benchmark.run(jdk, JVM_OPTIONS, new long[]{AllocationResults.SIZE}, PipelineBenchmark.Measurement.ALLOCATION, indicator)[0];
+  }
+}
@@ -0,0 +1,117 @@
+package org.examples.stream;
+
+import com.intellij.codeInsight.daemon.DaemonCodeAnalyzer;
+import com.intellij.openapi.actionSystem.AnAction;
+import com.intellij.openapi.actionSystem.AnActionEvent;
+import com.intellij.openapi.fileChooser.FileChooser;
+import com.intellij.openapi.fileChooser.FileChooserDescriptor;
+import com.intellij.openapi.fileChooser.FileChooserDescriptorFactory;
+import com.intellij.openapi.fileEditor.OpenFileDescriptor;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.Task;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.ui.Messages;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.openapi.vfs.VfsUtilCore;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.JavaPsiFacade;
+import com.intellij.psi.PsiClass;
+import com.intellij.psi.search.GlobalSearchScope;
+import com.intellij.ui.DoubleClickListener;
+import com.intellij.ui.ScrollPaneFactory;
+import com.intellij.ui.SimpleListCellRenderer;
+import com.intellij.ui.components.JBLabel;
+import com.intellij.ui.components.JBList;
+import com.intellij.util.ui.JBUI;
+import org.jetbrains.annotations.NotNull;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.MouseEvent;
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Reads a JFR recording, attributes its execution and allocation samples to the stream pipelines of the project and lists
+ * them by cost in the example tool window. The pipelines are also highlighted in the editor by {@link StreamHotspotAnnotator}.
+ * <p>
+ * The recording is parsed with {@code jdk.jfr.consumer} of the IDE runtime, so recordings of any JDK it can read are supported.
+ */
+public class OpenJfrRecordingAction extends AnAction {
+  @Override
+  public void update(@NotNull AnActionEvent event) {
+    event.getPresentation().setEnabledAndVisible(event.getProject() != null);
+  }
+
+  @Override
+  public void actionPerformed(@NotNull AnActionEvent event) {
+    Project project = event.getProject();
+    if (project == null) return;
+    FileChooserDescriptor descriptor = FileChooserDescriptorFactory.createSingleFileDescriptor("jfr")
+      .withTitle("Open JFR Recording");
+    VirtualFile file = FileChooser.chooseFile(descriptor, project, null);
+    if (file == null) return;
+    Path path = VfsUtilCore.virtualToIoFile(file).toPath();
+
+    new Task.Backgroundable(project, "Reading JFR recording", true) {
+      private StreamHotspots.Recording myRecording;
+      private String myError;
+
+      @Override
+      public void run(@NotNull ProgressIndicator indicator) {
+        try {
+          myRecording = StreamHotspots.read(path, indicator);
+        }
+        catch (IOException e) {
+          myError = "Can't read " + path.getFileName() + ": " + e.getMessage();
+        }
+      }
+
+      @Override
+      public void onSuccess() {
+        if (myRecording == null) {
+          Messages.showErrorDialog(project, myError, "JFR Recording");
+          return;
+        }
+        StreamHotspots.getInstance(project).setRecording(myRecording);
+        DaemonCodeAnalyzer.getInstance(project).restart();
+        DocumentationManager.getInstance(project).showContent(createSiteList(project, myRecording), "JFR");
+      }
+    }.queue();
+  }
+
+  @NotNull
+  private static JComponent createSiteList(@NotNull Project project, @NotNull StreamHotspots.Recording recording) {
+    JBList<StreamHotspots.Site> list = new JBList<>(recording.mySites);
+    list.setCellRenderer(SimpleListCellRenderer.create((label, site, index) -> label.setText(String.format(
+      "%5.1f%% cpu  %5.1f%% alloc  %s.%s:%d", recording.getExecutionShare(site) * 100, recording.getAllocationShare(site) * 100,
+      StringUtil.getShortName(site.myClassName), site.myMethodName, site.myLine))));
+    new DoubleClickListener() {
+      @Override
+      protected boolean onDoubleClick(@NotNull MouseEvent event) {
+        StreamHotspots.Site site = list.getSelectedValue();
+        if (site != null) navigate(project, site);
+        return site != null;
+      }
+    }.installOn(list);
+
+    String summary = recording.mySites.isEmpty()
+                     ? "No samples of " + recording.myName + " ran a stream pipeline of the project"
+                     : recording.mySites.size() + " pipeline call sites in " + recording.myName + ", double-click to open";
+    if (recording.myUnattributedSamples > 0) {
+      summary += " (" + recording.myUnattributedSamples + " execution samples in stream code not attributed to a call site)";
+    }
+    JBLabel header = new JBLabel(summary);
+    header.setBorder(JBUI.Borders.empty(8));
+    JPanel panel = new JPanel(new BorderLayout());
+    panel.add(header, BorderLayout.NORTH);
+    panel.add(ScrollPaneFactory.createScrollPane(list), BorderLayout.CENTER);
+    return panel;
+  }
+
+  private static void navigate(@NotNull Project project, @NotNull StreamHotspots.Site site) {
+    PsiClass psiClass = JavaPsiFacade.getInstance(project).findClass(site.getTopLevelClassName(), GlobalSearchScope.allScope(project));
+    VirtualFile file = psiClass != null ? psiClass.getNavigationElement().getContainingFile().getVirtualFile() : null;
+    if (file != null) new OpenFileDescriptor(project, file, site.myLine - 1, 0).navigate(true);
+  }
+}
@@ -0,0 +1,248 @@
+package org.examples.stream;
+
+import com.intellij.codeInspection.AbstractBaseJavaLocalInspectionTool;
+import com.intellij.codeInspection.ProblemsHolder;
+import com.intellij.codeInspection.ui.SingleIntegerFieldOptionsPanel;
+import com.intellij.openapi.util.Pair;
+import com.intellij.psi.*;
+import com.intellij.psi.util.InheritanceUtil;
+import com.intellij.psi.util.PsiUtil;
+import org.jetbrains.annotations.NonNls;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.swing.*;
+import java.util.*;
+
+/**
+ * Reports blocking calls in lambdas and method references passed to operations of parallel streams. Parallel pipelines run
+ * in {@code ForkJoinPool.commonPool()}, which is shared by the whole JVM and is sized for CPU bound work, so a blocked worker
+ * starves everything else using it.
+ * <p>
+ * Known blocking APIs (sleeping, waiting on futures and locks, JDBC, file and socket I/O) and {@code synchronized} sections are
+ * looked for in the lambda and in the source methods it calls, up to {@link #maxDepth} calls deep. Lambdas passed to the
+ * arguments of an operation, e.g. {@code collect(groupingBy(x -> load(x)))}, run in the pipeline too and are checked as well.
+ */
+public class ParallelStreamBlockingInspection extends AbstractBaseJavaLocalInspectionTool {
+  private static final int DEFAULT_MAX_DEPTH = 3;
+
+  /**
+   * Class and names of its blocking methods, an empty set stands for all methods of the class. Subclasses are matched too.
+   */
+  private static final Map<String, Set<String>> BLOCKING_METHODS = Map.ofEntries(
+    Map.entry("java.lang.Thread", Set.of("sleep", "join")),
+    Map.entry(CommonClassNames.JAVA_LANG_OBJECT, Set.of("wait")),
+    Map.entry("java.util.concurrent.Future", Set.of("get")),
+    Map.entry("java.util.concurrent.CompletableFuture", Set.of("join", "get")),
+    Map.entry("java.util.concurrent.CountDownLatch", Set.of("await")),
+    Map.entry("java.util.concurrent.CyclicBarrier", Set.of("await")),
+    Map.entry("java.util.concurrent.Semaphore", Set.of("acquire", "acquireUninterruptibly")),
+    Map.entry("java.util.concurrent.Phaser", Set.of("arriveAndAwaitAdvance", "awaitAdvance")),
+    Map.entry("java.util.concurrent.BlockingQueue", Set.of("put", "take")),
+    Map.entry("java.util.concurrent.locks.Lock", Set.of("lock", "lockInterruptibly")),
+    Map.entry("java.util.concurrent.locks.Condition", Set.of("await", "awaitUninterruptibly")),
+    Map.entry("java.sql.Connection", Set.of()),
+    Map.entry("java.sql.Statement", Set.of()),
+    Map.entry("java.sql.ResultSet", Set.of("next")),
+    Map.entry("javax.sql.DataSource", Set.of("getConnection")),
+    Map.entry("java.sql.DriverManager", Set.of("getConnection")),
+    Map.entry("java.io.InputStream", Set.of("read", "readAllBytes", "readNBytes", "transferTo", "skip")),
+    Map.entry("java.io.OutputStream", Set.of("write", "flush")),
+    Map.entry("java.io.Reader", Set.of("read", "transferTo", "skip")),
+    Map.entry("java.io.BufferedReader", Set.of("readLine")),
+    Map.entry("java.io.Writer", Set.of("write", "append", "flush")),
+    Map.entry("java.nio.file.Files", Set.of()),
+    Map.entry("java.nio.channels.Channel", Set.of("read", "write", "accept", "connect")),
+    Map.entry("java.net.Socket", Set.of("connect", "getInputStream", "getOutputStream")),
+    Map.entry("java.net.ServerSocket", Set.of("accept")),
+    Map.entry("java.net.URL", Set.of("openStream", "openConnection", "getContent")),
+    Map.entry("java.net.URLConnection", Set.of("connect", "getInputStream", "getOutputStream", "getContent")),
+    Map.entry("java.net.HttpURLConnection", Set.of("getResponseCode")),
+    Map.entry("java.net.http.HttpClient", Set.of("send"))
+  );
+  /**
+   * I/O classes working in memory, which don't block
+   */
+  private static final Set<String> IN_MEMORY_IO = Set.of(
+    "java.io.ByteArrayInputStream", "java.io.ByteArrayOutputStream", "java.io.StringReader", "java.io.StringWriter",
+    "java.io.CharArrayReader", "java.io.CharArrayWriter"
+  );
+  /**
+   * Classes which constructors open files or connect
+   */
+  private static final Set<String> BLOCKING_CONSTRUCTORS = Set.of(
+    "java.io.FileInputStream", "java.io.FileOutputStream", "java.io.FileReader", "java.io.FileWriter", "java.io.RandomAccessFile",
+    "java.net.Socket"
+  );
+
+  @SuppressWarnings("PublicField")
+  public int maxDepth = DEFAULT_MAX_DEPTH;
+
+  @Nullable
+  @Override
+  public JComponent createOptionsPanel() {
+    return new SingleIntegerFieldOptionsPanel("Maximum depth of calls to look into:", this, "maxDepth");
+  }
+
+  @NotNull
+  @Override
+  public PsiElementVisitor buildVisitor(@NotNull ProblemsHolder holder, boolean isOnTheFly) {
+    return new JavaElementVisitor() {
+      /**
+       * Results by the depth the method was checked at, a method not blocking within the calls left at one depth may still
+       * block with more calls left
+       */
+      private final Map<Pair<PsiMethod, Integer>, Optional<String>> myBlockingByMethod = new HashMap<>();
+
+      @Override
+      public void visitMethodCallExpression(PsiMethodCallExpression call) {
+        super.visitMethodCallExpression(call);
+        List<PsiExpression> functions = new ArrayList<>();
+        for (PsiExpression argument : call.getArgumentList().getExpressions()) {
+          collectFunctions(argument, functions);
+        }
+        if (functions.isEmpty() || !StreamChain.isOperation(call)) return;
+        StreamChain chain = StreamChain.of(call);
+        if (chain == null || !chain.isParallel()) return;
+
+        for (PsiExpression function : functions) {
+          if (function instanceof PsiLambdaExpression) {
+            PsiElement body = ((PsiLambdaExpression)function).getBody();
+            if (body != null) checkBody(body);
+          }
+          else {
+            PsiElement target = ((PsiMethodReferenceExpression)function).resolve();
+            String blocking = target instanceof PsiMethod ? getBlocking((PsiMethod)target, 1) : null;
+            if (blocking != null) register(function, blocking);
+          }
+        }
+      }
+
+      private void checkBody(@NotNull PsiElement body) {
+        body.accept(new JavaRecursiveElementWalkingVisitor() {
+          @Override
+          public void visitClass(PsiClass aClass) {
+            // local and anonymous classes don't run here
+          }
+
+          @Override
+          public void visitSynchronizedStatement(PsiSynchronizedStatement statement) {
+            register(statement.getFirstChild(), "synchronized block");
+          }
+
+          @Override
+          public void visitCallExpression(PsiCallExpression call) {
+            super.visitCallExpression(call);
+            PsiMethod method = call.resolveMethod();
+            String blocking = method != null ? getBlocking(method, 1) : null;
+            if (blocking == null) blocking = getBlockingConstructor(call);
+            if (blocking != null) {
+              PsiElement element = call instanceof PsiMethodCallExpression ? ((PsiMethodCallExpression)call).getMethodExpression() : call;
+              register(element, blocking);
+            }
+          }
+        });
+      }
+
+      /**
+       * @return description of the blocking call the method is or makes, e.g. "load() -> Thread.sleep()"
+       */
+      @Nullable
+      private String getBlocking(@NotNull PsiMethod method, int depth) {
+        String api = getBlockingApi(method);
+        if (api != null) return api;
+        if (method.hasModifierProperty(PsiModifier.SYNCHRONIZED)) return "synchronized " + method.getName() + "()";
+        if (depth >= maxDepth || method instanceof PsiCompiledElement) return null;
+        Pair<PsiMethod, Integer> key = Pair.create(method, depth);
+        Optional<String> known = myBlockingByMethod.get(key);
+        if (known != null) return known.orElse(null);
+
+        // recursion ends at maxDepth as every call goes one level deeper
+        String found = findInBody(method, depth);
+        String result = found != null ? method.getName() + "() -> " + found : null;
+        myBlockingByMethod.put(key, Optional.ofNullable(result));
+        return result;
+      }
+
+      @Nullable
+      private String findInBody(@NotNull PsiMethod method, int depth) {
+        PsiCodeBlock body = method.getBody();
+        if (body == null) return null;
+        String[] found = new String[1];
+        body.accept(new JavaRecursiveElementWalkingVisitor() {
+          @Override
+          public void visitClass(PsiClass aClass) {
+          }
+
+          @Override
+          public void visitSynchronizedStatement(PsiSynchronizedStatement statement) {
+            found[0] = "synchronized block";
+            stopWalking();
+          }
+
+          @Override
+          public void visitCallExpression(PsiCallExpression call) {
+            super.visitCallExpression(call);
+            PsiMethod called = call.resolveMethod();
+            String blocking = called != null ? getBlocking(called, depth + 1) : null;
+            if (blocking == null) blocking = getBlockingConstructor(call);
+            if (blocking != null) {
+              found[0] = blocking;
+              stopWalking();
+            }
+          }
+        });
+        return found[0];
+      }
+
+      private void register(@NotNull PsiElement element, @NotNull String blocking) {
+        holder.registerProblem(element, "Blocking call '" + blocking + "' in a parallel stream blocks a worker of the shared " +
+                                        "ForkJoinPool.commonPool(), run it in a dedicated executor or a custom ForkJoinPool");
+      }
+    };
+  }
+
+  /**
+   * Collects lambdas and method references of the argument, including the ones passed to a call in it, like a collector factory
+   */
+  private static void collectFunctions(@Nullable PsiExpression argument, @NotNull List<PsiExpression> functions) {
+    argument = PsiUtil.skipParenthesizedExprDown(argument);
+    if (argument instanceof PsiLambdaExpression || argument instanceof PsiMethodReferenceExpression) {
+      functions.add(argument);
+    }
+    else if (argument instanceof PsiMethodCallExpression) {
+      for (PsiExpression nested : ((PsiMethodCallExpression)argument).getArgumentList().getExpressions()) {
+        collectFunctions(nested, functions);
+      }
+    }
+  }
+
+  /**
+   * @return e.g. "Thread.sleep()" if the method is a known blocking API
+   */
+  @Nullable
+  private static String getBlockingApi(@NotNull PsiMethod method) {
+    PsiClass psiClass = method.getContainingClass();
+    if (psiClass == null || IN_MEMORY_IO.contains(psiClass.getQualifiedName())) return null;
+    String name = method.getName();
+    for (Map.Entry<String, Set<String>> entry : BLOCKING_METHODS.entrySet()) {
+      Set<String> names = entry.getValue();
+      if ((names.isEmpty() || names.contains(name)) && InheritanceUtil.isInheritor(psiClass, false, entry.getKey())) {
+        return psiClass.getName() + "." + name + "()";
+      }
+    }
+    return null;
+  }
+
+  @Nullable
+  private static String getBlockingConstructor(@NotNull PsiCallExpression call) {
+    if (!(call instanceof PsiNewExpression)) return null;
+    PsiJavaCodeReferenceElement reference = ((PsiNewExpression)call).getClassReference();
+    PsiElement target = reference != null ? reference.resolve() : null;
+    if (!(target instanceof PsiClass)) return null;
+    for (@NonNls String className : BLOCKING_CONSTRUCTORS) {
+      if (InheritanceUtil.isInheritor((PsiClass)target, false, className)) return "new " + ((PsiClass)target).getName() + "()";
+    }
+    return null;
+  }
+}
@@ -0,0 +1,310 @@
+package org.examples.stream;
+
+import com.intellij.codeInspection.*;
+import com.intellij.openapi.project.Project;
+import com.intellij.psi.*;
+import com.intellij.psi.codeStyle.JavaCodeStyleManager;
+import com.intellij.psi.tree.IElementType;
+import com.intellij.psi.util.InheritanceUtil;
+import com.intellij.psi.util.PsiTreeUtil;
+import com.intellij.psi.util.PsiUtil;
+import org.jetbrains.annotations.NonNls;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Reports writes to state shared between the workers of a parallel stream: fields and array elements assigned in lambdas,
+ * and collections, atomics and builders declared outside of a lambda and modified in it. Synchronized and concurrent
+ * collections, atomics and adders are thread safe, but the workers contend on them and the pipeline runs serialized.
+ * <p>
+ * {@code forEach} lambdas which only add to a collection, merge into a map or bump a counter are rewritten to collect with
+ * {@code toList()}, {@code groupingByConcurrent()} or {@code toConcurrentMap()}, or to sum the counts, and then update the
+ * shared state once.
+ */
+public class ParallelStreamSharedStateInspection extends AbstractBaseJavaLocalInspectionTool {
+  /**
+   * Class and names of its methods modifying the instance
+   */
+  private static final Map<String, Set<String>> MUTATORS;
+  static {
+    Set<String> atomicUpdates = Set.of("incrementAndGet", "getAndIncrement", "decrementAndGet", "getAndDecrement", "addAndGet", "getAndAdd",
+                                       "accumulateAndGet", "getAndAccumulate", "updateAndGet", "getAndUpdate", "set", "getAndSet",
+                                       "compareAndSet", "lazySet");
+    MUTATORS = Map.of(
+      CommonClassNames.JAVA_UTIL_COLLECTION, Set.of("add", "addAll", "remove", "removeAll", "removeIf", "retainAll", "clear"),
+      CommonClassNames.JAVA_UTIL_MAP, Set.of("put", "putAll", "putIfAbsent", "merge", "compute", "computeIfAbsent", "computeIfPresent",
+                                             "remove", "replace", "clear"),
+      "java.util.concurrent.atomic.AtomicInteger", atomicUpdates,
+      "java.util.concurrent.atomic.AtomicLong", atomicUpdates,
+      "java.util.concurrent.atomic.AtomicReference", atomicUpdates,
+      // LongAdder, DoubleAdder and the accumulators
+      "java.util.concurrent.atomic.Striped64", Set.of("add", "increment", "decrement", "accumulate", "reset"),
+      "java.lang.AbstractStringBuilder", Set.of("append", "insert", "delete", "setLength")
+    );
+  }
+  private static final @NonNls String ATOMIC_INTEGER = "java.util.concurrent.atomic.AtomicInteger";
+  private static final @NonNls String ATOMIC_LONG = "java.util.concurrent.atomic.AtomicLong";
+  private static final @NonNls String LONG_ADDER = "java.util.concurrent.atomic.LongAdder";
+
+  @NotNull
+  @Override
+  public PsiElementVisitor buildVisitor(@NotNull ProblemsHolder holder, boolean isOnTheFly) {
+    return new JavaElementVisitor() {
+      @Override
+      public void visitMethodCallExpression(PsiMethodCallExpression call) {
+        super.visitMethodCallExpression(call);
+        PsiExpression function = StreamChain.getSingleArgument(call);
+        if (!(function instanceof PsiLambdaExpression) && !(function instanceof PsiMethodReferenceExpression)) return;
+        if (!StreamChain.isOperation(call)) return;
+        StreamChain chain = StreamChain.of(call);
+        if (chain == null || !chain.isParallel()) return;
+
+        if (function instanceof PsiMethodReferenceExpression) {
+          PsiMethodReferenceExpression reference = (PsiMethodReferenceExpression)function;
+          PsiElement target = reference.resolve();
+          PsiExpression qualifier = reference.getQualifierExpression();
+          qualifier = PsiUtil.skipParenthesizedExprDown(qualifier);
+          if (target instanceof PsiMethod && qualifier instanceof PsiReferenceExpression && isMutator((PsiMethod)target) &&
+              isShared((PsiReferenceExpression)qualifier, null)) {
+            register(reference, qualifier.getText(), call);
+          }
+          return;
+        }
+        PsiLambdaExpression lambda = (PsiLambdaExpression)function;
+        PsiElement body = lambda.getBody();
+        if (body == null) return;
+        body.accept(new JavaRecursiveElementWalkingVisitor() {
+          @Override
+          public void visitClass(PsiClass aClass) {
+          }
+
+          @Override
+          public void visitAssignmentExpression(PsiAssignmentExpression expression) {
+            super.visitAssignmentExpression(expression);
+            checkWrite(expression.getLExpression());
+          }
+
+          @Override
+          public void visitUnaryExpression(PsiUnaryExpression expression) {
+            super.visitUnaryExpression(expression);
+            IElementType operation = expression.getOperationTokenType();
+            if (operation == JavaTokenType.PLUSPLUS || operation == JavaTokenType.MINUSMINUS) checkWrite(expression.getOperand());
+          }
+
+          @Override
+          public void visitMethodCallExpression(PsiMethodCallExpression expression) {
+            super.visitMethodCallExpression(expression);
+            PsiExpression qualifier = PsiUtil.skipParenthesizedExprDown(expression.getMethodExpression().getQualifierExpression());
+            PsiMethod method = expression.resolveMethod();
+            if (qualifier instanceof PsiReferenceExpression && method != null && isMutator(method) &&
+                isShared((PsiReferenceExpression)qualifier, lambda)) {
+              register(expression.getMethodExpression(), qualifier.getText(), call);
+            }
+          }
+
+          private void checkWrite(@Nullable PsiExpression written) {
+            written = PsiUtil.skipParenthesizedExprDown(written);
+            if (written instanceof PsiArrayAccessExpression) {
+              PsiExpression array = PsiUtil.skipParenthesizedExprDown(((PsiArrayAccessExpression)written).getArrayExpression());
+              if (array instanceof PsiReferenceExpression && isShared((PsiReferenceExpression)array, lambda)) {
+                register(written, array.getText(), call);
+              }
+            }
+            else if (written instanceof PsiReferenceExpression && ((PsiReferenceExpression)written).resolve() instanceof PsiField &&
+                     isShared((PsiReferenceExpression)written, lambda)) {
+              register(written, written.getText(), call);
+            }
+          }
+        });
+      }
+
+      private void register(@NotNull PsiElement element, @NotNull String shared, @NotNull PsiMethodCallExpression operation) {
+        List<LocalQuickFix> fixes = new ArrayList<>();
+        if (getRewrite(operation) != null) fixes.add(new CollectInsteadFix());
+        ShowExampleFix showExample = ShowExampleFix.create("java.util.stream.Collectors.groupingBy2");
+        if (showExample != null) fixes.add(showExample);
+        holder.registerProblem(element, "Write to shared '" + shared + "' in a parallel stream makes the workers contend on it, " +
+                                        "collect the results with a collector instead", fixes.toArray(LocalQuickFix.EMPTY_ARRAY));
+      }
+    };
+  }
+
+  private static boolean isMutator(@NotNull PsiMethod method) {
+    PsiClass psiClass = method.getContainingClass();
+    if (psiClass == null) return false;
+    for (Map.Entry<String, Set<String>> entry : MUTATORS.entrySet()) {
+      if (entry.getValue().contains(method.getName()) && InheritanceUtil.isInheritor(psiClass, false, entry.getKey())) return true;
+    }
+    return false;
+  }
+
+  /**
+   * @return true if the reference is a variable declared outside of the lambda, a static field or a field of {@code this} or of
+   * a shared object, fields of objects created in the lambda aren't shared
+   */
+  private static boolean isShared(@NotNull PsiReferenceExpression reference, @Nullable PsiLambdaExpression lambda) {
+    PsiElement target = reference.resolve();
+    if (target instanceof PsiField) {
+      if (((PsiField)target).hasModifierProperty(PsiModifier.STATIC)) return true;
+      PsiExpression qualifier = PsiUtil.skipParenthesizedExprDown(reference.getQualifierExpression());
+      return qualifier == null || qualifier instanceof PsiThisExpression ||
+             qualifier instanceof PsiReferenceExpression && isShared((PsiReferenceExpression)qualifier, lambda);
+    }
+    return target instanceof PsiVariable && (lambda == null || !PsiTreeUtil.isAncestor(lambda, target, true));
+  }
+
+  /**
+   * @return statement replacing the {@code forEach} statement of the operation, e.g. {@code list.addAll(s.collect(toList()));}
+   * for {@code s.forEach(x -> list.add(x));}, or null if the lambda is not one of the supported shapes
+   */
+  @Nullable
+  static String getRewrite(@NotNull PsiMethodCallExpression operation) {
+    String name = StreamChain.getName(operation);
+    if (!"forEach".equals(name) && !"forEachOrdered".equals(name)) return null;
+    if (!(PsiUtil.skipParenthesizedExprUp(operation.getParent()) instanceof PsiExpressionStatement)) return null;
+    PsiExpression stream = operation.getMethodExpression().getQualifierExpression();
+    PsiType elementType = stream != null ? StreamChain.getElementType(stream.getType()) : null;
+    PsiExpression function = StreamChain.getSingleArgument(operation);
+    if (elementType == null) return null;
+    boolean primitive = elementType instanceof PsiPrimitiveType;
+
+    if (function instanceof PsiMethodReferenceExpression) {
+      PsiMethodReferenceExpression reference = (PsiMethodReferenceExpression)function;
+      PsiExpression qualifier = reference.getQualifierExpression();
+      if (qualifier == null || !"add".equals(reference.getReferenceName()) ||
+          !InheritanceUtil.isInheritor(qualifier.getType(), CommonClassNames.JAVA_UTIL_COLLECTION)) {
+        return null;
+      }
+      return qualifier.getText() + ".addAll(" + stream.getText() + (primitive ? ".boxed()" : "") + ".collect(java.util.stream.Collectors.toList()));";
+    }
+    PsiLambdaExpression lambda = StreamChain.getLambdaArgument(operation);
+    PsiExpression body = lambda != null ? getSingleExpression(lambda) : null;
+    if (!(body instanceof PsiMethodCallExpression)) return null;
+    PsiMethodCallExpression call = (PsiMethodCallExpression)body;
+    PsiExpression target = PsiUtil.skipParenthesizedExprDown(call.getMethodExpression().getQualifierExpression());
+    if (!(target instanceof PsiReferenceExpression) || !isShared((PsiReferenceExpression)target, lambda)) return null;
+    PsiParameter parameter = lambda.getParameterList().getParameters()[0];
+    String x = parameter.getName();
+    String method = StreamChain.getName(call);
+    PsiExpression[] arguments = call.getArgumentList().getExpressions();
+    PsiType targetType = target.getType();
+
+    if ("add".equals(method) && arguments.length == 1 && InheritanceUtil.isInheritor(targetType, CommonClassNames.JAVA_UTIL_COLLECTION)) {
+      String mapped = isReferenceTo(arguments[0], parameter)
+                      ? (primitive ? ".boxed()" : "")
+                      : (primitive ? ".mapToObj(" : ".map(") + x + " -> " + arguments[0].getText() + ")";
+      return target.getText() + ".addAll(" + stream.getText() + mapped + ".collect(java.util.stream.Collectors.toList()));";
+    }
+    if ("merge".equals(method) && arguments.length == 3 && InheritanceUtil.isInheritor(targetType, CommonClassNames.JAVA_UTIL_MAP) &&
+        !primitive) {
+      String merge = arguments[2].getText();
+      String collector;
+      if ("Integer::sum".equals(merge) || "Long::sum".equals(merge)) {
+        String summing = "Integer::sum".equals(merge) ? "summingInt" : "summingLong";
+        collector = "java.util.stream.Collectors.groupingByConcurrent(" + x + " -> " + arguments[0].getText() + ", " +
+                    "java.util.stream.Collectors." + summing + "(" + x + " -> " + arguments[1].getText() + "))";
+      }
+      else {
+        collector = "java.util.stream.Collectors.toConcurrentMap(" + x + " -> " + arguments[0].getText() + ", " +
+                    x + " -> " + arguments[1].getText() + ", " + merge + ")";
+      }
+      JavaCodeStyleManager codeStyleManager = JavaCodeStyleManager.getInstance(operation.getProject());
+      String k = codeStyleManager.suggestUniqueVariableName("key", operation, true);
+      String v = codeStyleManager.suggestUniqueVariableName("value", operation, true);
+      return stream.getText() + ".collect(" + collector + ").forEach((" + k + ", " + v + ") -> " +
+             target.getText() + ".merge(" + k + ", " + v + ", " + merge + "));";
+    }
+    return getCounterRewrite(target, targetType, method, arguments, parameter, stream.getText(), elementType);
+  }
+
+  /**
+   * @return {@code counter.addAndGet(s.count());} for {@code s.forEach(x -> counter.incrementAndGet());} and
+   * {@code counter.addAndGet(s.mapToLong(x -> f(x)).sum());} for {@code s.forEach(x -> counter.addAndGet(f(x)));}
+   */
+  @Nullable
+  private static String getCounterRewrite(@NotNull PsiExpression target, @Nullable PsiType targetType, @NotNull String method,
+                                          @NotNull PsiExpression[] arguments, @NotNull PsiParameter parameter, @NotNull String stream,
+                                          @NotNull PsiType elementType) {
+    boolean atomicInt = InheritanceUtil.isInheritor(targetType, ATOMIC_INTEGER);
+    boolean atomicLong = InheritanceUtil.isInheritor(targetType, ATOMIC_LONG);
+    boolean adder = InheritanceUtil.isInheritor(targetType, LONG_ADDER);
+    if (!atomicInt && !atomicLong && !adder) return null;
+    String update = adder ? ".add(" : ".addAndGet(";
+
+    boolean increment = arguments.length == 0 &&
+                        (adder ? "increment".equals(method) : "incrementAndGet".equals(method) || "getAndIncrement".equals(method));
+    if (increment) {
+      return target.getText() + update + (atomicInt ? "(int) " : "") + stream + ".count());";
+    }
+    boolean add = arguments.length == 1 && (adder ? "add".equals(method) : "addAndGet".equals(method) || "getAndAdd".equals(method));
+    if (!add) return null;
+    PsiType sumType = atomicInt ? PsiType.INT : PsiType.LONG;
+    String sum;
+    if (isReferenceTo(arguments[0], parameter) && sumType.equals(elementType)) {
+      sum = stream + ".sum()";
+    }
+    else if (atomicInt && PsiType.LONG.equals(elementType)) {
+      // the int additions wrap around the same way as the long sum cast to int
+      sum = "(int) " + stream + ".map(" + parameter.getName() + " -> " + arguments[0].getText() + ").sum()";
+    }
+    else {
+      String map = sumType.equals(elementType) ? ".map(" : atomicInt ? ".mapToInt(" : ".mapToLong(";
+      sum = stream + map + parameter.getName() + " -> " + arguments[0].getText() + ").sum()";
+    }
+    return target.getText() + update + sum + ");";
+  }
+
+  @Nullable
+  private static PsiExpression getSingleExpression(@NotNull PsiLambdaExpression lambda) {
+    PsiElement body = lambda.getBody();
+    if (body instanceof PsiExpression) return PsiUtil.skipParenthesizedExprDown((PsiExpression)body);
+    if (!(body instanceof PsiCodeBlock)) return null;
+    PsiStatement[] statements = ((PsiCodeBlock)body).getStatements();
+    return statements.length == 1 && statements[0] instanceof PsiExpressionStatement
+           ? PsiUtil.skipParenthesizedExprDown(((PsiExpressionStatement)statements[0]).getExpression()) : null;
+  }
+
+  private static boolean isReferenceTo(@NotNull PsiExpression expression, @NotNull PsiVariable variable) {
+    expression = PsiUtil.skipParenthesizedExprDown(expression);
+    return expression instanceof PsiReferenceExpression && ((PsiReferenceExpression)expression).isReferenceTo(variable);
+  }
+
+  /**
+   * Replaces the {@code forEach} statement with the statement of {@link #getRewrite}.
+   */
+  private static final class CollectInsteadFix implements LocalQuickFix {
+    @NotNull
+    @Override
+    public String getFamilyName() {
+      return "Collect in the pipeline and update the shared state once";
+    }
+
+    @Override
+    public void applyFix(@NotNull Project project, @NotNull ProblemDescriptor descriptor) {
+      PsiMethodCallExpression operation = findForEach(descriptor.getPsiElement());
+      String rewrite = operation != null ? getRewrite(operation) : null;
+      if (rewrite == null) return;
+      PsiElement statement = PsiUtil.skipParenthesizedExprUp(operation.getParent());
+      PsiStatement replacement = JavaPsiFacade.getElementFactory(project).createStatementFromText(rewrite, statement);
+      JavaCodeStyleManager.getInstance(project).shortenClassReferences(statement.replace(replacement));
+    }
+
+    @Nullable
+    private static PsiMethodCallExpression findForEach(@NotNull PsiElement element) {
+      for (PsiMethodCallExpression call = PsiTreeUtil.getParentOfType(element, PsiMethodCallExpression.class, false);
+           call != null;
+           call = PsiTreeUtil.getParentOfType(call, PsiMethodCallExpression.class)) {
+        if (StreamChain.isOperation(call) && StreamChain.getSingleArgument(call) != null &&
+            PsiTreeUtil.isAncestor(StreamChain.getSingleArgument(call), element, false)) {
+          return call;
+        }
+      }
+      return null;
+    }
+  }
+}
@@ -0,0 +1,227 @@
+package org.examples.stream;
+
+import com.intellij.codeInspection.AbstractBaseJavaLocalInspectionTool;
+import com.intellij.codeInspection.ProblemHighlightType;
+import com.intellij.codeInspection.ProblemsHolder;
+import com.intellij.psi.*;
+import com.intellij.psi.util.InheritanceUtil;
+import com.intellij.psi.util.PsiTreeUtil;
+import com.intellij.psi.util.PsiUtil;
+import com.siyeh.ig.psiutils.VariableAccessUtils;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Reports how the source of a parallel stream splits. The speedup of a parallel pipeline depends on its source spliterator
+ * splitting into parts of known and similar sizes: array backed sources and ranges are {@code SIZED} and {@code SUBSIZED}
+ * and split in halves, hash and tree based collections split unevenly, while linked lists, iterators, {@code Stream.iterate()}
+ * and {@code BufferedReader.lines()} are walked sequentially and split off in array batches.
+ * <p>
+ * Sources splitting poorly are reported as warnings, the characteristics of the other sources are shown in the editor only.
+ * Iterator backed sources can be wrapped with a fixed size batching spliterator by {@link BatchingSpliteratorIntention}.
+ */
+public class ParallelStreamSourceInspection extends AbstractBaseJavaLocalInspectionTool {
+  enum Balance {
+    /** Splits in halves of exactly known sizes */
+    EVEN("splits evenly"),
+    /** Splits in parts which sizes are estimated */
+    UNEVEN("splits unevenly"),
+    /** Traversed sequentially, parts are copied to arrays of growing sizes */
+    POOR("splits poorly");
+
+    private final String myDescription;
+
+    Balance(@NotNull String description) {
+      myDescription = description;
+    }
+  }
+
+  /**
+   * How a source splits, and why
+   */
+  static final class Splitting {
+    final boolean mySized;
+    final boolean mySubsized;
+    final Balance myBalance;
+    final String myReason;
+
+    Splitting(boolean sized, boolean subsized, @NotNull Balance balance, @NotNull String reason) {
+      mySized = sized;
+      mySubsized = subsized;
+      myBalance = balance;
+      myReason = reason;
+    }
+
+    @NotNull
+    String getCharacteristics() {
+      if (mySubsized) return "SIZED, SUBSIZED";
+      return mySized ? "SIZED" : "not SIZED";
+    }
+  }
+
+  private static final Splitting ARRAY = new Splitting(true, true, Balance.EVEN, "array backed, split in halves");
+  private static final Splitting RANGE = new Splitting(true, true, Balance.EVEN, "range split in halves");
+  private static final Splitting ITERATOR =
+    new Splitting(false, false, Balance.POOR, "iterator is walked sequentially and split off in array batches growing by 1024");
+  private static final Splitting ITERATE =
+    new Splitting(false, false, Balance.POOR, "each element depends on the previous one, so elements are produced sequentially " +
+                                              "and split off in array batches growing by 1024");
+
+  /**
+   * Collection classes and how their spliterators split, subclasses are matched too so the more specific classes go first
+   */
+  private static final Map<String, Splitting> COLLECTIONS = new LinkedHashMap<>();
+  static {
+    COLLECTIONS.put("java.util.LinkedList",
+                    new Splitting(true, false, Balance.POOR, "linked nodes are walked sequentially and split off in array batches"));
+    COLLECTIONS.put("java.util.LinkedHashSet",
+                    new Splitting(true, false, Balance.POOR, "iterator is walked sequentially and split off in array batches"));
+    COLLECTIONS.put("java.util.concurrent.ConcurrentLinkedQueue", ITERATOR);
+    COLLECTIONS.put("java.util.concurrent.ConcurrentLinkedDeque", ITERATOR);
+    COLLECTIONS.put("java.util.concurrent.LinkedBlockingQueue", ITERATOR);
+    COLLECTIONS.put("java.util.concurrent.LinkedBlockingDeque", ITERATOR);
+    COLLECTIONS.put("java.util.concurrent.LinkedTransferQueue", ITERATOR);
+    COLLECTIONS.put("java.util.HashSet", new Splitting(true, false, Balance.UNEVEN, "split by hash table buckets, part sizes are estimates"));
+    COLLECTIONS.put("java.util.TreeSet", new Splitting(true, false, Balance.UNEVEN, "split at tree nodes, part sizes are estimates"));
+    COLLECTIONS.put(CommonClassNames.JAVA_UTIL_ARRAY_LIST, ARRAY);
+    COLLECTIONS.put("java.util.ArrayDeque", ARRAY);
+    COLLECTIONS.put("java.util.PriorityQueue", ARRAY);
+    COLLECTIONS.put("java.util.RandomAccess", ARRAY);
+  }
+  /**
+   * Charsets for which {@code Files.lines()} splits the mapped file at line breaks instead of reading it sequentially
+   */
+  private static final Set<String> SPLITTABLE_CHARSETS = Set.of("UTF_8", "ISO_8859_1", "US_ASCII");
+
+  @NotNull
+  @Override
+  public PsiElementVisitor buildVisitor(@NotNull ProblemsHolder holder, boolean isOnTheFly) {
+    return new JavaElementVisitor() {
+      @Override
+      public void visitMethodCallExpression(PsiMethodCallExpression call) {
+        super.visitMethodCallExpression(call);
+        if (!StreamChain.isOperation(call)) return;
+        StreamChain chain = StreamChain.of(call);
+        if (chain == null || chain.getLastCall() != call || !chain.isParallel()) return;
+        PsiExpression source = chain.getSource();
+        Splitting splitting = getSplitting(source);
+        if (splitting == null || (splitting.myBalance != Balance.POOR && !isOnTheFly)) return;
+
+        PsiElement element = source instanceof PsiMethodCallExpression
+                             ? ((PsiMethodCallExpression)source).getMethodExpression().getReferenceNameElement() : source;
+        if (element == null) return;
+        String message = "Parallel stream source " + splitting.myBalance.myDescription + " (" + splitting.getCharacteristics() + "): " +
+                         splitting.myReason;
+        holder.registerProblem(element, message, splitting.myBalance == Balance.POOR
+                                                 ? ProblemHighlightType.GENERIC_ERROR_OR_WARNING : ProblemHighlightType.INFORMATION);
+      }
+    };
+  }
+
+  /**
+   * @return how the source of a stream splits, or null if the source is not known
+   */
+  @Nullable
+  static Splitting getSplitting(@NotNull PsiExpression source) {
+    source = resolveInitializer(source);
+    if (!(source instanceof PsiMethodCallExpression)) return null;
+    PsiMethodCallExpression call = (PsiMethodCallExpression)source;
+    String name = StreamChain.getName(call);
+    PsiExpression[] arguments = call.getArgumentList().getExpressions();
+    PsiExpression qualifier = call.getMethodExpression().getQualifierExpression();
+
+    if (("stream".equals(name) || "parallelStream".equals(name)) && arguments.length == 0 && qualifier != null) {
+      return InheritanceUtil.isInheritor(qualifier.getType(), CommonClassNames.JAVA_UTIL_COLLECTION)
+             ? getCollectionSplitting(qualifier) : null;
+    }
+    String className = StreamChain.getClassName(call);
+    if (className == null) return null;
+    switch (className) {
+      case "java.util.Arrays":
+        return "stream".equals(name) ? ARRAY : null;
+      case StreamChain.STREAM:
+      case StreamChain.INT_STREAM:
+      case StreamChain.LONG_STREAM:
+      case StreamChain.DOUBLE_STREAM:
+        if ("iterate".equals(name)) return ITERATE;
+        if ("of".equals(name) && arguments.length > 1) return ARRAY;
+        if ("range".equals(name) || "rangeClosed".equals(name)) return RANGE;
+        return null;
+      case StreamChain.STREAM_SUPPORT:
+        return "stream".equals(name) && arguments.length == 2 ? getSpliteratorSplitting(arguments[0]) : null;
+      case "java.io.BufferedReader":
+        return "lines".equals(name) ? ITERATOR : null;
+      case "java.nio.file.Files":
+        if (!"lines".equals(name)) return null;
+        PsiExpression charset = arguments.length == 2 ? PsiUtil.skipParenthesizedExprDown(arguments[1]) : null;
+        if (charset instanceof PsiReferenceExpression &&
+            !SPLITTABLE_CHARSETS.contains(((PsiReferenceExpression)charset).getReferenceName())) {
+          return ITERATOR;
+        }
+        return null;
+      case "java.util.regex.Pattern":
+        return "splitAsStream".equals(name) ? ITERATOR : null;
+      case "java.util.Scanner":
+        return "tokens".equals(name) || "findAll".equals(name) ? ITERATOR : null;
+      default:
+        return null;
+    }
+  }
+
+  /**
+   * @return true if the source is a stream over an iterator, which {@link BatchingSpliteratorIntention} can batch
+   */
+  static boolean isIteratorBacked(@NotNull PsiExpression source) {
+    return getSplitting(source) == ITERATOR;
+  }
+
+  @Nullable
+  private static Splitting getCollectionSplitting(@NotNull PsiExpression collection) {
+    PsiExpression initializer = resolveInitializer(collection);
+    PsiClass psiClass = PsiUtil.resolveClassInClassTypeOnly(initializer.getType());
+    if (psiClass == null) return null;
+    for (Map.Entry<String, Splitting> entry : COLLECTIONS.entrySet()) {
+      if (InheritanceUtil.isInheritor(psiClass, false, entry.getKey())) return entry.getValue();
+    }
+    return null;
+  }
+
+  @Nullable
+  private static Splitting getSpliteratorSplitting(@NotNull PsiExpression spliterator) {
+    spliterator = resolveInitializer(spliterator);
+    if (!(spliterator instanceof PsiMethodCallExpression)) return null;
+    PsiMethodCallExpression call = (PsiMethodCallExpression)spliterator;
+    String name = StreamChain.getName(call);
+    if ("spliteratorUnknownSize".equals(name) && "java.util.Spliterators".equals(StreamChain.getClassName(call))) return ITERATOR;
+    PsiExpression qualifier = call.getMethodExpression().getQualifierExpression();
+    if ("spliterator".equals(name) && call.getArgumentList().getExpressionCount() == 0 && qualifier != null) {
+      // Iterable.spliterator() is not overridden by plain iterables and wraps their iterator
+      PsiType type = qualifier.getType();
+      if (InheritanceUtil.isInheritor(type, CommonClassNames.JAVA_UTIL_COLLECTION)) return getCollectionSplitting(qualifier);
+      PsiMethod method = call.resolveMethod();
+      PsiClass psiClass = method != null ? method.getContainingClass() : null;
+      if (psiClass != null && CommonClassNames.JAVA_LANG_ITERABLE.equals(psiClass.getQualifiedName())) return ITERATOR;
+    }
+    return null;
+  }
+
+  /**
+   * @return initializer of a local variable the expression refers to, if the variable is not reassigned, or the expression itself
+   */
+  @NotNull
+  private static PsiExpression resolveInitializer(@NotNull PsiExpression expression) {
+    expression = PsiUtil.skipParenthesizedExprDown(expression);
+    if (!(expression instanceof PsiReferenceExpression)) return expression;
+    PsiElement target = ((PsiReferenceExpression)expression).resolve();
+    if (!(target instanceof PsiLocalVariable)) return expression;
+    PsiLocalVariable variable = (PsiLocalVariable)target;
+    PsiExpression initializer = PsiUtil.skipParenthesizedExprDown(variable.getInitializer());
+    PsiElement scope = PsiTreeUtil.getParentOfType(variable, PsiCodeBlock.class);
+    if (initializer == null || scope == null || VariableAccessUtils.variableIsAssigned(variable, scope)) return expression;
+    return initializer;
+  }
+}
@@ -0,0 +1,397 @@
+package org.examples.stream;
+
+import com.intellij.execution.ExecutionException;
+import com.intellij.execution.configurations.GeneralCommandLine;
+import com.intellij.execution.process.CapturingProcessHandler;
+import com.intellij.execution.process.ProcessOutput;
+import com.intellij.openapi.module.Module;
+import com.intellij.openapi.module.ModuleUtilCore;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.projectRoots.JavaSdk;
+import com.intellij.openapi.projectRoots.JavaSdkType;
+import com.intellij.openapi.projectRoots.JavaSdkVersion;
+import com.intellij.openapi.projectRoots.Sdk;
+import com.intellij.openapi.roots.ModuleRootManager;
+import com.intellij.openapi.roots.ProjectRootManager;
+import com.intellij.openapi.util.TextRange;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.psi.*;
+import com.intellij.psi.util.InheritanceUtil;
+import com.intellij.psi.util.PsiTreeUtil;
+import com.intellij.psi.util.PsiUtil;
+import org.jetbrains.annotations.NonNls;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A stream pipeline from the editor copied to a standalone program, which runs it on generated inputs in a forked JVM and
+ * measures its time or its allocations per run.
+ * <p>
+ * The pipeline may only use its own lambdas and the JDK, its source collection or array is replaced with a generated one of
+ * the requested size: random numbers or strings below the size, so the number of distinct elements grows with the input.
+ * The program is started with the single-file source launcher, so a project JDK 11 or newer is needed.
+ */
+final class PipelineBenchmark {
+  private static final @NonNls String CLASS_NAME = "StreamPipelineBenchmark";
+  private static final @NonNls String INPUT = "benchInput";
+  private static final @NonNls String SIZE = "benchSize";
+  private static final @NonNls String RESULT_PREFIX = "#result ";
+  private static final int TIMEOUT_MS = 10 * 60 * 1000;
+  private static final int ALLOCATION_WARMUP_RUNS = 50;
+  private static final int ALLOCATION_RUNS = 20;
+  /**
+   * Generated values of the supported element types, by boxed type
+   */
+  private static final Map<String, String> GENERATORS = Map.of(
+    CommonClassNames.JAVA_LANG_INTEGER, "benchRandom.nextInt(" + SIZE + ")",
+    CommonClassNames.JAVA_LANG_LONG, "(long)benchRandom.nextInt(" + SIZE + ")",
+    CommonClassNames.JAVA_LANG_DOUBLE, "benchRandom.nextDouble() * " + SIZE,
+    CommonClassNames.JAVA_LANG_STRING, "\"item\" + benchRandom.nextInt(" + SIZE + ")"
+  );
+
+  /**
+   * Bytes allocated by the threads, parallel pipelines allocate in the common pool threads too
+   */
+  private static final @NonNls String ALLOCATED_BYTES_METHOD =
+    "\n" +
+    "  private static long benchAllocated(long[] threads) {\n" +
+    "    java.lang.management.ThreadMXBean bean = java.lang.management.ManagementFactory.getThreadMXBean();\n" +
+    "    long sum = 0;\n" +
+    "    for (long bytes : ((com.sun.management.ThreadMXBean)bean).getThreadAllocatedBytes(threads)) {\n" +
+    "      if (bytes > 0) sum += bytes;\n" +
+    "    }\n" +
+    "    return sum;\n" +
+    "  }\n";
+
+  enum Measurement {
+    /** Nanoseconds of the fastest run within a second */
+    TIME,
+    /** Bytes allocated by all threads per run, after a warmup */
+    ALLOCATION
+  }
+
+  private final String myImports;
+  private final String myInput;
+  private final String myPipeline;
+  private final boolean myVoid;
+
+  private PipelineBenchmark(@NotNull String imports, @NotNull String input, @NotNull String pipeline, boolean isVoid) {
+    myImports = imports;
+    myInput = input;
+    myPipeline = pipeline;
+    myVoid = isVoid;
+  }
+
+  /**
+   * @return why the pipeline can't be run outside of the project, or null if it can. Pipelines printing to the standard
+   * streams are not run either: the whole output of the program is kept in memory by {@link #runProgram}, and the pipeline
+   * would print every element of the generated input.
+   */
+  @Nullable
+  static String findUnsupported(@NotNull StreamChain chain) {
+    if (chain.getTerminal() == null) {
+      return "The pipeline has no terminal operation, so it doesn't process any elements";
+    }
+    PsiElement replaced = getReplacedSource(chain);
+    if (replaced == null) {
+      return "Only pipelines over collections, arrays and ranges of numbers or strings can be run on generated inputs";
+    }
+    PsiElement pipeline = chain.getLastCall();
+    String[] unsupported = new String[1];
+    pipeline.accept(new JavaRecursiveElementWalkingVisitor() {
+      @Override
+      public void visitReferenceElement(PsiJavaCodeReferenceElement reference) {
+        super.visitReferenceElement(reference);
+        if (unsupported[0] != null || PsiTreeUtil.isAncestor(replaced, reference, false)) return;
+        PsiElement target = reference.resolve();
+        if (target == null) {
+          unsupported[0] = "'" + reference.getText() + "' is not resolved";
+        }
+        else if (target instanceof PsiVariable && !(target instanceof PsiField)) {
+          if (!PsiTreeUtil.isAncestor(pipeline, target, true)) {
+            unsupported[0] = "'" + reference.getText() + "' is declared outside of the pipeline";
+          }
+        }
+        else if (target instanceof PsiField && isStandardStream((PsiField)target)) {
+          unsupported[0] = "'" + reference.getText() + "' would print every element of the generated input";
+        }
+        else if (target instanceof PsiMember) {
+          PsiClass psiClass = target instanceof PsiClass ? (PsiClass)target : ((PsiMember)target).getContainingClass();
+          if (!isJdkClass(psiClass)) unsupported[0] = "'" + reference.getText() + "' is declared in the project";
+        }
+        if (unsupported[0] != null) stopWalking();
+      }
+    });
+    return unsupported[0];
+  }
+
+  private static boolean isStandardStream(@NotNull PsiField field) {
+    PsiClass psiClass = field.getContainingClass();
+    return psiClass != null && CommonClassNames.JAVA_LANG_SYSTEM.equals(psiClass.getQualifiedName()) &&
+           ("out".equals(field.getName()) || "err".equals(field.getName()));
+  }
+
+  /**
+   * @return benchmark of the chain, which must be supported according to {@link #findUnsupported}
+   */
+  @NotNull
+  static PipelineBenchmark create(@NotNull StreamChain chain) {
+    PsiElement replaced = getReplacedSource(chain);
+    assert replaced != null;
+    PsiMethodCallExpression pipeline = chain.getLastCall();
+    TextRange range = replaced.getTextRange().shiftLeft(pipeline.getTextRange().getStartOffset());
+    String input;
+    String replacement;
+    if (replaced instanceof PsiExpressionList) {
+      input = "";
+      replacement = "(0, " + SIZE + ")";
+    }
+    else {
+      input = getInputDeclaration(((PsiExpression)replaced).getType());
+      replacement = INPUT;
+    }
+    String text = range.replace(pipeline.getText(), replacement);
+    return new PipelineBenchmark(getImports(pipeline.getContainingFile()), input, text, PsiType.VOID.equals(pipeline.getType()));
+  }
+
+  /**
+   * @return benchmark of the operations applied to a stream of a generated collection of integers, e.g.
+   * {@code .mapToInt(x -> x * 2).sum()}
+   */
+  @NotNull
+  static PipelineBenchmark overIntegers(@NotNull String operations) {
+    return new PipelineBenchmark("import java.util.stream.*;\n\n", getCollectionInput(CommonClassNames.JAVA_LANG_INTEGER, false),
+                                 INPUT + ".stream()" + operations, false);
+  }
+
+  /**
+   * @return name of the method javac generates for a lambda of the pipeline, as HotSpot prints it. Lambdas are numbered in the
+   * order they appear in the pipeline, there are no others in the program
+   */
+  @NotNull
+  static String getLambdaMethod(int index) {
+    return CLASS_NAME + "::lambda$main$" + index;
+  }
+
+  /**
+   * @return text of a program which takes input sizes as arguments, measures the pipeline at each of them and prints the
+   * sizes with the results
+   */
+  @NotNull
+  String getProgramText(@NotNull Measurement measurement) {
+    String run = myVoid ? myPipeline + ";\n" : "Object benchResult = " + myPipeline + ";\n";
+    // the result is consumed so that the pipeline isn't removed as dead code, outside of the measured time
+    String consume = myVoid ? "" : "        benchHash += java.util.Objects.hashCode(benchResult);\n";
+    String measure;
+    if (measurement == Measurement.TIME) {
+      measure = "      long benchBest = Long.MAX_VALUE;\n" +
+                "      long benchDeadline = System.nanoTime() + 1_000_000_000L;\n" +
+                "      for (int benchRun = 0; benchRun < 3 || benchRun < 1000 && System.nanoTime() < benchDeadline; benchRun++) {\n" +
+                "        long benchStart = System.nanoTime();\n" +
+                "        " + run +
+                "        benchBest = Math.min(benchBest, System.nanoTime() - benchStart);\n" +
+                consume +
+                "      }\n" +
+                "      System.out.println(\"" + RESULT_PREFIX + "\" + " + SIZE + " + \" \" + benchBest);\n";
+    }
+    else {
+      // warmed up first, so that the measured runs are compiled and escape analysis removed what it can
+      measure = "      for (int benchRun = 0; benchRun < " + ALLOCATION_WARMUP_RUNS + "; benchRun++) {\n" +
+                "        " + run +
+                consume +
+                "      }\n" +
+                "      long[] benchThreads = java.lang.management.ManagementFactory.getThreadMXBean().getAllThreadIds();\n" +
+                "      long benchBefore = benchAllocated(benchThreads);\n" +
+                "      for (int benchRun = 0; benchRun < " + ALLOCATION_RUNS + "; benchRun++) {\n" +
+                "        " + run +
+                consume +
+                "      }\n" +
+                "      long benchBytes = (benchAllocated(benchThreads) - benchBefore) / " + ALLOCATION_RUNS + ";\n" +
+                "      System.out.println(\"" + RESULT_PREFIX + "\" + " + SIZE + " + \" \" + benchBytes);\n";
+    }
+    return myImports +
+           "public class " + CLASS_NAME + " {\n" +
+           "  public static void main(String[] args) {\n" +
+           "    long benchHash = 0;\n" +
+           "    for (String benchArg : args) {\n" +
+           "      int " + SIZE + " = Integer.parseInt(benchArg);\n" +
+           "      java.util.Random benchRandom = new java.util.Random(42);\n" +
+           myInput +
+           measure +
+           "    }\n" +
+           "    System.err.println(benchHash);\n" +
+           "  }\n" +
+           (measurement == Measurement.ALLOCATION ? ALLOCATED_BYTES_METHOD : "") +
+           "}\n";
+  }
+
+  /**
+   * Runs the program in a JVM of the JDK, with the input sizes as arguments.
+   *
+   * @return nanoseconds or bytes allocated per pipeline run, in the order of the sizes
+   * @throws ExecutionException if the program fails to start, fails or times out
+   */
+  @NotNull
+  long[] run(@NotNull Sdk jdk, @NotNull List<String> jvmOptions, @NotNull long[] sizes, @NotNull Measurement measurement,
+             @NotNull ProgressIndicator indicator) throws ExecutionException {
+    ProcessOutput output = runProgram(jdk, jvmOptions, sizes, measurement, indicator);
+    long[] results = new long[sizes.length];
+    int count = 0;
+    for (String line : output.getStdoutLines()) {
+      if (!line.startsWith(RESULT_PREFIX) || count == results.length) continue;
+      String[] parts = line.substring(RESULT_PREFIX.length()).split(" ");
+      try {
+        results[count++] = Long.parseLong(parts[1]);
+      }
+      catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+        throw new ExecutionException("Unexpected benchmark output: " + line);
+      }
+    }
+    if (count != results.length) throw new ExecutionException("Benchmark printed " + count + " results of " + results.length);
+    return results;
+  }
+
+  /**
+   * @return output of the program run in a JVM of the JDK, which exited normally
+   */
+  @NotNull
+  ProcessOutput runProgram(@NotNull Sdk jdk, @NotNull List<String> jvmOptions, @NotNull long[] sizes, @NotNull Measurement measurement,
+                           @NotNull ProgressIndicator indicator) throws ExecutionException {
+    File directory;
+    try {
+      directory = FileUtil.createTempDirectory("stream-benchmark", null);
+      FileUtil.writeToFile(new File(directory, CLASS_NAME + ".java"), getProgramText(measurement));
+    }
+    catch (IOException e) {
+      throw new ExecutionException("Can't write the benchmark program: " + e.getMessage(), e);
+    }
+    try {
+      List<String> parameters = new ArrayList<>(jvmOptions);
+      parameters.add(CLASS_NAME + ".java");
+      for (long size : sizes) {
+        parameters.add(String.valueOf(size));
+      }
+      String java = ((JavaSdkType)jdk.getSdkType()).getVMExecutablePath(jdk);
+      GeneralCommandLine commandLine = new GeneralCommandLine(java).withParameters(parameters).withWorkDirectory(directory);
+      ProcessOutput output = new CapturingProcessHandler(commandLine).runProcessWithProgressIndicator(indicator, TIMEOUT_MS);
+      if (output.isCancelled()) throw new ExecutionException("Benchmark is cancelled");
+      if (output.isTimeout()) throw new ExecutionException("Benchmark didn't finish in " + TIMEOUT_MS / 60_000 + " minutes");
+      if (output.getExitCode() != 0) throw new ExecutionException("Benchmark failed: " + output.getStderr());
+      return output;
+    }
+    finally {
+      FileUtil.delete(directory);
+    }
+  }
+
+  /**
+   * @return JDK of the module of the element, or the project JDK, if it can run single-file source programs
+   */
+  @Nullable
+  static Sdk findJdk(@NotNull PsiElement element) {
+    Module module = ModuleUtilCore.findModuleForPsiElement(element);
+    Sdk sdk = module != null ? ModuleRootManager.getInstance(module).getSdk() : null;
+    if (sdk == null) sdk = ProjectRootManager.getInstance(element.getProject()).getProjectSdk();
+    if (sdk == null || !(sdk.getSdkType() instanceof JavaSdkType)) return null;
+    JavaSdkVersion version = JavaSdk.getInstance().getVersion(sdk);
+    return version != null && version.isAtLeast(JavaSdkVersion.JDK_11) ? sdk : null;
+  }
+
+  /**
+   * @return the collection or array the pipeline starts from, or the argument list of a range, which are replaced with
+   * generated input
+   */
+  @Nullable
+  private static PsiElement getReplacedSource(@NotNull StreamChain chain) {
+    if (!(chain.getSource() instanceof PsiMethodCallExpression)) return null;
+    PsiMethodCallExpression source = (PsiMethodCallExpression)chain.getSource();
+    String name = StreamChain.getName(source);
+    PsiExpression[] arguments = source.getArgumentList().getExpressions();
+    PsiExpression qualifier = PsiUtil.skipParenthesizedExprDown(source.getMethodExpression().getQualifierExpression());
+    if (("stream".equals(name) || "parallelStream".equals(name)) && arguments.length == 0 && qualifier != null &&
+        InheritanceUtil.isInheritor(qualifier.getType(), CommonClassNames.JAVA_UTIL_COLLECTION)) {
+      return getGenerator(qualifier.getType()) != null ? qualifier : null;
+    }
+    String className = StreamChain.getClassName(source);
+    if ("java.util.Arrays".equals(className) && "stream".equals(name) && arguments.length == 1) {
+      return getGenerator(arguments[0].getType()) != null ? arguments[0] : null;
+    }
+    if ((StreamChain.INT_STREAM.equals(className) || StreamChain.LONG_STREAM.equals(className)) &&
+        ("range".equals(name) || "rangeClosed".equals(name)) && arguments.length == 2) {
+      return source.getArgumentList();
+    }
+    return null;
+  }
+
+  /**
+   * @return element type of an array or a collection type, e.g. {@code int} or {@code java.lang.String}
+   */
+  @Nullable
+  private static PsiType getElementType(@Nullable PsiType type) {
+    if (type instanceof PsiArrayType) return ((PsiArrayType)type).getComponentType();
+    PsiType elementType = PsiUtil.substituteTypeParameter(type, CommonClassNames.JAVA_UTIL_COLLECTION, 0, false);
+    if (elementType instanceof PsiWildcardType) {
+      elementType = ((PsiWildcardType)elementType).isExtends() ? ((PsiWildcardType)elementType).getBound() : null;
+    }
+    return elementType;
+  }
+
+  @Nullable
+  private static String getGenerator(@Nullable PsiType type) {
+    PsiType elementType = getElementType(type);
+    if (elementType == null) return null;
+    String boxedName = elementType instanceof PsiPrimitiveType
+                       ? ((PsiPrimitiveType)elementType).getBoxedTypeName() : elementType.getCanonicalText();
+    return boxedName != null ? GENERATORS.get(boxedName) : null;
+  }
+
+  /**
+   * @return statements declaring the generated input replacing the array or collection of the type
+   */
+  @NotNull
+  private static String getInputDeclaration(@Nullable PsiType type) {
+    PsiType elementType = getElementType(type);
+    String generator = getGenerator(type);
+    assert elementType != null && generator != null;
+    String elementText = elementType.getCanonicalText();
+    if (type instanceof PsiArrayType) {
+      return "      " + elementText + "[] " + INPUT + " = new " + elementText + "[" + SIZE + "];\n" +
+             "      for (int benchIndex = 0; benchIndex < " + SIZE + "; benchIndex++) " + INPUT + "[benchIndex] = " + generator + ";\n";
+    }
+    return getCollectionInput(elementText, InheritanceUtil.isInheritor(type, CommonClassNames.JAVA_UTIL_SET));
+  }
+
+  @NotNull
+  private static String getCollectionInput(@NotNull String elementType, boolean set) {
+    String collection = set ? "new java.util.HashSet<>()" : "new java.util.ArrayList<>(" + SIZE + ")";
+    return "      java.util.Collection<" + elementType + "> " + INPUT + " = " + collection + ";\n" +
+           "      for (int benchIndex = 0; benchIndex < " + SIZE + "; benchIndex++) " + INPUT + ".add(" + GENERATORS.get(elementType) + ");\n";
+  }
+
+  /**
+   * @return the JDK imports of the file, the pipeline may only use JDK classes
+   */
+  @NotNull
+  private static String getImports(@NotNull PsiFile file) {
+    PsiImportList importList = file instanceof PsiJavaFile ? ((PsiJavaFile)file).getImportList() : null;
+    if (importList == null) return "";
+    StringBuilder result = new StringBuilder();
+    for (PsiImportStatementBase statement : importList.getAllImportStatements()) {
+      PsiJavaCodeReferenceElement reference = statement.getImportReference();
+      String name = reference != null ? reference.getQualifiedName() : null;
+      if (name != null && name.startsWith("java.")) result.append(statement.getText()).append('\n');
+    }
+    return result.append('\n').toString();
+  }
+
+  static boolean isJdkClass(@Nullable PsiClass psiClass) {
+    String name = psiClass != null ? psiClass.getQualifiedName() : null;
+    return name != null && name.startsWith("java.");
+  }
+}
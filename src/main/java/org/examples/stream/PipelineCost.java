@@ -0,0 +1,186 @@
+package org.examples.stream;
+
+import com.intellij.psi.PsiExpression;
+import com.intellij.psi.PsiMethodCallExpression;
+import com.intellij.psi.util.CachedValueProvider;
+import com.intellij.psi.util.CachedValuesManager;
+import org.jetbrains.annotations.NonNls;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Time cost class and buffering of the stages of a stream pipeline, from the names of the operations and of the collectors
+ * passed to {@code collect}. Here n is the number of elements reaching a stage and m the number of elements a
+ * {@code flatMap} function returns for one element.
+ */
+final class PipelineCost {
+  enum Complexity {
+    CONSTANT("O(1)"),
+    LINEAR("O(n)"),
+    LINEARITHMIC("O(n log n)"),
+    NESTED("O(n*m)");
+
+    private final String myText;
+
+    Complexity(@NotNull String text) {
+      myText = text;
+    }
+
+    @NotNull
+    String getText() {
+      return myText;
+    }
+  }
+
+  /**
+   * Cost of a single operation, the buffering is null if the operation doesn't hold elements
+   */
+  static final class Stage {
+    final String myName;
+    final Complexity myComplexity;
+    final String myBuffering;
+    final boolean myShortCircuit;
+
+    Stage(@NotNull String name, @NotNull Complexity complexity, @Nullable String buffering, boolean shortCircuit) {
+      myName = name;
+      myComplexity = complexity;
+      myBuffering = buffering;
+      myShortCircuit = shortCircuit;
+    }
+
+    /**
+     * @return e.g. "O(n log n), buffers all elements"
+     */
+    @NotNull
+    String getText() {
+      return myBuffering != null ? myComplexity.getText() + ", " + myBuffering : myComplexity.getText();
+    }
+  }
+
+  private static final Set<String> CONSTANT_OPERATIONS = Set.of("parallel", "sequential", "unordered", "onClose", "iterator", "spliterator");
+  private static final Set<String> LINEAR_OPERATIONS = Set.of(
+    "filter", "map", "mapToObj", "mapToInt", "mapToLong", "mapToDouble", "boxed", "asLongStream", "asDoubleStream", "peek",
+    "forEach", "forEachOrdered", "reduce", "count", "sum", "min", "max", "average", "summaryStatistics"
+  );
+  private static final Set<String> NESTED_OPERATIONS = Set.of("flatMap", "flatMapToInt", "flatMapToLong", "flatMapToDouble", "mapMulti");
+  private static final Set<String> SHORT_CIRCUIT_OPERATIONS = Set.of("anyMatch", "allMatch", "noneMatch", "findFirst", "findAny");
+  /**
+   * Operations which buffer elements of ordered parallel streams, to keep the encounter order
+   */
+  private static final Set<String> ORDERED_SLICES = Set.of("limit", "skip", "takeWhile", "dropWhile");
+  private static final Set<String> GROUPING_COLLECTORS = Set.of("groupingBy", "groupingByConcurrent", "partitioningBy");
+  private static final Set<String> MAP_COLLECTORS = Set.of("toMap", "toConcurrentMap", "toUnmodifiableMap");
+  private static final Set<String> COLLECTION_COLLECTORS = Set.of(
+    "toList", "toSet", "toCollection", "toUnmodifiableList", "toUnmodifiableSet", "joining"
+  );
+
+  private final List<Stage> myStages;
+
+  private PipelineCost(@NotNull List<Stage> stages) {
+    myStages = Collections.unmodifiableList(stages);
+  }
+
+  /**
+   * @return cost of the chain which last call is the call, cached until its file changes: the costs only depend on the names
+   * of the operations, so changes of other files don't invalidate them
+   */
+  @Nullable
+  static PipelineCost of(@NotNull PsiMethodCallExpression lastCall) {
+    return CachedValuesManager.getCachedValue(lastCall, () -> {
+      StreamChain chain = StreamChain.of(lastCall);
+      PipelineCost cost = chain != null && chain.getLastCall() == lastCall ? compute(chain) : null;
+      return CachedValueProvider.Result.create(cost, lastCall.getContainingFile());
+    });
+  }
+
+  @NotNull
+  private static PipelineCost compute(@NotNull StreamChain chain) {
+    boolean parallel = chain.isParallel();
+    List<Stage> stages = new ArrayList<>();
+    for (PsiMethodCallExpression operation : chain.getOperations()) {
+      stages.add(getStage(operation, parallel));
+    }
+    return new PipelineCost(stages);
+  }
+
+  /**
+   * @return stages in the order of {@link StreamChain#getOperations()}, null for operations which cost is not known
+   */
+  @NotNull
+  List<Stage> getStages() {
+    return myStages;
+  }
+
+  @NotNull
+  Complexity getComplexity() {
+    Complexity result = Complexity.CONSTANT;
+    for (Stage stage : myStages) {
+      if (stage != null && stage.myComplexity.compareTo(result) > 0) result = stage.myComplexity;
+    }
+    return result;
+  }
+
+  /**
+   * @return e.g. "O(n log n), buffers at sorted, materializes groups"
+   */
+  @NotNull
+  String getSummary() {
+    StringBuilder result = new StringBuilder(getComplexity().getText());
+    List<String> buffering = new ArrayList<>();
+    String terminalBuffering = null;
+    boolean shortCircuit = false;
+    for (int i = 0; i < myStages.size(); i++) {
+      Stage stage = myStages.get(i);
+      if (stage == null) continue;
+      shortCircuit |= stage.myShortCircuit;
+      if (stage.myBuffering == null) continue;
+      if (i == myStages.size() - 1 && stage.myBuffering.startsWith("materializes")) terminalBuffering = stage.myBuffering;
+      else if (!buffering.contains(stage.myName)) buffering.add(stage.myName);
+    }
+    if (!buffering.isEmpty()) result.append(", buffers at ").append(String.join(", ", buffering));
+    if (terminalBuffering != null) result.append(", ").append(terminalBuffering);
+    if (shortCircuit) result.append(", short-circuits");
+    return result.toString();
+  }
+
+  @Nullable
+  private static Stage getStage(@NotNull PsiMethodCallExpression operation, boolean parallel) {
+    @NonNls String name = StreamChain.getName(operation);
+    if (CONSTANT_OPERATIONS.contains(name)) return new Stage(name, Complexity.CONSTANT, null, false);
+    if (LINEAR_OPERATIONS.contains(name)) return new Stage(name, Complexity.LINEAR, null, false);
+    if (NESTED_OPERATIONS.contains(name)) return new Stage(name, Complexity.NESTED, null, false);
+    if (SHORT_CIRCUIT_OPERATIONS.contains(name)) return new Stage(name, Complexity.LINEAR, null, true);
+    if (ORDERED_SLICES.contains(name)) {
+      return new Stage(name, Complexity.LINEAR, parallel ? "buffers when ordered" : null, !"skip".equals(name) && !"dropWhile".equals(name));
+    }
+    switch (name) {
+      case "sorted":
+        return new Stage(name, Complexity.LINEARITHMIC, "buffers all elements", false);
+      case "distinct":
+        return new Stage(name, Complexity.LINEAR, "keeps distinct elements", false);
+      case "toArray":
+      case "toList":
+        return new Stage(name, Complexity.LINEAR, "materializes the result", false);
+      case "collect":
+        return new Stage(name, Complexity.LINEAR, getCollectorBuffering(operation), false);
+      default:
+        return null;
+    }
+  }
+
+  @Nullable
+  private static String getCollectorBuffering(@NotNull PsiMethodCallExpression collect) {
+    PsiExpression collector = StreamChain.getSingleArgument(collect);
+    if (!(collector instanceof PsiMethodCallExpression)) return collector == null ? "materializes the result" : null;
+    String name = StreamChain.getName((PsiMethodCallExpression)collector);
+    if (GROUPING_COLLECTORS.contains(name)) return "materializes groups";
+    if (MAP_COLLECTORS.contains(name)) return "materializes a map";
+    if (COLLECTION_COLLECTORS.contains(name)) return "materializes a collection";
+    return null;
+  }
+}
@@ -0,0 +1,105 @@
+package org.examples.stream;
+
+import com.intellij.codeInsight.hint.HintManager;
+import com.intellij.execution.ExecutionException;
+import com.intellij.openapi.actionSystem.AnAction;
+import com.intellij.openapi.actionSystem.AnActionEvent;
+import com.intellij.openapi.actionSystem.CommonDataKeys;
+import com.intellij.openapi.application.AccessToken;
+import com.intellij.openapi.editor.Editor;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.Task;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.projectRoots.Sdk;
+import com.intellij.openapi.ui.Messages;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiMethodCallExpression;
+import com.intellij.psi.util.PsiTreeUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.List;
+
+/**
+ * Runs the stream pipeline at the caret in a forked JVM on generated inputs of 1e3 to 1e7 elements and charts the times
+ * in the example tool window, with the scaling exponent fitted to them. A pipeline which is fine on small inputs can blow up
+ * on large ones because of {@code sorted}, {@code distinct} or nested {@code flatMap}, which shows as an exponent above 1.
+ */
+public class ProfileStreamScalingAction extends AnAction {
+  private static final long[] SIZES = {1_000, 10_000, 100_000, 1_000_000, 10_000_000};
+  private static final List<String> JVM_OPTIONS = List.of("-Xmx2g");
+
+  @Override
+  public void update(@NotNull AnActionEvent event) {
+    try (AccessToken ignored = EdtWatchdog.start("ProfileStreamScalingAction.update")) {
+      Editor editor = event.getData(CommonDataKeys.EDITOR);
+      PsiFile file = event.getData(CommonDataKeys.PSI_FILE);
+      event.getPresentation().setEnabledAndVisible(editor != null && file != null && findChain(editor, file) != null);
+    }
+  }
+
+  @Override
+  public void actionPerformed(@NotNull AnActionEvent event) {
+    Project project = event.getProject();
+    Editor editor = event.getData(CommonDataKeys.EDITOR);
+    PsiFile file = event.getData(CommonDataKeys.PSI_FILE);
+    StreamChain chain = editor != null && file != null ? findChain(editor, file) : null;
+    if (project == null || chain == null) return;
+
+    String unsupported = PipelineBenchmark.findUnsupported(chain);
+    if (unsupported != null) {
+      HintManager.getInstance().showErrorHint(editor, unsupported);
+      return;
+    }
+    Sdk jdk = PipelineBenchmark.findJdk(file);
+    if (jdk == null) {
+      HintManager.getInstance().showErrorHint(editor, "Profiling runs the pipeline with the project JDK, which must be 11 or newer");
+      return;
+    }
+    PipelineBenchmark benchmark = PipelineBenchmark.create(chain);
+    PipelineCost cost = PipelineCost.of(chain.getLastCall());
+    PipelineCost.Complexity expected = cost != null ? cost.getComplexity() : PipelineCost.Complexity.LINEAR;
+    String pipeline = chain.getLastCall().getText();
+
+    new Task.Backgroundable(project, "Profiling stream pipeline", true) {
+      private long[] myTimes;
+      private String myError;
+
+      @Override
+      public void run(@NotNull ProgressIndicator indicator) {
+        indicator.setText("Running the pipeline on up to " + SIZES[SIZES.length - 1] + " elements");
+        try {
+          myTimes = benchmark.run(jdk, JVM_OPTIONS, SIZES, PipelineBenchmark.Measurement.TIME, indicator);
+        }
+        catch (ExecutionException e) {
+          myError = e.getMessage();
+        }
+      }
+
+      @Override
+      public void onSuccess() {
+        if (myTimes == null) {
+          Messages.showErrorDialog(project, myError, "Stream Pipeline Profiling");
+          return;
+        }
+        DocumentationManager.getInstance(project).showContent(new ScalingChart(pipeline, expected, SIZES, myTimes), "Scaling");
+      }
+    }.queue();
+  }
+
+  /**
+   * @return chain of the innermost stream call containing the caret, if the chain ends with a terminal operation
+   */
+  @Nullable
+  static StreamChain findChain(@NotNull Editor editor, @NotNull PsiFile file) {
+    PsiElement element = file.findElementAt(editor.getCaretModel().getOffset());
+    PsiMethodCallExpression call = PsiTreeUtil.getParentOfType(element, PsiMethodCallExpression.class);
+    while (call != null && !StreamChain.isOperation(call)) {
+      call = PsiTreeUtil.getParentOfType(call, PsiMethodCallExpression.class);
+    }
+    StreamChain chain = call != null ? StreamChain.of(call) : null;
+    // a pipeline without a terminal operation doesn't run
+    return chain != null && chain.getTerminal() != null ? chain : null;
+  }
+}
@@ -0,0 +1,151 @@
+package org.examples.stream;
+
+import com.intellij.icons.AllIcons;
+import com.intellij.ui.JBColor;
+import com.intellij.ui.components.JBLabel;
+import com.intellij.util.ui.JBUI;
+import com.intellij.util.ui.UIUtil;
+import org.jetbrains.annotations.NotNull;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.geom.Path2D;
+
+/**
+ * Times of a pipeline at growing input sizes on log-log axes, with the line fitted to them. The slope of the line is the
+ * scaling exponent: 1 for linear pipelines, about 1.1 for sorting in the measured range, 2 and more for nested loops.
+ */
+final class ScalingChart extends JPanel {
+  /**
+   * Exponent from which the scaling is reported as superlinear, a bit above what a sort reaches
+   */
+  private static final double SUPERLINEAR_EXPONENT = 1.2;
+  /**
+   * Smallest size used for the fit, smaller inputs mostly measure the pipeline setup
+   */
+  private static final long MIN_FITTED_SIZE = 10_000;
+
+  private final long[] mySizes;
+  private final long[] myTimes;
+  private final double myExponent;
+  private final double myIntercept;
+
+  ScalingChart(@NotNull String pipeline, @NotNull PipelineCost.Complexity expected, @NotNull long[] sizes, @NotNull long[] times) {
+    super(new BorderLayout());
+    mySizes = sizes;
+    myTimes = times;
+    double[] fit = fit(sizes, times);
+    myExponent = fit[0];
+    myIntercept = fit[1];
+
+    boolean superlinear = myExponent > SUPERLINEAR_EXPONENT;
+    String summary = String.format("Time grows as n^%.2f, expected %s", myExponent, expected.getText());
+    if (superlinear) summary += ": the pipeline slows down faster than its input grows";
+    JBLabel header = new JBLabel(summary, superlinear ? AllIcons.General.Warning : AllIcons.General.Information, SwingConstants.LEFT);
+    header.setToolTipText(pipeline);
+    header.setBorder(JBUI.Borders.empty(8));
+    add(header, BorderLayout.NORTH);
+    add(new Plot(), BorderLayout.CENTER);
+  }
+
+  /**
+   * @return slope and intercept of the least squares line through the logarithms of the times by the logarithms of the sizes
+   */
+  @NotNull
+  private static double[] fit(@NotNull long[] sizes, @NotNull long[] times) {
+    int fitted = 0;
+    for (long size : sizes) {
+      if (size >= MIN_FITTED_SIZE) fitted++;
+    }
+    long minSize = fitted >= 2 ? MIN_FITTED_SIZE : 0;
+    double sumX = 0, sumY = 0, sumXX = 0, sumXY = 0;
+    int count = 0;
+    for (int i = 0; i < sizes.length; i++) {
+      if (sizes[i] < minSize) continue;
+      double x = Math.log(sizes[i]);
+      double y = Math.log(Math.max(times[i], 1));
+      sumX += x;
+      sumY += y;
+      sumXX += x * x;
+      sumXY += x * y;
+      count++;
+    }
+    double denominator = count * sumXX - sumX * sumX;
+    if (count < 2 || denominator == 0) return new double[]{0, sumY / Math.max(count, 1)};
+    double slope = (count * sumXY - sumX * sumY) / denominator;
+    return new double[]{slope, (sumY - slope * sumX) / count};
+  }
+
+  private final class Plot extends JComponent {
+    @Override
+    protected void paintComponent(Graphics g) {
+      Graphics2D g2 = (Graphics2D)g.create();
+      try {
+        g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        paintPlot(g2);
+      }
+      finally {
+        g2.dispose();
+      }
+    }
+
+    private void paintPlot(@NotNull Graphics2D g) {
+      int inset = JBUI.scale(40);
+      int width = getWidth() - 2 * inset;
+      int height = getHeight() - 2 * inset;
+      if (width <= 0 || height <= 0 || mySizes.length == 0) return;
+
+      double minX = Math.log(mySizes[0]), maxX = Math.log(mySizes[mySizes.length - 1]);
+      double minY = Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+      for (long time : myTimes) {
+        double y = Math.log(Math.max(time, 1));
+        minY = Math.min(minY, y);
+        maxY = Math.max(maxY, y);
+      }
+      if (maxX == minX) maxX = minX + 1;
+      if (maxY == minY) maxY = minY + 1;
+      double scaleX = width / (maxX - minX), scaleY = height / (maxY - minY);
+
+      g.setFont(UIUtil.getLabelFont(UIUtil.FontSize.SMALL));
+      g.setColor(JBColor.border());
+      g.drawLine(inset, inset + height, inset + width, inset + height);
+      g.drawLine(inset, inset, inset, inset + height);
+      g.setColor(UIUtil.getContextHelpForeground());
+      g.drawString("time", inset - g.getFontMetrics().stringWidth("time") / 2, inset - JBUI.scale(8));
+
+      g.setColor(JBColor.GRAY);
+      Path2D fitted = new Path2D.Double();
+      fitted.moveTo(inset, inset + height - (myIntercept + myExponent * minX - minY) * scaleY);
+      fitted.lineTo(inset + width, inset + height - (myIntercept + myExponent * maxX - minY) * scaleY);
+      Shape clip = g.getClip();
+      g.clipRect(inset, inset, width + 1, height + 1);
+      g.draw(fitted);
+      g.setClip(clip);
+
+      int radius = JBUI.scale(3);
+      for (int i = 0; i < mySizes.length; i++) {
+        int x = inset + (int)((Math.log(mySizes[i]) - minX) * scaleX);
+        int y = inset + height - (int)((Math.log(Math.max(myTimes[i], 1)) - minY) * scaleY);
+        g.setColor(JBColor.BLUE);
+        g.fillOval(x - radius, y - radius, 2 * radius, 2 * radius);
+        g.setColor(UIUtil.getLabelForeground());
+        String size = formatSize(mySizes[i]);
+        g.drawString(size, x - g.getFontMetrics().stringWidth(size) / 2, inset + height + JBUI.scale(16));
+        g.drawString(formatTime(myTimes[i]), x + JBUI.scale(6), y - JBUI.scale(4));
+      }
+    }
+  }
+
+  @NotNull
+  private static String formatSize(long size) {
+    int exponent = (int)Math.round(Math.log10(size));
+    return Math.pow(10, exponent) == size ? "1e" + exponent : String.valueOf(size);
+  }
+
+  @NotNull
+  private static String formatTime(long nanos) {
+    if (nanos >= 1_000_000_000) return String.format("%.2f s", nanos / 1e9);
+    if (nanos >= 1_000_000) return String.format("%.2f ms", nanos / 1e6);
+    return String.format("%.1f us", nanos / 1e3);
+  }
+}
@@ -0,0 +1,22 @@
+package org.examples.stream;
+
+import com.intellij.openapi.actionSystem.AnAction;
+import com.intellij.openapi.actionSystem.AnActionEvent;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.ui.Messages;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Shows how well examples are cached and prefetched in this session, see {@link ExampleUsageStatistics#getDiagnostics}. The
+ * same line is written to the log, so it can be attached to a report.
+ */
+public class ShowExampleDiagnosticsAction extends AnAction {
+  private static final Logger LOG = Logger.getInstance(ShowExampleDiagnosticsAction.class);
+
+  @Override
+  public void actionPerformed(@NotNull AnActionEvent event) {
+    String diagnostics = ExampleUsageStatistics.getInstance().getDiagnostics();
+    LOG.info("Example diagnostics: " + diagnostics);
+    Messages.showInfoMessage(event.getProject(), diagnostics.replace(", ", "\n"), "Stream Example Diagnostics");
+  }
+}
@@ -0,0 +1,69 @@
+package org.examples.stream;
+
+import com.intellij.codeInspection.LocalQuickFix;
+import com.intellij.codeInspection.ProblemDescriptor;
+import com.intellij.openapi.project.Project;
+import com.intellij.psi.JavaPsiFacade;
+import com.intellij.psi.PsiClass;
+import com.intellij.psi.PsiMethod;
+import com.intellij.psi.search.GlobalSearchScope;
+import org.jetbrains.annotations.NonNls;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Shows the example popup of a method from an inspection warning, e.g. the {@code anyMatch} example for a rewrite to it.
+ */
+public class ShowExampleFix implements LocalQuickFix {
+  private final String myExampleKey;
+
+  private ShowExampleFix(@NotNull @NonNls String exampleKey) {
+    myExampleKey = exampleKey;
+  }
+
+  /**
+   * @return fix showing the example with the key of {@link CodeExamples#classToFileMap}, or null if there is no such example
+   */
+  @Nullable
+  public static ShowExampleFix create(@NotNull @NonNls String exampleKey) {
+    return CodeExamples.classToFileMap.containsKey(exampleKey) ? new ShowExampleFix(exampleKey) : null;
+  }
+
+  @NotNull
+  @Override
+  public String getName() {
+    return "Show '" + CodeExamples.getMethodName(myExampleKey) + "' example";
+  }
+
+  @NotNull
+  @Override
+  public String getFamilyName() {
+    return "Show stream example";
+  }
+
+  @Override
+  public boolean startInWriteAction() {
+    return false;
+  }
+
+  @Override
+  public void applyFix(@NotNull Project project, @NotNull ProblemDescriptor descriptor) {
+    PsiMethod method = findMethod(project, myExampleKey);
+    if (method != null) {
+      DocumentationManager.getInstance(project).showJavaDocInfo(method, descriptor.getPsiElement());
+    }
+  }
+
+  @Nullable
+  private static PsiMethod findMethod(@NotNull Project project, @NotNull String exampleKey) {
+    String methodName = CodeExamples.getMethodName(exampleKey);
+    int nameStart = exampleKey.lastIndexOf('.' + methodName);
+    if (nameStart <= 0) return null;
+    PsiClass psiClass = JavaPsiFacade.getInstance(project).findClass(exampleKey.substring(0, nameStart), GlobalSearchScope.allScope(project));
+    if (psiClass == null) return null;
+    for (PsiMethod method : psiClass.findMethodsByName(methodName, false)) {
+      if (exampleKey.equals(CodeExamples.getExampleKey(method))) return method;
+    }
+    return null;
+  }
+}
@@ -2,6 +2,7 @@ package org.examples.stream;
 
 import com.intellij.codeInsight.lookup.LookupManager;
 import com.intellij.openapi.actionSystem.*;
+import com.intellij.openapi.application.AccessToken;
 import com.intellij.openapi.command.CommandProcessor;
 import com.intellij.openapi.editor.Editor;
 import com.intellij.openapi.editor.EditorActivityManager;
@@ -20,6 +21,12 @@ public class ShowStreamExampleInfoAction extends AnAction {
 
     @Override
     public void update(@NotNull AnActionEvent event) {
+        try (AccessToken ignored = EdtWatchdog.start("ShowStreamExampleInfoAction.update")) {
+            doUpdate(event);
+        }
+    }
+
+    private static void doUpdate(@NotNull AnActionEvent event) {
         Presentation presentation = event.getPresentation();
         DataContext dataContext = event.getDataContext();
         presentation.setEnabled(false);
@@ -58,7 +65,7 @@ public class ShowStreamExampleInfoAction extends AnAction {
         CommandProcessor.getInstance().executeCommand(project, () -> {
             final Runnable action = () -> {
                 if (!EditorActivityManager.getInstance().isVisible(editor)) return;
-                DocumentationManager documentationManager = new DocumentationManager(project);
+                DocumentationManager documentationManager = DocumentationManager.getInstance(project);
                 JBPopup hint = documentationManager.getDocInfoHint();
                 documentationManager.showJavaDocInfo(editor, psiFile, hint != null || LookupManager.getActiveLookup(editor) == null);
             };
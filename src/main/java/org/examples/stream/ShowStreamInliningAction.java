@@ -0,0 +1,238 @@
+package org.examples.stream;
+
+import com.intellij.codeInsight.hint.HintManager;
+import com.intellij.execution.ExecutionException;
+import com.intellij.icons.AllIcons;
+import com.intellij.openapi.actionSystem.AnAction;
+import com.intellij.openapi.actionSystem.AnActionEvent;
+import com.intellij.openapi.actionSystem.CommonDataKeys;
+import com.intellij.openapi.application.AccessToken;
+import com.intellij.openapi.editor.Editor;
+import com.intellij.openapi.editor.colors.CodeInsightColors;
+import com.intellij.openapi.editor.colors.EditorColorsManager;
+import com.intellij.openapi.editor.markup.*;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.Task;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.projectRoots.Sdk;
+import com.intellij.openapi.ui.Messages;
+import com.intellij.openapi.util.Key;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.psi.*;
+import com.intellij.psi.util.ClassUtil;
+import com.intellij.psi.util.PsiTreeUtil;
+import org.jetbrains.annotations.NonNls;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.swing.*;
+import java.util.*;
+
+/**
+ * Runs the stream pipeline at the caret in a forked JVM with {@code -XX:+PrintInlining} and marks in the editor which of its
+ * lambdas, method references and operations C2 inlined into the compiled loop, and why the others weren't.
+ * <p>
+ * Tiered compilation is off, so all logged decisions are the ones of C2. Lambdas are matched to the methods javac generates
+ * for them by their order in the pipeline, method references by the referenced method and operations by their name in
+ * {@code java.util.stream}, as the implementing class isn't known from the source.
+ */
+public class ShowStreamInliningAction extends AnAction {
+  private static final long[] SIZES = {100_000};
+  private static final @NonNls List<String> JVM_OPTIONS = List.of(
+    "-Xmx2g", "-XX:-TieredCompilation", "-XX:+UnlockDiagnosticVMOptions", "-XX:+PrintCompilation", "-XX:+PrintInlining"
+  );
+  private static final @NonNls String STREAM_PACKAGE = "java.util.stream.";
+  private static final Key<List<RangeHighlighter>> HIGHLIGHTERS = Key.create("stream.examples.inlining.highlighters");
+
+  /**
+   * Element of the pipeline with the callee its inlining is logged for
+   */
+  private static final class Mark {
+    final SmartPsiElementPointer<PsiElement> myElement;
+    final String myCallee;
+    final boolean myOperation;
+
+    Mark(@NotNull PsiElement element, @NotNull String callee, boolean operation) {
+      myElement = SmartPointerManager.createPointer(element);
+      myCallee = callee;
+      myOperation = operation;
+    }
+  }
+
+  @Override
+  public void update(@NotNull AnActionEvent event) {
+    try (AccessToken ignored = EdtWatchdog.start("ShowStreamInliningAction.update")) {
+      Editor editor = event.getData(CommonDataKeys.EDITOR);
+      PsiFile file = event.getData(CommonDataKeys.PSI_FILE);
+      event.getPresentation().setEnabledAndVisible(editor != null && file != null &&
+                                                   ProfileStreamScalingAction.findChain(editor, file) != null);
+    }
+  }
+
+  @Override
+  public void actionPerformed(@NotNull AnActionEvent event) {
+    Project project = event.getProject();
+    Editor editor = event.getData(CommonDataKeys.EDITOR);
+    PsiFile file = event.getData(CommonDataKeys.PSI_FILE);
+    StreamChain chain = editor != null && file != null ? ProfileStreamScalingAction.findChain(editor, file) : null;
+    if (project == null || chain == null) return;
+
+    String unsupported = PipelineBenchmark.findUnsupported(chain);
+    if (unsupported != null) {
+      HintManager.getInstance().showErrorHint(editor, unsupported);
+      return;
+    }
+    Sdk jdk = PipelineBenchmark.findJdk(file);
+    if (jdk == null) {
+      HintManager.getInstance().showErrorHint(editor, "The report runs the pipeline with the project JDK, which must be 11 or newer");
+      return;
+    }
+    PipelineBenchmark benchmark = PipelineBenchmark.create(chain);
+    List<Mark> marks = getMarks(chain);
+
+    new Task.Backgroundable(project, "Compiling stream pipeline", true) {
+      private InliningLog myLog;
+      private String myError;
+
+      @Override
+      public void run(@NotNull ProgressIndicator indicator) {
+        indicator.setText("Running the pipeline with the inlining log");
+        try {
+          myLog = InliningLog.parse(benchmark.runProgram(jdk, JVM_OPTIONS, SIZES, PipelineBenchmark.Measurement.TIME, indicator)
+                                      .getStdoutLines());
+        }
+        catch (ExecutionException e) {
+          myError = e.getMessage();
+        }
+      }
+
+      @Override
+      public void onSuccess() {
+        if (myLog == null) {
+          Messages.showErrorDialog(project, myError, "Stream Inlining Report");
+          return;
+        }
+        if (!editor.isDisposed()) show(editor, marks, myLog);
+      }
+    }.queue();
+  }
+
+  /**
+   * @return lambdas and method references of the pipeline in the order of their appearance, followed by its operations
+   */
+  @NotNull
+  private static List<Mark> getMarks(@NotNull StreamChain chain) {
+    List<Mark> marks = new ArrayList<>();
+    int lambdaIndex = 0;
+    for (PsiFunctionalExpression expression : PsiTreeUtil.findChildrenOfType(chain.getLastCall(), PsiFunctionalExpression.class)) {
+      if (expression instanceof PsiLambdaExpression) {
+        marks.add(new Mark(expression, PipelineBenchmark.getLambdaMethod(lambdaIndex++), false));
+      }
+      else if (expression instanceof PsiMethodReferenceExpression) {
+        String callee = getCallee((PsiMethodReferenceExpression)expression);
+        if (callee != null) marks.add(new Mark(expression, callee, false));
+      }
+    }
+    for (PsiMethodCallExpression operation : chain.getOperations()) {
+      PsiElement name = operation.getMethodExpression().getReferenceNameElement();
+      if (name != null) marks.add(new Mark(name, StreamChain.getName(operation), true));
+    }
+    return marks;
+  }
+
+  @Nullable
+  private static String getCallee(@NotNull PsiMethodReferenceExpression reference) {
+    PsiElement target = reference.resolve();
+    PsiClass psiClass = target instanceof PsiMethod ? ((PsiMethod)target).getContainingClass() : null;
+    String className = psiClass != null ? ClassUtil.getJVMClassName(psiClass) : null;
+    if (className == null) return null;
+    return className + "::" + (((PsiMethod)target).isConstructor() ? "<init>" : ((PsiMethod)target).getName());
+  }
+
+  private static void show(@NotNull Editor editor, @NotNull List<Mark> marks, @NotNull InliningLog log) {
+    List<RangeHighlighter> previous = editor.getUserData(HIGHLIGHTERS);
+    if (previous != null) previous.forEach(RangeHighlighter::dispose);
+
+    TextAttributes failedAttributes =
+      EditorColorsManager.getInstance().getGlobalScheme().getAttributes(CodeInsightColors.WEAK_WARNING_ATTRIBUTES);
+    MarkupModel markupModel = editor.getMarkupModel();
+    List<RangeHighlighter> highlighters = new ArrayList<>();
+    int inlined = 0, failed = 0;
+    for (Mark mark : marks) {
+      PsiElement element = mark.myElement.getElement();
+      if (element == null) continue;
+      List<InliningLog.Decision> decisions = mark.myOperation ? log.getDecisions(STREAM_PACKAGE, mark.myCallee)
+                                                              : log.getDecisions(mark.myCallee);
+      boolean allInlined = !decisions.isEmpty() && decisions.stream().allMatch(decision -> decision.myInlined);
+      if (allInlined) inlined++;
+      else failed++;
+      String tooltip = getTooltip(element, mark, decisions, log);
+      RangeHighlighter highlighter = markupModel.addRangeHighlighter(
+        element.getTextRange().getStartOffset(), element.getTextRange().getEndOffset(), HighlighterLayer.WARNING,
+        allInlined ? null : failedAttributes, HighlighterTargetArea.EXACT_RANGE);
+      highlighter.setErrorStripeTooltip(tooltip);
+      highlighter.setGutterIconRenderer(new InliningIconRenderer(allInlined, tooltip));
+      highlighters.add(highlighter);
+    }
+    editor.putUserData(HIGHLIGHTERS, highlighters);
+
+    String summary = inlined + " of " + marks.size() + " lambdas and operations inlined by C2";
+    int megamorphic = log.getMegamorphicCount();
+    if (megamorphic > 0) summary += "<br>" + megamorphic + " functional interface call sites stayed megamorphic";
+    if (failed > 0) summary += "<br>Hover the marks in the gutter for the reasons";
+    HintManager.getInstance().showInformationHint(editor, "<html>" + summary + "</html>");
+  }
+
+  @NotNull
+  private static String getTooltip(@NotNull PsiElement element, @NotNull Mark mark, @NotNull List<InliningLog.Decision> decisions,
+                                   @NotNull InliningLog log) {
+    String name = mark.myOperation ? element.getText() : StringUtil.shortenTextWithEllipsis(element.getText(), 40, 0);
+    if (decisions.isEmpty()) {
+      return log.isCompiled(mark.myCallee) ? name + ": compiled on its own, not inlined into a compiled caller"
+                                           : name + ": not compiled, it didn't get hot enough";
+    }
+    long inlinedCount = decisions.stream().filter(decision -> decision.myInlined).count();
+    if (inlinedCount == decisions.size()) return name + ": inlined at " + inlinedCount + " call sites";
+
+    Set<String> reasons = new LinkedHashSet<>();
+    for (InliningLog.Decision decision : decisions) {
+      if (decision.myInlined) continue;
+      String advice = InliningLog.getAdvice(decision.myReason);
+      reasons.add(advice != null ? decision.myReason + ": " + advice : decision.myReason);
+    }
+    return name + ": inlined at " + inlinedCount + " of " + decisions.size() + " call sites, not inlined because " +
+           String.join("; ", reasons);
+  }
+
+  private static final class InliningIconRenderer extends GutterIconRenderer {
+    private final boolean myInlined;
+    private final String myTooltip;
+
+    InliningIconRenderer(boolean inlined, @NotNull String tooltip) {
+      myInlined = inlined;
+      myTooltip = tooltip;
+    }
+
+    @NotNull
+    @Override
+    public Icon getIcon() {
+      return myInlined ? AllIcons.General.InspectionsOK : AllIcons.General.Warning;
+    }
+
+    @Override
+    public String getTooltipText() {
+      return myTooltip;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return o instanceof InliningIconRenderer && ((InliningIconRenderer)o).myInlined == myInlined &&
+             ((InliningIconRenderer)o).myTooltip.equals(myTooltip);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(myInlined, myTooltip);
+    }
+  }
+}
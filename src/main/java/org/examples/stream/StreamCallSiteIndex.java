@@ -0,0 +1,203 @@
+package org.examples.stream;
+
+import com.intellij.ide.highlighter.JavaFileType;
+import com.intellij.lexer.JavaLexer;
+import com.intellij.lexer.Lexer;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.fileEditor.OpenFileDescriptor;
+import com.intellij.openapi.project.DumbService;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.openapi.vfs.VirtualFileManager;
+import com.intellij.pom.java.LanguageLevel;
+import com.intellij.psi.*;
+import com.intellij.psi.impl.source.tree.ElementType;
+import com.intellij.psi.search.GlobalSearchScope;
+import com.intellij.psi.tree.IElementType;
+import com.intellij.psi.util.PsiTreeUtil;
+import com.intellij.util.indexing.*;
+import com.intellij.util.io.DataExternalizer;
+import com.intellij.util.io.DataInputOutputUtil;
+import com.intellij.util.io.EnumeratorStringDescriptor;
+import com.intellij.util.io.KeyDescriptor;
+import org.jetbrains.annotations.NonNls;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Maps names of methods having examples to offsets of their calls in project java files.
+ * <p>
+ * The index is built with the java lexer, so it only knows the method name of a call. The example key of a call site
+ * (class, name and parameters count, see {@link CodeExamples#getExampleKey}) is checked by resolving the indexed calls
+ * when usages are requested, which is cheap as only calls of methods with the right name are resolved.
+ */
+public class StreamCallSiteIndex extends FileBasedIndexExtension<String, int[]> {
+  public static final ID<String, int[]> NAME = ID.create("org.examples.stream.StreamCallSiteIndex");
+  static final int MAX_USAGES_SHOWN = 20;
+
+  @NotNull
+  @Override
+  public ID<String, int[]> getName() {
+    return NAME;
+  }
+
+  @NotNull
+  @Override
+  public DataIndexer<String, int[], FileContent> getIndexer() {
+    return inputData -> {
+      Map<String, List<Integer>> offsets = new HashMap<>();
+      Lexer lexer = new JavaLexer(LanguageLevel.HIGHEST);
+      lexer.start(inputData.getContentAsText());
+      String pendingName = null;
+      int pendingOffset = -1;
+      for (IElementType type = lexer.getTokenType(); type != null; lexer.advance(), type = lexer.getTokenType()) {
+        if (ElementType.JAVA_COMMENT_OR_WHITESPACE_BIT_SET.contains(type)) continue;
+        if (pendingName != null && type == JavaTokenType.LPARENTH) {
+          offsets.computeIfAbsent(pendingName, __ -> new ArrayList<>()).add(pendingOffset);
+        }
+        pendingName = null;
+        if (type == JavaTokenType.IDENTIFIER) {
+          String name = lexer.getTokenSequence().toString();
+          if (CodeExamples.methodNames.contains(name)) {
+            pendingName = name;
+            pendingOffset = lexer.getTokenStart();
+          }
+        }
+      }
+      Map<String, int[]> result = new HashMap<>();
+      offsets.forEach((name, list) -> result.put(name, list.stream().mapToInt(Integer::intValue).toArray()));
+      return result;
+    };
+  }
+
+  @NotNull
+  @Override
+  public KeyDescriptor<String> getKeyDescriptor() {
+    return EnumeratorStringDescriptor.INSTANCE;
+  }
+
+  @NotNull
+  @Override
+  public DataExternalizer<int[]> getValueExternalizer() {
+    return new DataExternalizer<int[]>() {
+      @Override
+      public void save(@NotNull DataOutput out, int[] value) throws IOException {
+        DataInputOutputUtil.writeINT(out, value.length);
+        int previous = 0;
+        for (int offset : value) {
+          DataInputOutputUtil.writeINT(out, offset - previous);
+          previous = offset;
+        }
+      }
+
+      @Override
+      public int[] read(@NotNull DataInput in) throws IOException {
+        int[] value = new int[DataInputOutputUtil.readINT(in)];
+        int previous = 0;
+        for (int i = 0; i < value.length; i++) {
+          previous += DataInputOutputUtil.readINT(in);
+          value[i] = previous;
+        }
+        return value;
+      }
+    };
+  }
+
+  @Override
+  public int getVersion() {
+    // names set changes when examples are added
+    return 1 + new TreeSet<>(CodeExamples.methodNames).hashCode();
+  }
+
+  @NotNull
+  @Override
+  public FileBasedIndex.InputFilter getInputFilter() {
+    return new DefaultFileTypeSpecificInputFilter(JavaFileType.INSTANCE);
+  }
+
+  @Override
+  public boolean dependsOnFileContent() {
+    return true;
+  }
+
+  /**
+   * Must be called in a read action.
+   *
+   * @return calls of the method with the example key in project files
+   */
+  @NotNull
+  public static List<PsiMethodCallExpression> findCallSites(@NotNull Project project, @NotNull String exampleKey, int limit) {
+    List<PsiMethodCallExpression> result = new ArrayList<>();
+    PsiManager psiManager = PsiManager.getInstance(project);
+    FileBasedIndex.getInstance().processValues(NAME, CodeExamples.getMethodName(exampleKey), null, (file, offsets) -> {
+      PsiFile psiFile = psiManager.findFile(file);
+      if (psiFile == null) return true;
+      for (int offset : offsets) {
+        PsiMethodCallExpression call = findCallAt(psiFile, offset);
+        if (call == null) continue;
+        PsiMethod method = call.resolveMethod();
+        if (method != null && exampleKey.equals(CodeExamples.getExampleKey(method))) {
+          result.add(call);
+          if (result.size() >= limit) return false;
+        }
+      }
+      return true;
+    }, GlobalSearchScope.projectScope(project));
+    return result;
+  }
+
+  @Nullable
+  private static PsiMethodCallExpression findCallAt(@NotNull PsiFile file, int offset) {
+    PsiElement identifier = file.findElementAt(offset);
+    PsiReferenceExpression reference = PsiTreeUtil.getParentOfType(identifier, PsiReferenceExpression.class);
+    if (reference == null || reference.getReferenceNameElement() != identifier) return null;
+    PsiElement parent = reference.getParent();
+    return parent instanceof PsiMethodCallExpression ? (PsiMethodCallExpression)parent : null;
+  }
+
+  /**
+   * Must be called in a read action.
+   *
+   * @return example html with a list of call sites in the project appended to it
+   */
+  @NotNull
+  public static String appendUsages(@NotNull String example, @NotNull Project project, @NotNull String exampleKey) {
+    if (DumbService.isDumb(project)) return example;
+    List<PsiMethodCallExpression> calls = findCallSites(project, exampleKey, MAX_USAGES_SHOWN);
+    if (calls.isEmpty()) return example;
+
+    StringBuilder usages = new StringBuilder("<div class='content'><p><b>Usages in this project.</b>");
+    for (PsiMethodCallExpression call : calls) {
+      PsiFile file = call.getContainingFile();
+      VirtualFile virtualFile = file.getVirtualFile();
+      Document document = PsiDocumentManager.getInstance(project).getDocument(file);
+      if (virtualFile == null || document == null) continue;
+      PsiElement name = call.getMethodExpression().getReferenceNameElement();
+      int offset = (name != null ? name : call).getTextRange().getStartOffset();
+      usages.append("<br><a href=\"").append(DocumentationManagerProtocol.USAGE_PROTOCOL).append(virtualFile.getUrl())
+        .append('#').append(offset).append("\">")
+        .append(StringUtil.escapeXmlEntities(file.getName())).append(':').append(document.getLineNumber(offset) + 1)
+        .append("</a>");
+    }
+    usages.append("</div>");
+
+    int bodyEnd = StringUtil.indexOfIgnoreCase(example, "</body>", 0);
+    return bodyEnd < 0 ? example + usages : example.substring(0, bodyEnd) + usages + example.substring(bodyEnd);
+  }
+
+  public static void navigateToUsage(@NotNull Project project, @NotNull @NonNls String url) {
+    String location = url.substring(DocumentationManagerProtocol.USAGE_PROTOCOL.length());
+    int separator = location.lastIndexOf('#');
+    if (separator < 0) return;
+    VirtualFile file = VirtualFileManager.getInstance().findFileByUrl(location.substring(0, separator));
+    int offset = StringUtil.parseInt(location.substring(separator + 1), -1);
+    if (file == null || offset < 0) return;
+    new OpenFileDescriptor(project, file, offset).navigate(true);
+  }
+}
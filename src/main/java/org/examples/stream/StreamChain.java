@@ -0,0 +1,219 @@
+package org.examples.stream;
+
+import com.intellij.openapi.util.TextRange;
+import com.intellij.psi.*;
+import com.intellij.psi.search.LocalSearchScope;
+import com.intellij.psi.search.searches.ReferencesSearch;
+import com.intellij.psi.util.InheritanceUtil;
+import com.intellij.psi.util.PsiUtil;
+import org.jetbrains.annotations.NonNls;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Calls of a stream pipeline written as one chain, e.g. {@code list.stream().filter(...).map(...).anyMatch(...)}.
+ * <p>
+ * Operations are the calls made on a stream, in order, the source is the expression the first operation is called on.
+ * The chain is recognized by the types of qualifiers only, calls are resolved lazily when an operation is checked.
+ */
+public final class StreamChain {
+  public static final @NonNls String BASE_STREAM = "java.util.stream.BaseStream";
+  public static final @NonNls String STREAM = "java.util.stream.Stream";
+  public static final @NonNls String INT_STREAM = "java.util.stream.IntStream";
+  public static final @NonNls String LONG_STREAM = "java.util.stream.LongStream";
+  public static final @NonNls String DOUBLE_STREAM = "java.util.stream.DoubleStream";
+  public static final @NonNls String COLLECTORS = "java.util.stream.Collectors";
+  public static final @NonNls String STREAM_SUPPORT = "java.util.stream.StreamSupport";
+
+  private final PsiExpression mySource;
+  private final List<PsiMethodCallExpression> myOperations;
+
+  private StreamChain(@NotNull PsiExpression source, @NotNull List<PsiMethodCallExpression> operations) {
+    mySource = source;
+    myOperations = Collections.unmodifiableList(operations);
+  }
+
+  /**
+   * @return chain the call is an operation of, or null if the call is not made on a stream
+   */
+  @Nullable
+  public static StreamChain of(@NotNull PsiMethodCallExpression call) {
+    if (!isOperation(call)) return null;
+    PsiMethodCallExpression last = call;
+    while (true) {
+      PsiMethodCallExpression next = getNextCall(last);
+      if (next == null || !isOperation(next)) break;
+      last = next;
+    }
+    List<PsiMethodCallExpression> operations = new ArrayList<>();
+    PsiMethodCallExpression current = last;
+    PsiExpression source;
+    while (true) {
+      operations.add(current);
+      source = PsiUtil.skipParenthesizedExprDown(current.getMethodExpression().getQualifierExpression());
+      if (!(source instanceof PsiMethodCallExpression) || !isOperation((PsiMethodCallExpression)source)) break;
+      current = (PsiMethodCallExpression)source;
+    }
+    if (source == null) return null;
+    Collections.reverse(operations);
+    return new StreamChain(source, operations);
+  }
+
+  /**
+   * @return chain of the call which name is the identifier
+   */
+  @Nullable
+  public static StreamChain atIdentifier(@Nullable PsiElement identifier) {
+    if (!(identifier instanceof PsiIdentifier)) return null;
+    PsiElement reference = identifier.getParent();
+    if (!(reference instanceof PsiReferenceExpression)) return null;
+    PsiElement call = reference.getParent();
+    return call instanceof PsiMethodCallExpression ? of((PsiMethodCallExpression)call) : null;
+  }
+
+  @NotNull
+  public PsiExpression getSource() {
+    return mySource;
+  }
+
+  @NotNull
+  public List<PsiMethodCallExpression> getOperations() {
+    return myOperations;
+  }
+
+  @NotNull
+  public PsiMethodCallExpression getLastCall() {
+    return myOperations.get(myOperations.size() - 1);
+  }
+
+  /**
+   * @return last call if it doesn't return a stream, e.g. {@code collect} or {@code anyMatch}
+   */
+  @Nullable
+  public PsiMethodCallExpression getTerminal() {
+    PsiMethodCallExpression last = getLastCall();
+    return isStreamType(last.getType()) ? null : last;
+  }
+
+  /**
+   * @return true if the pipeline runs in parallel, the last of {@code parallel()} and {@code sequential()} calls wins over
+   * {@code parallelStream()} and {@code StreamSupport.stream(spliterator, true)} sources
+   */
+  public boolean isParallel() {
+    for (int i = myOperations.size() - 1; i >= 0; i--) {
+      String name = getName(myOperations.get(i));
+      if ("parallel".equals(name)) return true;
+      if ("sequential".equals(name)) return false;
+    }
+    if (!(mySource instanceof PsiMethodCallExpression)) return false;
+    PsiMethodCallExpression source = (PsiMethodCallExpression)mySource;
+    if ("parallelStream".equals(getName(source))) return true;
+    PsiExpression[] arguments = source.getArgumentList().getExpressions();
+    PsiExpression flag = arguments.length == 2 ? PsiUtil.skipParenthesizedExprDown(arguments[1]) : null;
+    return "stream".equals(getName(source)) && flag instanceof PsiLiteralExpression &&
+           Boolean.TRUE.equals(((PsiLiteralExpression)flag).getValue()) && STREAM_SUPPORT.equals(getClassName(source));
+  }
+
+  public static boolean isOperation(@NotNull PsiMethodCallExpression call) {
+    PsiExpression qualifier = call.getMethodExpression().getQualifierExpression();
+    return qualifier != null && isStreamType(qualifier.getType());
+  }
+
+  public static boolean isStreamType(@Nullable PsiType type) {
+    return InheritanceUtil.isInheritor(type, BASE_STREAM);
+  }
+
+  /**
+   * @return element type of a stream type, e.g. {@code String} for {@code Stream<? extends String>} and {@code int} for {@code IntStream}
+   */
+  @Nullable
+  public static PsiType getElementType(@Nullable PsiType streamType) {
+    if (InheritanceUtil.isInheritor(streamType, INT_STREAM)) return PsiType.INT;
+    if (InheritanceUtil.isInheritor(streamType, LONG_STREAM)) return PsiType.LONG;
+    if (InheritanceUtil.isInheritor(streamType, DOUBLE_STREAM)) return PsiType.DOUBLE;
+    PsiType elementType = PsiUtil.substituteTypeParameter(streamType, STREAM, 0, false);
+    if (elementType instanceof PsiWildcardType) {
+      elementType = ((PsiWildcardType)elementType).isExtends() ? ((PsiWildcardType)elementType).getBound() : null;
+    }
+    return elementType instanceof PsiCapturedWildcardType ? ((PsiCapturedWildcardType)elementType).getUpperBound() : elementType;
+  }
+
+  @NotNull
+  public static String getName(@NotNull PsiMethodCallExpression call) {
+    return String.valueOf(call.getMethodExpression().getReferenceName());
+  }
+
+  /**
+   * @return qualified name of the class declaring the called method, e.g. {@link #STREAM}
+   */
+  @Nullable
+  public static String getClassName(@NotNull PsiMethodCallExpression call) {
+    PsiMethod method = call.resolveMethod();
+    PsiClass psiClass = method != null ? method.getContainingClass() : null;
+    return psiClass != null ? psiClass.getQualifiedName() : null;
+  }
+
+  /**
+   * @return true if the call is a call of the method with the example key, e.g. "java.util.stream.Stream.filter1"
+   */
+  public static boolean isCall(@NotNull PsiMethodCallExpression call, @NotNull @NonNls String exampleKey) {
+    return CodeExamples.getMethodName(exampleKey).equals(getName(call)) &&
+           exampleKey.equals(StreamExampleLineMarkerProvider.getExampleKey(call));
+  }
+
+  @Nullable
+  public static PsiExpression getSingleArgument(@NotNull PsiMethodCallExpression call) {
+    PsiExpression[] arguments = call.getArgumentList().getExpressions();
+    return arguments.length == 1 ? PsiUtil.skipParenthesizedExprDown(arguments[0]) : null;
+  }
+
+  /**
+   * @return lambda argument with one parameter, if it's the only argument of the call
+   */
+  @Nullable
+  public static PsiLambdaExpression getLambdaArgument(@NotNull PsiMethodCallExpression call) {
+    PsiExpression argument = getSingleArgument(call);
+    if (!(argument instanceof PsiLambdaExpression)) return null;
+    PsiLambdaExpression lambda = (PsiLambdaExpression)argument;
+    return lambda.getParameterList().getParametersCount() == 1 ? lambda : null;
+  }
+
+  /**
+   * @return expression the lambda returns, for both expression lambdas and blocks with a single return statement
+   */
+  @Nullable
+  public static PsiExpression getLambdaResult(@NotNull PsiLambdaExpression lambda) {
+    return PsiUtil.skipParenthesizedExprDown(LambdaUtil.extractSingleExpressionFromBody(lambda.getBody()));
+  }
+
+  /**
+   * @return text of the element with references to the variable replaced with the replacement text
+   */
+  @NotNull
+  public static String replaceReferences(@NotNull PsiElement element, @NotNull PsiVariable variable, @NotNull String replacement) {
+    int start = element.getTextRange().getStartOffset();
+    List<TextRange> ranges = new ArrayList<>();
+    for (PsiReference reference : ReferencesSearch.search(variable, new LocalSearchScope(element))) {
+      ranges.add(reference.getElement().getTextRange().shiftLeft(start));
+    }
+    ranges.sort(Comparator.comparingInt(TextRange::getStartOffset).reversed());
+    StringBuilder result = new StringBuilder(element.getText());
+    for (TextRange range : ranges) {
+      result.replace(range.getStartOffset(), range.getEndOffset(), replacement);
+    }
+    return result.toString();
+  }
+
+  @Nullable
+  private static PsiMethodCallExpression getNextCall(@NotNull PsiMethodCallExpression call) {
+    PsiElement parent = PsiUtil.skipParenthesizedExprUp(call.getParent());
+    if (!(parent instanceof PsiReferenceExpression)) return null;
+    PsiElement grandParent = parent.getParent();
+    return grandParent instanceof PsiMethodCallExpression ? (PsiMethodCallExpression)grandParent : null;
+  }
+}
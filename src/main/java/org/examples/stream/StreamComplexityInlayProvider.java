@@ -0,0 +1,131 @@
+package org.examples.stream;
+
+import com.intellij.codeInsight.hints.*;
+import com.intellij.codeInsight.hints.presentation.InlayPresentation;
+import com.intellij.codeInsight.hints.presentation.PresentationFactory;
+import com.intellij.lang.Language;
+import com.intellij.lang.java.JavaLanguage;
+import com.intellij.openapi.editor.Editor;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiMethodCallExpression;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.swing.*;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Shows the time cost class and buffering of each stage of a stream chain after its call, and a summary of the whole pipeline
+ * after the terminal operation, e.g. {@code .sorted() [O(n log n), buffers all elements]}.
+ * <p>
+ * Hints are shown for chains of two or more operations. The costs of a chain are computed once for its last call and cached
+ * until its file changes, so editing another file doesn't make the chains of this one analyzed again.
+ */
+@SuppressWarnings("UnstableApiUsage")
+public class StreamComplexityInlayProvider implements InlayHintsProvider<NoSettings> {
+  private static final SettingsKey<NoSettings> KEY = new SettingsKey<>("stream.examples.complexity");
+
+  @NotNull
+  @Override
+  public SettingsKey<NoSettings> getKey() {
+    return KEY;
+  }
+
+  @NotNull
+  @Override
+  public String getName() {
+    return "Stream complexity";
+  }
+
+  @Nullable
+  @Override
+  public String getPreviewText() {
+    return "class Preview {\n" +
+           "  Map<Integer, List<String>> byLength(List<String> names) {\n" +
+           "    return names.stream()\n" +
+           "      .distinct()\n" +
+           "      .sorted()\n" +
+           "      .collect(Collectors.groupingBy(String::length));\n" +
+           "  }\n" +
+           "}";
+  }
+
+  @NotNull
+  @Override
+  public NoSettings createSettings() {
+    return new NoSettings();
+  }
+
+  @NotNull
+  @Override
+  public ImmediateConfigurable createConfigurable(@NotNull NoSettings settings) {
+    return new ImmediateConfigurable() {
+      @NotNull
+      @Override
+      public JComponent createComponent(@NotNull ChangeListener listener) {
+        return new JPanel();
+      }
+
+      @Override
+      public void reset() {
+      }
+
+      @NotNull
+      @Override
+      public String getMainCheckboxText() {
+        return "Show hints for stream chains";
+      }
+
+      @NotNull
+      @Override
+      public List<Case> getCases() {
+        return Collections.emptyList();
+      }
+    };
+  }
+
+  @Override
+  public boolean isLanguageSupported(@NotNull Language language) {
+    return language.isKindOf(JavaLanguage.INSTANCE);
+  }
+
+  @Override
+  public boolean isVisibleInSettings() {
+    return true;
+  }
+
+  @Nullable
+  @Override
+  public InlayHintsCollector getCollectorFor(@NotNull PsiFile file, @NotNull Editor editor, @NotNull NoSettings settings,
+                                             @NotNull InlayHintsSink sink) {
+    return new FactoryInlayHintsCollector(editor) {
+      @Override
+      public boolean collect(@NotNull PsiElement element, @NotNull Editor editor, @NotNull InlayHintsSink sink) {
+        if (!(element instanceof PsiMethodCallExpression) || !StreamChain.isOperation((PsiMethodCallExpression)element)) return true;
+        PipelineCost cost = PipelineCost.of((PsiMethodCallExpression)element);
+        if (cost == null || cost.getStages().size() < 2) return true;
+        StreamChain chain = StreamChain.of((PsiMethodCallExpression)element);
+        if (chain == null) return true;
+
+        List<PsiMethodCallExpression> operations = chain.getOperations();
+        List<PipelineCost.Stage> stages = cost.getStages();
+        for (int i = 0; i < operations.size() - 1; i++) {
+          PipelineCost.Stage stage = stages.get(i);
+          if (stage != null) addHint(sink, operations.get(i), stage.getText());
+        }
+        PipelineCost.Stage last = stages.get(stages.size() - 1);
+        String lastText = chain.getTerminal() != null ? "pipeline " + cost.getSummary() : last != null ? last.getText() : null;
+        if (lastText != null) addHint(sink, chain.getLastCall(), lastText);
+        return true;
+      }
+
+      private void addHint(@NotNull InlayHintsSink sink, @NotNull PsiMethodCallExpression operation, @NotNull String text) {
+        PresentationFactory factory = getFactory();
+        InlayPresentation presentation = factory.roundWithBackground(factory.smallText(text));
+        sink.addInlineElement(operation.getTextRange().getEndOffset(), true, presentation);
+      }
+    };
+  }
+}
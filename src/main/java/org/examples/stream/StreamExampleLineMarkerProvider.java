@@ -0,0 +1,76 @@
+package org.examples.stream;
+
+import com.intellij.codeInsight.daemon.LineMarkerInfo;
+import com.intellij.codeInsight.daemon.LineMarkerProvider;
+import com.intellij.icons.AllIcons;
+import com.intellij.openapi.editor.Editor;
+import com.intellij.openapi.editor.markup.GutterIconRenderer;
+import com.intellij.openapi.fileEditor.FileEditorManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.psi.*;
+import com.intellij.psi.util.CachedValueProvider;
+import com.intellij.psi.util.CachedValuesManager;
+import com.intellij.psi.util.PsiModificationTracker;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Marks calls of stream methods having examples in the gutter, clicking the marker shows the example.
+ * <p>
+ * Markers are collected in the slow pass which the daemon runs for the visible range first. Only identifiers with names
+ * of methods having examples are resolved, the resolved example key is cached on the call until the next PSI change.
+ */
+public class StreamExampleLineMarkerProvider implements LineMarkerProvider {
+  @Override
+  public LineMarkerInfo<?> getLineMarkerInfo(@NotNull PsiElement element) {
+    return null;
+  }
+
+  @Override
+  public void collectSlowLineMarkers(@NotNull List<? extends PsiElement> elements, @NotNull Collection<? super LineMarkerInfo<?>> result) {
+    for (PsiElement element : elements) {
+      PsiMethodCallExpression call = getCall(element);
+      if (call == null) continue;
+      String key = getExampleKey(call);
+      if (key != null && CodeExamples.classToFileMap.containsKey(key)) {
+        result.add(new LineMarkerInfo<>(element, element.getTextRange(), AllIcons.Toolwindows.Documentation,
+                                        __ -> "Show stream example",
+                                        (e, identifier) -> showExample(identifier),
+                                        GutterIconRenderer.Alignment.RIGHT));
+      }
+    }
+  }
+
+  /**
+   * @return call which method name is the identifier, if it's a name of a method having an example
+   */
+  @Nullable
+  static PsiMethodCallExpression getCall(@NotNull PsiElement element) {
+    if (!(element instanceof PsiIdentifier) || !CodeExamples.methodNames.contains(element.getText())) return null;
+    PsiElement reference = element.getParent();
+    if (!(reference instanceof PsiReferenceExpression)) return null;
+    PsiElement call = reference.getParent();
+    return call instanceof PsiMethodCallExpression ? (PsiMethodCallExpression)call : null;
+  }
+
+  @Nullable
+  static String getExampleKey(@NotNull PsiMethodCallExpression call) {
+    return CachedValuesManager.getCachedValue(call, () -> {
+      PsiMethod method = call.resolveMethod();
+      return CachedValueProvider.Result.create(method != null ? CodeExamples.getExampleKey(method) : null,
+                                               PsiModificationTracker.MODIFICATION_COUNT);
+    });
+  }
+
+  static void showExample(@NotNull PsiElement identifier) {
+    Project project = identifier.getProject();
+    PsiFile file = identifier.getContainingFile();
+    Editor editor = FileEditorManager.getInstance(project).getSelectedTextEditor();
+    if (editor == null || file == null || PsiDocumentManager.getInstance(project).getPsiFile(editor.getDocument()) != file) return;
+    editor.getCaretModel().moveToOffset(identifier.getTextRange().getStartOffset());
+    DocumentationManager.getInstance(project).showJavaDocInfo(editor, file, true);
+  }
+}
@@ -0,0 +1,160 @@
+package org.examples.stream;
+
+import com.intellij.icons.AllIcons;
+import com.intellij.lang.annotation.AnnotationBuilder;
+import com.intellij.lang.annotation.AnnotationHolder;
+import com.intellij.lang.annotation.Annotator;
+import com.intellij.lang.annotation.HighlightSeverity;
+import com.intellij.openapi.actionSystem.AnAction;
+import com.intellij.openapi.actionSystem.AnActionEvent;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.colors.EditorColorsManager;
+import com.intellij.openapi.editor.markup.GutterIconRenderer;
+import com.intellij.openapi.editor.markup.TextAttributes;
+import com.intellij.openapi.util.TextRange;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.psi.*;
+import com.intellij.ui.ColorUtil;
+import com.intellij.ui.JBColor;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.swing.*;
+import java.awt.*;
+import java.util.Objects;
+
+/**
+ * Highlights stream pipelines which are hot in the JFR recording opened with {@link OpenJfrRecordingAction}, the more
+ * samples a pipeline has, the stronger its background. The gutter icon tells the shares of the samples and the cost of the
+ * stages, clicking it shows the example of the first operation having one.
+ * <p>
+ * Pipelines are matched to the sites of the recording by the top level class of the file and the lines of the chain, so
+ * a recording of a slightly different revision still marks the right chains as long as their lines didn't move.
+ */
+public class StreamHotspotAnnotator implements Annotator {
+  /**
+   * Sites below this share of the samples are only marked in the gutter
+   */
+  private static final double HIGHLIGHTED_COST = 0.01;
+
+  @Override
+  public void annotate(@NotNull PsiElement element, @NotNull AnnotationHolder holder) {
+    if (!(element instanceof PsiMethodCallExpression)) return;
+    StreamHotspots hotspots = StreamHotspots.getInstance(element.getProject());
+    StreamHotspots.Recording recording = hotspots.getRecording();
+    if (recording == null || hotspots.isEmpty() || !StreamChain.isOperation((PsiMethodCallExpression)element)) return;
+    StreamChain chain = StreamChain.of((PsiMethodCallExpression)element);
+    if (chain == null || chain.getLastCall() != element) return;
+
+    PsiFile file = element.getContainingFile();
+    Document document = PsiDocumentManager.getInstance(element.getProject()).getDocument(file);
+    if (!(file instanceof PsiJavaFile) || document == null) return;
+    TextRange range = element.getTextRange();
+    int startLine = document.getLineNumber(range.getStartOffset()) + 1;
+    int endLine = document.getLineNumber(range.getEndOffset()) + 1;
+    long executionSamples = 0, allocatedBytes = 0;
+    for (PsiClass psiClass : ((PsiJavaFile)file).getClasses()) {
+      String name = psiClass.getQualifiedName();
+      if (name == null) continue;
+      for (StreamHotspots.Site site : hotspots.getSites(name, startLine, endLine)) {
+        executionSamples += site.myExecutionSamples;
+        allocatedBytes += site.myAllocatedBytes;
+      }
+    }
+    if (executionSamples == 0 && allocatedBytes == 0) return;
+
+    double executionShare = recording.myExecutionSamples > 0 ? (double)executionSamples / recording.myExecutionSamples : 0;
+    double allocationShare = recording.myAllocatedBytes > 0 ? (double)allocatedBytes / recording.myAllocatedBytes : 0;
+    double cost = Math.max(executionShare, allocationShare);
+    PsiElement exampleIdentifier = findExampleIdentifier(chain);
+    String tooltip = getTooltip(chain, recording, executionSamples, executionShare, allocatedBytes, allocationShare,
+                                exampleIdentifier != null);
+
+    AnnotationBuilder builder = holder.newSilentAnnotation(HighlightSeverity.INFORMATION)
+      .range(range)
+      .tooltip(tooltip)
+      .gutterIconRenderer(new HotspotIconRenderer(tooltip, exampleIdentifier != null
+                                                           ? SmartPointerManager.createPointer(exampleIdentifier) : null));
+    if (cost >= HIGHLIGHTED_COST) builder = builder.enforcedTextAttributes(getAttributes(cost));
+    builder.create();
+  }
+
+  @NotNull
+  private static String getTooltip(@NotNull StreamChain chain, @NotNull StreamHotspots.Recording recording, long executionSamples,
+                                   double executionShare, long allocatedBytes, double allocationShare, boolean hasExample) {
+    StringBuilder tooltip = new StringBuilder("<html><b>Hot stream pipeline</b> in ")
+      .append(StringUtil.escapeXmlEntities(recording.myName)).append("<br>")
+      .append(String.format("%.1f%% of execution samples (%d)", executionShare * 100, executionSamples)).append("<br>")
+      .append(String.format("%.1f%% of sampled allocation (%s)", allocationShare * 100, StringUtil.formatFileSize(allocatedBytes)));
+    PipelineCost cost = PipelineCost.of(chain.getLastCall());
+    if (cost != null) tooltip.append("<br>Pipeline ").append(StringUtil.escapeXmlEntities(cost.getSummary()));
+    if (hasExample) tooltip.append("<br>Click to show the example");
+    return tooltip.append("</html>").toString();
+  }
+
+  /**
+   * @return name of the first operation of the chain having an example
+   */
+  @Nullable
+  private static PsiElement findExampleIdentifier(@NotNull StreamChain chain) {
+    for (PsiMethodCallExpression operation : chain.getOperations()) {
+      String key = StreamExampleLineMarkerProvider.getExampleKey(operation);
+      if (key != null && CodeExamples.classToFileMap.containsKey(key)) return operation.getMethodExpression().getReferenceNameElement();
+    }
+    return null;
+  }
+
+  /**
+   * @return background from a light tint for a few percent of the samples to a strong one for a half of them and more
+   */
+  @NotNull
+  private static TextAttributes getAttributes(double cost) {
+    Color background = EditorColorsManager.getInstance().getGlobalScheme().getDefaultBackground();
+    double strength = 0.1 + 0.4 * Math.min(1, cost * 2);
+    return new TextAttributes(null, ColorUtil.mix(background, JBColor.RED, strength), null, null, Font.PLAIN);
+  }
+
+  private static final class HotspotIconRenderer extends GutterIconRenderer {
+    private final String myTooltip;
+    private final SmartPsiElementPointer<PsiElement> myExampleIdentifier;
+
+    HotspotIconRenderer(@NotNull String tooltip, @Nullable SmartPsiElementPointer<PsiElement> exampleIdentifier) {
+      myTooltip = tooltip;
+      myExampleIdentifier = exampleIdentifier;
+    }
+
+    @NotNull
+    @Override
+    public Icon getIcon() {
+      return AllIcons.Actions.Profile;
+    }
+
+    @Override
+    public String getTooltipText() {
+      return myTooltip;
+    }
+
+    @Nullable
+    @Override
+    public AnAction getClickAction() {
+      if (myExampleIdentifier == null) return null;
+      return new AnAction() {
+        @Override
+        public void actionPerformed(@NotNull AnActionEvent e) {
+          PsiElement identifier = myExampleIdentifier.getElement();
+          if (identifier != null) StreamExampleLineMarkerProvider.showExample(identifier);
+        }
+      };
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return o instanceof HotspotIconRenderer && ((HotspotIconRenderer)o).myTooltip.equals(myTooltip);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(myTooltip);
+    }
+  }
+}
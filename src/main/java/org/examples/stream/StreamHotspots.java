@@ -0,0 +1,242 @@
+package org.examples.stream;
+
+import com.intellij.openapi.components.Service;
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.project.Project;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordingFile;
+import org.jetbrains.annotations.NonNls;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Stream pipeline call sites of the project which are hot in a JFR recording, with the execution samples and the sampled
+ * allocation attributed to them, shown by {@link StreamHotspotAnnotator}.
+ * <p>
+ * A sample is attributed to the innermost pipeline on its stack: the first frame outside of the JDK which called into
+ * {@code java.util.stream}, so the time spent in lambdas and in the stream internals counts for the line running the
+ * pipeline. Sites are kept by top level class and line, frames of nested classes and lambdas are in the file of their top
+ * level class.
+ * <p>
+ * Samples of parallel pipelines taken in a fork join worker never reach the frame which started the pipeline, they are
+ * attributed to the project lambda called by {@code java.util.stream} instead: its line is in the text of the chain, so it's
+ * matched to the chain as the call site is. Stream samples without a project lambda, e.g. running a method reference, are
+ * only counted in {@link Recording#myUnattributedSamples}.
+ */
+@Service
+public final class StreamHotspots {
+  private static final @NonNls String STREAM_PACKAGE = "java.util.stream.";
+  private static final @NonNls String LAMBDA_METHOD_PREFIX = "lambda$";
+  private static final @NonNls List<String> JDK_PACKAGES = List.of("java.", "javax.", "jdk.", "sun.", "com.sun.");
+  private static final @NonNls String EXECUTION_SAMPLE = "jdk.ExecutionSample";
+  /**
+   * Allocation sampled with a weight, JDK 16 and newer
+   */
+  private static final @NonNls String ALLOCATION_SAMPLE = "jdk.ObjectAllocationSample";
+  private static final @NonNls String ALLOCATION_IN_NEW_TLAB = "jdk.ObjectAllocationInNewTLAB";
+  private static final @NonNls String ALLOCATION_OUTSIDE_TLAB = "jdk.ObjectAllocationOutsideTLAB";
+
+  /**
+   * Pipeline call site, with the samples of the recording attributed to it
+   */
+  static final class Site {
+    final String myClassName;
+    final String myMethodName;
+    final int myLine;
+    long myExecutionSamples;
+    long myAllocatedBytes;
+    long myTlabBytes;
+
+    Site(@NotNull String className, @NotNull String methodName, int line) {
+      myClassName = className;
+      myMethodName = methodName;
+      myLine = line;
+    }
+
+    /**
+     * @return top level class of the frame, the one of its source file
+     */
+    @NotNull
+    String getTopLevelClassName() {
+      int nested = myClassName.indexOf('$');
+      return nested > 0 ? myClassName.substring(0, nested) : myClassName;
+    }
+  }
+
+  /**
+   * Sites of a recording with the totals their shares are computed from
+   */
+  static final class Recording {
+    final String myName;
+    final List<Site> mySites;
+    final long myExecutionSamples;
+    final long myAllocatedBytes;
+    /**
+     * Execution samples running a stream pipeline which couldn't be attributed to a site
+     */
+    final long myUnattributedSamples;
+
+    Recording(@NotNull String name, @NotNull List<Site> sites, long executionSamples, long allocatedBytes, long unattributedSamples) {
+      myName = name;
+      mySites = sites;
+      myExecutionSamples = executionSamples;
+      myAllocatedBytes = allocatedBytes;
+      myUnattributedSamples = unattributedSamples;
+    }
+
+    double getExecutionShare(@NotNull Site site) {
+      return myExecutionSamples > 0 ? (double)site.myExecutionSamples / myExecutionSamples : 0;
+    }
+
+    double getAllocationShare(@NotNull Site site) {
+      return myAllocatedBytes > 0 ? (double)site.myAllocatedBytes / myAllocatedBytes : 0;
+    }
+
+    /**
+     * @return larger of the execution and allocation shares of the site
+     */
+    double getCost(@NotNull Site site) {
+      return Math.max(getExecutionShare(site), getAllocationShare(site));
+    }
+  }
+
+  private volatile Recording myRecording;
+  private volatile Map<String, List<Site>> mySitesByClass = Collections.emptyMap();
+
+  public static StreamHotspots getInstance(@NotNull Project project) {
+    return ServiceManager.getService(project, StreamHotspots.class);
+  }
+
+  @Nullable
+  Recording getRecording() {
+    return myRecording;
+  }
+
+  void setRecording(@NotNull Recording recording) {
+    Map<String, List<Site>> sitesByClass = new HashMap<>();
+    for (Site site : recording.mySites) {
+      sitesByClass.computeIfAbsent(site.getTopLevelClassName(), k -> new ArrayList<>()).add(site);
+    }
+    myRecording = recording;
+    mySitesByClass = sitesByClass;
+  }
+
+  /**
+   * @return sites in the top level class with lines in the range, both one-based and inclusive
+   */
+  @NotNull
+  List<Site> getSites(@NotNull String topLevelClassName, int startLine, int endLine) {
+    List<Site> result = new ArrayList<>();
+    for (Site site : mySitesByClass.getOrDefault(topLevelClassName, Collections.emptyList())) {
+      if (site.myLine >= startLine && site.myLine <= endLine) result.add(site);
+    }
+    return result;
+  }
+
+  boolean isEmpty() {
+    return mySitesByClass.isEmpty();
+  }
+
+  /**
+   * Reads the samples of the recording. Allocation is taken from the weighted allocation samples if the recording has them,
+   * otherwise from the TLAB events, which the older JDKs record.
+   *
+   * @return the sites sorted by cost, the most expensive first
+   */
+  @NotNull
+  static Recording read(@NotNull Path path, @NotNull ProgressIndicator indicator) throws IOException {
+    Map<String, Site> sites = new HashMap<>();
+    long executionSamples = 0, sampledBytes = 0, tlabBytes = 0, unattributedSamples = 0;
+    try (RecordingFile file = new RecordingFile(path)) {
+      while (file.hasMoreEvents()) {
+        indicator.checkCanceled();
+        RecordedEvent event = file.readEvent();
+        String type = event.getEventType().getName();
+        boolean execution = EXECUTION_SAMPLE.equals(type);
+        boolean tlab = ALLOCATION_IN_NEW_TLAB.equals(type) || ALLOCATION_OUTSIDE_TLAB.equals(type);
+        long bytes;
+        if (execution) {
+          bytes = 0;
+          executionSamples++;
+        }
+        else if (ALLOCATION_SAMPLE.equals(type)) {
+          bytes = event.getLong("weight");
+          sampledBytes += bytes;
+        }
+        else if (tlab) {
+          bytes = event.getLong(ALLOCATION_IN_NEW_TLAB.equals(type) ? "tlabSize" : "allocationSize");
+          tlabBytes += bytes;
+        }
+        else {
+          continue;
+        }
+
+        RecordedFrame frame = findPipelineFrame(event.getStackTrace());
+        if (frame == null) {
+          if (execution && runsStream(event.getStackTrace())) unattributedSamples++;
+          continue;
+        }
+        String className = frame.getMethod().getType().getName();
+        String methodName = frame.getMethod().getName();
+        int line = frame.getLineNumber();
+        Site site = sites.computeIfAbsent(className + "#" + methodName + ":" + line, k -> new Site(className, methodName, line));
+        if (execution) site.myExecutionSamples++;
+        else if (tlab) site.myTlabBytes += bytes;
+        else site.myAllocatedBytes += bytes;
+      }
+    }
+
+    boolean useTlab = sampledBytes == 0;
+    List<Site> result = new ArrayList<>(sites.values());
+    if (useTlab) {
+      for (Site site : result) {
+        site.myAllocatedBytes = site.myTlabBytes;
+      }
+    }
+    Recording recording = new Recording(path.getFileName().toString(), result, executionSamples, useTlab ? tlabBytes : sampledBytes,
+                                        unattributedSamples);
+    result.sort(Comparator.comparingDouble(recording::getCost).reversed());
+    return recording;
+  }
+
+  /**
+   * @return frame of the project code which called the innermost stream pipeline on the stack, or the project lambda called
+   * by the pipeline if the stack doesn't reach the caller, as in a fork join worker; null if the stack doesn't run
+   * a pipeline of the project
+   */
+  @Nullable
+  private static RecordedFrame findPipelineFrame(@Nullable RecordedStackTrace stackTrace) {
+    if (stackTrace == null) return null;
+    boolean inStream = false;
+    RecordedFrame lambda = null;
+    for (RecordedFrame frame : stackTrace.getFrames()) {
+      if (!frame.isJavaFrame()) continue;
+      String className = frame.getMethod().getType().getName();
+      if (className.contains("$$Lambda")) continue;
+      if (className.startsWith(STREAM_PACKAGE)) {
+        inStream = true;
+      }
+      else if (JDK_PACKAGES.stream().noneMatch(className::startsWith)) {
+        if (inStream) return frame.getLineNumber() > 0 ? frame : null;
+        // the lambda nearest to the stream frames is the one passed to the pipeline
+        lambda = frame.getMethod().getName().startsWith(LAMBDA_METHOD_PREFIX) ? frame : null;
+      }
+    }
+    return inStream && lambda != null && lambda.getLineNumber() > 0 ? lambda : null;
+  }
+
+  private static boolean runsStream(@Nullable RecordedStackTrace stackTrace) {
+    if (stackTrace == null) return false;
+    for (RecordedFrame frame : stackTrace.getFrames()) {
+      if (frame.isJavaFrame() && frame.getMethod().getType().getName().startsWith(STREAM_PACKAGE)) return true;
+    }
+    return false;
+  }
+}
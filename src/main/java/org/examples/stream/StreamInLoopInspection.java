@@ -0,0 +1,259 @@
+package org.examples.stream;
+
+import com.intellij.codeInspection.AbstractBaseJavaLocalInspectionTool;
+import com.intellij.codeInspection.LocalQuickFix;
+import com.intellij.codeInspection.ProblemDescriptor;
+import com.intellij.codeInspection.ProblemsHolder;
+import com.intellij.openapi.project.Project;
+import com.intellij.psi.*;
+import com.intellij.psi.codeStyle.JavaCodeStyleManager;
+import com.intellij.psi.util.InheritanceUtil;
+import com.intellij.psi.util.PsiTreeUtil;
+import com.intellij.psi.util.PsiUtil;
+import com.siyeh.ig.psiutils.VariableAccessUtils;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Set;
+
+/**
+ * Reports {@code collection.stream()} calls evaluated repeatedly over the same collection: in a loop body or in a lambda of
+ * an outer stream, when the collection doesn't change there. Each evaluation allocates a pipeline, its lambdas and a
+ * spliterator, and lookups like {@code anyMatch(x -> x.equals(key))} scan the whole collection.
+ * <p>
+ * The {@code anyMatch} equality lookup is fixed by hoisting the collection into a {@code HashSet} before the loop.
+ * <p>
+ * The collection counts as unchanged only if the loop uses it in read-only calls, so a loop draining a queue or passing
+ * the collection to a method isn't reported.
+ */
+public class StreamInLoopInspection extends AbstractBaseJavaLocalInspectionTool {
+  /**
+   * Calls which don't change the collection, any other use of it in the loop may, e.g. {@code poll()} or passing it to a method
+   */
+  private static final Set<String> READ_ONLY_CALLS = Set.of("stream", "contains", "containsAll", "size", "isEmpty", "get", "iterator");
+
+  @NotNull
+  @Override
+  public PsiElementVisitor buildVisitor(@NotNull ProblemsHolder holder, boolean isOnTheFly) {
+    return new JavaElementVisitor() {
+      @Override
+      public void visitMethodCallExpression(PsiMethodCallExpression call) {
+        super.visitMethodCallExpression(call);
+        if (!"stream".equals(call.getMethodExpression().getReferenceName()) || call.getArgumentList().getExpressionCount() != 0) return;
+        PsiExpression collection = PsiUtil.skipParenthesizedExprDown(call.getMethodExpression().getQualifierExpression());
+        if (!(collection instanceof PsiReferenceExpression) ||
+            !InheritanceUtil.isInheritor(collection.getType(), CommonClassNames.JAVA_UTIL_COLLECTION)) {
+          return;
+        }
+        PsiElement context = getRepeatingContext(call);
+        if (context == null || !isInvariant((PsiReferenceExpression)collection, context)) return;
+
+        PsiElement name = call.getMethodExpression().getReferenceNameElement();
+        if (name == null) return;
+        String where = context instanceof PsiLoopStatement ? "on every iteration of the loop" : "for every element of the outer stream";
+        String message = "Stream over '" + collection.getText() + "' is created " + where + ", consider a precomputed Set or Map";
+        StreamChain chain = StreamChain.of(getFirstOperation(call));
+        if (chain != null && HoistToSetFix.getLookupKey(chain) != null && HoistToSetFix.getHoistAnchor(context) != null) {
+          holder.registerProblem(name, message, new HoistToSetFix());
+        }
+        else {
+          holder.registerProblem(name, message);
+        }
+      }
+    };
+  }
+
+  /**
+   * @return loop which body contains the call, or lambda argument of a stream operation containing it
+   */
+  @Nullable
+  static PsiElement getRepeatingContext(@NotNull PsiElement element) {
+    PsiElement child = element;
+    for (PsiElement parent = element.getParent(); parent != null; child = parent, parent = parent.getParent()) {
+      if (parent instanceof PsiMember || parent instanceof PsiFile) return null;
+      if (parent instanceof PsiLoopStatement && ((PsiLoopStatement)parent).getBody() == child) return parent;
+      if (parent instanceof PsiLambdaExpression) {
+        PsiElement call = PsiUtil.skipParenthesizedExprUp(parent.getParent()).getParent();
+        boolean streamArgument = call instanceof PsiMethodCallExpression && StreamChain.isOperation((PsiMethodCallExpression)call);
+        return streamArgument ? parent : null;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * @return true if the reference is a variable declared outside of the context, which is neither reassigned nor possibly
+   * modified in it: every use of it in the context must be a read-only call or a for-each loop over it, and a field must not
+   * be reachable from project methods called there
+   */
+  static boolean isInvariant(@NotNull PsiReferenceExpression reference, @NotNull PsiElement context) {
+    PsiExpression qualifier = reference.getQualifierExpression();
+    if (qualifier != null && !(qualifier instanceof PsiThisExpression)) return false;
+    PsiElement target = reference.resolve();
+    if (!(target instanceof PsiVariable) || PsiTreeUtil.isAncestor(context, target, false)) return false;
+    PsiVariable variable = (PsiVariable)target;
+    if (VariableAccessUtils.variableIsAssigned(variable, context)) return false;
+    for (PsiReferenceExpression usage : VariableAccessUtils.getVariableReferences(variable, context)) {
+      if (!isReadOnlyUsage(usage)) return false;
+    }
+    return !(variable instanceof PsiField) || !callsProjectMethods(context);
+  }
+
+  private static boolean isReadOnlyUsage(@NotNull PsiReferenceExpression usage) {
+    PsiElement parent = PsiUtil.skipParenthesizedExprUp(usage.getParent());
+    if (parent instanceof PsiForeachStatement) {
+      return PsiTreeUtil.isAncestor(((PsiForeachStatement)parent).getIteratedValue(), usage, false);
+    }
+    if (!(parent instanceof PsiReferenceExpression) || !(parent.getParent() instanceof PsiMethodCallExpression)) return false;
+    String name = ((PsiReferenceExpression)parent).getReferenceName();
+    if (!READ_ONLY_CALLS.contains(name)) return false;
+    return !"iterator".equals(name) || !isIteratorRemoved((PsiMethodCallExpression)parent.getParent());
+  }
+
+  /**
+   * @return true if {@code remove()} may be called on the iterator, which is the case unless it's only used in the expression
+   * or stored in a local variable never asked to remove
+   */
+  private static boolean isIteratorRemoved(@NotNull PsiMethodCallExpression iteratorCall) {
+    PsiElement parent = PsiUtil.skipParenthesizedExprUp(iteratorCall.getParent());
+    if (parent instanceof PsiReferenceExpression) {
+      return "remove".equals(((PsiReferenceExpression)parent).getReferenceName());
+    }
+    if (!(parent instanceof PsiLocalVariable)) return true;
+    PsiLocalVariable iterator = (PsiLocalVariable)parent;
+    PsiElement scope = PsiTreeUtil.getParentOfType(iterator, PsiCodeBlock.class);
+    if (scope == null || VariableAccessUtils.variableIsAssigned(iterator, scope)) return true;
+    for (PsiReferenceExpression usage : VariableAccessUtils.getVariableReferences(iterator, scope)) {
+      PsiElement usageParent = PsiUtil.skipParenthesizedExprUp(usage.getParent());
+      if (!(usageParent instanceof PsiReferenceExpression) || "remove".equals(((PsiReferenceExpression)usageParent).getReferenceName())) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @return true if the context calls a method declared outside of the JDK, which might change fields
+   */
+  private static boolean callsProjectMethods(@NotNull PsiElement context) {
+    boolean[] found = new boolean[1];
+    context.accept(new JavaRecursiveElementWalkingVisitor() {
+      @Override
+      public void visitCallExpression(PsiCallExpression call) {
+        super.visitCallExpression(call);
+        PsiMethod method = call.resolveMethod();
+        if (method == null ? call instanceof PsiMethodCallExpression : !PipelineBenchmark.isJdkClass(method.getContainingClass())) {
+          found[0] = true;
+          stopWalking();
+        }
+      }
+
+      @Override
+      public void visitMethodReferenceExpression(PsiMethodReferenceExpression expression) {
+        super.visitMethodReferenceExpression(expression);
+        PsiElement method = expression.resolve();
+        if (!(method instanceof PsiMethod) || !PipelineBenchmark.isJdkClass(((PsiMethod)method).getContainingClass())) {
+          found[0] = true;
+          stopWalking();
+        }
+      }
+    });
+    return found[0];
+  }
+
+  @NotNull
+  private static PsiMethodCallExpression getFirstOperation(@NotNull PsiMethodCallExpression streamCall) {
+    PsiElement parent = PsiUtil.skipParenthesizedExprUp(streamCall.getParent());
+    PsiElement next = parent instanceof PsiReferenceExpression ? parent.getParent() : null;
+    return next instanceof PsiMethodCallExpression ? (PsiMethodCallExpression)next : streamCall;
+  }
+
+  /**
+   * Replaces {@code items.stream().anyMatch(x -> x.equals(key))} with {@code itemsSet.contains(key)}, where
+   * {@code itemsSet} is a {@code HashSet} created before the loop or the statement of the outer stream.
+   */
+  private static final class HoistToSetFix implements LocalQuickFix {
+    @NotNull
+    @Override
+    public String getFamilyName() {
+      return "Hoist collection into a HashSet";
+    }
+
+    @Override
+    public void applyFix(@NotNull Project project, @NotNull ProblemDescriptor descriptor) {
+      PsiMethodCallExpression streamCall = PsiTreeUtil.getParentOfType(descriptor.getPsiElement(), PsiMethodCallExpression.class);
+      if (streamCall == null) return;
+      StreamChain chain = StreamChain.of(getFirstOperation(streamCall));
+      PsiElement context = getRepeatingContext(streamCall);
+      PsiExpression key = chain != null ? getLookupKey(chain) : null;
+      PsiStatement anchor = context != null ? getHoistAnchor(context) : null;
+      PsiType elementType = StreamChain.getElementType(streamCall.getType());
+      PsiExpression collection = streamCall.getMethodExpression().getQualifierExpression();
+      if (key == null || anchor == null || elementType == null || collection == null) return;
+
+      JavaCodeStyleManager codeStyleManager = JavaCodeStyleManager.getInstance(project);
+      PsiElementFactory factory = JavaPsiFacade.getElementFactory(project);
+      String name = codeStyleManager.suggestUniqueVariableName(collection.getText().replaceFirst("^this\\.", "") + "Set", anchor, true);
+      PsiStatement declaration = factory.createStatementFromText(
+        "java.util.Set<" + elementType.getCanonicalText() + "> " + name + " = new java.util.HashSet<>(" + collection.getText() + ");", anchor);
+      codeStyleManager.shortenClassReferences(anchor.getParent().addBefore(declaration, anchor));
+      chain.getLastCall().replace(factory.createExpressionFromText(name + ".contains(" + key.getText() + ")", chain.getLastCall()));
+    }
+
+    /**
+     * @return {@code key} if the chain is {@code collection.stream().anyMatch(x -> x.equals(key))} or with {@code key.equals(x)}
+     * or {@code Objects.equals(x, key)}, where the key doesn't depend on {@code x}
+     */
+    @Nullable
+    static PsiExpression getLookupKey(@NotNull StreamChain chain) {
+      if (chain.getOperations().size() != 1) return null;
+      PsiMethodCallExpression terminal = chain.getLastCall();
+      if (!StreamChain.isCall(terminal, "java.util.stream.Stream.anyMatch1")) return null;
+      PsiLambdaExpression lambda = StreamChain.getLambdaArgument(terminal);
+      PsiExpression body = lambda != null ? StreamChain.getLambdaResult(lambda) : null;
+      if (!(body instanceof PsiMethodCallExpression)) return null;
+      PsiMethodCallExpression equalsCall = (PsiMethodCallExpression)body;
+      if (!"equals".equals(equalsCall.getMethodExpression().getReferenceName())) return null;
+
+      PsiParameter parameter = lambda.getParameterList().getParameters()[0];
+      PsiExpression[] arguments = equalsCall.getArgumentList().getExpressions();
+      PsiExpression left;
+      PsiExpression right;
+      if (arguments.length == 1) {
+        left = equalsCall.getMethodExpression().getQualifierExpression();
+        right = arguments[0];
+      }
+      else if (arguments.length == 2 && isObjectsClass(equalsCall)) {
+        left = arguments[0];
+        right = arguments[1];
+      }
+      else {
+        return null;
+      }
+      if (isReferenceTo(left, parameter) && !VariableAccessUtils.variableIsUsed(parameter, right)) return right;
+      if (isReferenceTo(right, parameter) && !VariableAccessUtils.variableIsUsed(parameter, left)) return left;
+      return null;
+    }
+
+    /**
+     * @return statement the set is declared before: the loop itself or the statement of the outer stream
+     */
+    @Nullable
+    static PsiStatement getHoistAnchor(@NotNull PsiElement context) {
+      PsiStatement statement = context instanceof PsiStatement ? (PsiStatement)context : PsiTreeUtil.getParentOfType(context, PsiStatement.class);
+      while (statement != null && statement.getParent() instanceof PsiLabeledStatement) {
+        statement = (PsiStatement)statement.getParent();
+      }
+      return statement != null && statement.getParent() instanceof PsiCodeBlock ? statement : null;
+    }
+
+    private static boolean isObjectsClass(@NotNull PsiMethodCallExpression call) {
+      return CommonClassNames.JAVA_UTIL_OBJECTS.equals(StreamChain.getClassName(call));
+    }
+
+    private static boolean isReferenceTo(@Nullable PsiExpression expression, @NotNull PsiVariable variable) {
+      expression = PsiUtil.skipParenthesizedExprDown(expression);
+      return expression instanceof PsiReferenceExpression && ((PsiReferenceExpression)expression).isReferenceTo(variable);
+    }
+  }
+}
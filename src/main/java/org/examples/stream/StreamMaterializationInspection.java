@@ -0,0 +1,306 @@
+package org.examples.stream;
+
+import com.intellij.codeInspection.AbstractBaseJavaLocalInspectionTool;
+import com.intellij.codeInspection.LocalQuickFix;
+import com.intellij.codeInspection.ProblemDescriptor;
+import com.intellij.codeInspection.ProblemsHolder;
+import com.intellij.openapi.project.Project;
+import com.intellij.psi.*;
+import com.intellij.psi.codeStyle.JavaCodeStyleManager;
+import com.intellij.psi.util.InheritanceUtil;
+import com.intellij.psi.util.PsiTreeUtil;
+import com.intellij.psi.util.PsiUtil;
+import com.siyeh.ig.psiutils.VariableAccessUtils;
+import org.jetbrains.annotations.NonNls;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.List;
+
+/**
+ * Reports collections created by a stream terminal operation which are only consumed once afterwards:
+ * <ul>
+ *   <li>{@code collect(toList()).stream()}, fused into one pipeline</li>
+ *   <li>{@code new ArrayList<>(stream.collect(toList()))}, collected with {@code toCollection(ArrayList::new)}</li>
+ *   <li>a local variable initialized with {@code collect(toList())} used once in the next statement as {@code list.stream()}
+ *   or {@code list.forEach()}, fused into the pipeline of that statement, or iterated once by a loop</li>
+ *   <li>a local variable initialized with {@code collect(groupingBy(...))} which is only iterated once</li>
+ * </ul>
+ * Warnings tell the allocations avoided, see {@link AllocationEstimate}.
+ */
+public class StreamMaterializationInspection extends AbstractBaseJavaLocalInspectionTool {
+  /**
+   * List collector, the list and its array, the array growth is not counted
+   */
+  private static final AllocationEstimate COLLECTED_LIST = new AllocationEstimate(3, 0, 0);
+  /**
+   * Spliterator and pipeline head of a stream over a collection
+   */
+  private static final AllocationEstimate NEW_STREAM = new AllocationEstimate(2, 0, 0);
+  /**
+   * List and array of a copy
+   */
+  private static final AllocationEstimate COPY = new AllocationEstimate(2, 0, 0);
+  /**
+   * List and map node per key
+   */
+  private static final AllocationEstimate GROUPS = new AllocationEstimate(0, 0, 2);
+
+  @NotNull
+  @Override
+  public PsiElementVisitor buildVisitor(@NotNull ProblemsHolder holder, boolean isOnTheFly) {
+    return new JavaElementVisitor() {
+      @Override
+      public void visitMethodCallExpression(PsiMethodCallExpression call) {
+        super.visitMethodCallExpression(call);
+        if (!isStreamOfCollection(call)) return;
+        PsiMethodCallExpression collect = getListCollect(call.getMethodExpression().getQualifierExpression());
+        if (collect == null) return;
+        register(call, collect, "Collected list is streamed again", COLLECTED_LIST.plus(NEW_STREAM), FuseFix.create(call, collect));
+      }
+
+      @Override
+      public void visitNewExpression(PsiNewExpression expression) {
+        super.visitNewExpression(expression);
+        PsiExpressionList arguments = expression.getArgumentList();
+        PsiJavaCodeReferenceElement classReference = expression.getClassReference();
+        if (arguments == null || arguments.getExpressionCount() != 1 || classReference == null ||
+            expression.getAnonymousClass() != null || !hasDefaultConstructor(classReference.resolve())) {
+          return;
+        }
+        PsiMethodCallExpression collect = getListCollect(arguments.getExpressions()[0]);
+        if (collect == null) return;
+        register(expression, collect, "Collected list is copied", COPY, new CollectToCollectionFix());
+      }
+
+      @Override
+      public void visitLocalVariable(PsiLocalVariable variable) {
+        super.visitLocalVariable(variable);
+        PsiExpression initializer = PsiUtil.skipParenthesizedExprDown(variable.getInitializer());
+        PsiElement declaration = variable.getParent();
+        if (!(initializer instanceof PsiMethodCallExpression) || !(declaration instanceof PsiDeclarationStatement) ||
+            ((PsiDeclarationStatement)declaration).getDeclaredElements().length != 1) {
+          return;
+        }
+        PsiMethodCallExpression collect = getListCollect(initializer);
+        PsiMethodCallExpression groupingCollect = collect == null ? getGroupingCollect(initializer) : null;
+        if (collect == null && groupingCollect == null) return;
+        PsiReferenceExpression usage = getSingleUsageInNextStatement(variable, (PsiStatement)declaration);
+        if (usage == null) return;
+        PsiElement parent = PsiUtil.skipParenthesizedExprUp(usage.getParent());
+        PsiMethodCallExpression usageCall = parent instanceof PsiReferenceExpression && parent.getParent() instanceof PsiMethodCallExpression
+                                            ? (PsiMethodCallExpression)parent.getParent() : null;
+        boolean forEach = usageCall != null && "forEach".equals(StreamChain.getName(usageCall));
+
+        if (collect != null) {
+          if (usageCall != null && isStreamOfCollection(usageCall)) {
+            register(initializer, collect, "Collected list '" + variable.getName() + "' is only streamed again",
+                     COLLECTED_LIST.plus(NEW_STREAM), FuseFix.create(usageCall, collect));
+          }
+          else if (forEach) {
+            register(initializer, collect, "Collected list '" + variable.getName() + "' is only iterated once", COLLECTED_LIST, FuseFix.create(null, collect));
+          }
+          else if (isIteratedBy(usage, parent)) {
+            register(initializer, collect, "Collected list '" + variable.getName() + "' is only iterated once", COLLECTED_LIST, null);
+          }
+        }
+        else if (forEach || usageCall != null && isMapView(usageCall) &&
+                            isIteratedBy(usageCall, PsiUtil.skipParenthesizedExprUp(usageCall.getParent()))) {
+          holder.registerProblem(getNameElement(groupingCollect),
+                                 "Map built by 'groupingBy()' is only iterated once, a downstream collector like counting() or mapping() " +
+                                 "avoids " + GROUPS + " allocations of the per-key lists");
+        }
+      }
+
+      private void register(@NotNull PsiExpression expression, @NotNull PsiMethodCallExpression collect, @NotNull String message,
+                            @NotNull AllocationEstimate avoided, @Nullable LocalQuickFix fix) {
+        String text = message + ", fusing avoids " + avoided + " allocations and a buffer of n elements";
+        if (fix != null) {
+          holder.registerProblem(expression, text, fix);
+        }
+        else {
+          holder.registerProblem(getNameElement(collect), text);
+        }
+      }
+    };
+  }
+
+  @NotNull
+  private static PsiElement getNameElement(@NotNull PsiMethodCallExpression call) {
+    PsiElement name = call.getMethodExpression().getReferenceNameElement();
+    return name != null ? name : call;
+  }
+
+  /**
+   * @return {@code stream.collect(Collectors.toList())} call if it's the expression
+   */
+  @Nullable
+  static PsiMethodCallExpression getListCollect(@Nullable PsiExpression expression) {
+    expression = PsiUtil.skipParenthesizedExprDown(expression);
+    if (!(expression instanceof PsiMethodCallExpression)) return null;
+    PsiMethodCallExpression call = (PsiMethodCallExpression)expression;
+    if (!"collect".equals(StreamChain.getName(call)) || !StreamChain.isOperation(call)) return null;
+    PsiExpression collector = StreamChain.getSingleArgument(call);
+    return collector instanceof PsiMethodCallExpression &&
+           StreamChain.isCall((PsiMethodCallExpression)collector, "java.util.stream.Collectors.toList0") ? call : null;
+  }
+
+  /**
+   * @return {@code stream.collect(Collectors.groupingBy(classifier))} call if it's the expression
+   */
+  @Nullable
+  private static PsiMethodCallExpression getGroupingCollect(@NotNull PsiExpression expression) {
+    if (!(expression instanceof PsiMethodCallExpression)) return null;
+    PsiMethodCallExpression call = (PsiMethodCallExpression)expression;
+    if (!"collect".equals(StreamChain.getName(call)) || !StreamChain.isOperation(call)) return null;
+    PsiExpression collector = StreamChain.getSingleArgument(call);
+    return collector instanceof PsiMethodCallExpression &&
+           StreamChain.isCall((PsiMethodCallExpression)collector, "java.util.stream.Collectors.groupingBy1") ? call : null;
+  }
+
+  private static boolean isStreamOfCollection(@NotNull PsiMethodCallExpression call) {
+    String name = StreamChain.getName(call);
+    return ("stream".equals(name) || "parallelStream".equals(name)) && call.getArgumentList().getExpressionCount() == 0;
+  }
+
+  private static boolean hasDefaultConstructor(@Nullable PsiElement target) {
+    if (!(target instanceof PsiClass) || !InheritanceUtil.isInheritor((PsiClass)target, CommonClassNames.JAVA_UTIL_COLLECTION)) {
+      return false;
+    }
+    PsiMethod[] constructors = ((PsiClass)target).getConstructors();
+    if (constructors.length == 0) return true;
+    for (PsiMethod constructor : constructors) {
+      if (constructor.getParameterList().isEmpty() && constructor.hasModifierProperty(PsiModifier.PUBLIC)) return true;
+    }
+    return false;
+  }
+
+  /**
+   * @return the only reference to the variable, if it's in the statement following the declaration and is evaluated once there
+   */
+  @Nullable
+  private static PsiReferenceExpression getSingleUsageInNextStatement(@NotNull PsiLocalVariable variable, @NotNull PsiStatement declaration) {
+    PsiElement block = declaration.getParent();
+    PsiStatement next = PsiTreeUtil.getNextSiblingOfType(declaration, PsiStatement.class);
+    if (!(block instanceof PsiCodeBlock) || next == null) return null;
+    List<PsiReferenceExpression> references = VariableAccessUtils.getVariableReferences(variable, block);
+    if (references.size() != 1) return null;
+    PsiReferenceExpression reference = references.get(0);
+    if (!PsiTreeUtil.isAncestor(next, reference, false)) return null;
+    for (PsiElement parent = reference.getParent(); parent != next; parent = parent.getParent()) {
+      if (parent instanceof PsiLambdaExpression || parent instanceof PsiLoopStatement || parent instanceof PsiClass) return null;
+    }
+    if (next instanceof PsiLoopStatement && !isIteratedBy(reference, PsiUtil.skipParenthesizedExprUp(reference.getParent()))) {
+      return null;
+    }
+    return reference;
+  }
+
+  /**
+   * @return true if the expression is the iterated value of a for-each loop
+   */
+  private static boolean isIteratedBy(@NotNull PsiExpression expression, @Nullable PsiElement parent) {
+    return parent instanceof PsiForeachStatement &&
+           PsiTreeUtil.isAncestor(((PsiForeachStatement)parent).getIteratedValue(), expression, false);
+  }
+
+  private static boolean isMapView(@NotNull PsiMethodCallExpression call) {
+    @NonNls String name = StreamChain.getName(call);
+    return "entrySet".equals(name) || "values".equals(name) || "keySet".equals(name);
+  }
+
+  /**
+   * Continues the pipeline of {@code collect(toList())} instead of collecting it: {@code s.collect(toList()).stream()} becomes
+   * {@code s}, and for a variable used once, {@code list.stream()} and {@code list.forEach(...)} continue the pipeline of the
+   * variable initializer.
+   * <p>
+   * Not offered for {@code parallelStream()}: {@code parallel()} would make the stages before the collect parallel too,
+   * which changes how they run, e.g. their side effects and the order of encounter of {@code forEach}. Not offered for a
+   * parallel pipeline before the collect either: the sequential {@code stream()} or {@code forEach} after it would run
+   * concurrently and out of order, interleaved with the side effects of the stages before.
+   */
+  private static final class FuseFix implements LocalQuickFix {
+    /**
+     * @param streamCall {@code stream()} or {@code parallelStream()} call continuing the collected list, null for {@code forEach}
+     */
+    @Nullable
+    static FuseFix create(@Nullable PsiMethodCallExpression streamCall, @NotNull PsiMethodCallExpression collect) {
+      if (streamCall != null && "parallelStream".equals(StreamChain.getName(streamCall))) return null;
+      StreamChain upstream = StreamChain.of(collect);
+      return upstream == null || upstream.isParallel() ? null : new FuseFix();
+    }
+
+    @NotNull
+    @Override
+    public String getFamilyName() {
+      return "Fuse into one pipeline";
+    }
+
+    @Override
+    public void applyFix(@NotNull Project project, @NotNull ProblemDescriptor descriptor) {
+      PsiElement element = descriptor.getPsiElement();
+      PsiElementFactory factory = JavaPsiFacade.getElementFactory(project);
+      if (element instanceof PsiMethodCallExpression && isStreamOfCollection((PsiMethodCallExpression)element)) {
+        PsiMethodCallExpression streamCall = (PsiMethodCallExpression)element;
+        PsiMethodCallExpression collect = getListCollect(streamCall.getMethodExpression().getQualifierExpression());
+        PsiExpression stream = collect != null ? collect.getMethodExpression().getQualifierExpression() : null;
+        if (stream == null || create(streamCall, collect) == null) return;
+        streamCall.replace(factory.createExpressionFromText(stream.getText(), streamCall));
+        return;
+      }
+
+      PsiLocalVariable variable = PsiTreeUtil.getParentOfType(element, PsiLocalVariable.class);
+      PsiMethodCallExpression collect = getListCollect(element instanceof PsiExpression ? (PsiExpression)element : null);
+      PsiStatement declaration = PsiTreeUtil.getParentOfType(variable, PsiStatement.class);
+      PsiExpression stream = collect != null ? collect.getMethodExpression().getQualifierExpression() : null;
+      PsiReferenceExpression usage = variable != null && declaration != null ? getSingleUsageInNextStatement(variable, declaration) : null;
+      if (stream == null || usage == null) return;
+      PsiElement parent = PsiUtil.skipParenthesizedExprUp(usage.getParent());
+      if (!(parent instanceof PsiReferenceExpression) || !(parent.getParent() instanceof PsiMethodCallExpression)) return;
+      PsiMethodCallExpression usageCall = (PsiMethodCallExpression)parent.getParent();
+      PsiExpression replacement;
+      if (isStreamOfCollection(usageCall)) {
+        if (create(usageCall, collect) == null) return;
+        replacement = factory.createExpressionFromText(stream.getText(), usageCall);
+      }
+      else if ("forEach".equals(StreamChain.getName(usageCall))) {
+        if (create(null, collect) == null) return;
+        replacement = factory.createExpressionFromText(stream.getText() + ".forEachOrdered" + usageCall.getArgumentList().getText(), usageCall);
+      }
+      else {
+        return;
+      }
+      PsiElement result = usageCall.replace(replacement);
+      declaration.delete();
+      JavaCodeStyleManager.getInstance(project).shortenClassReferences(result);
+    }
+  }
+
+  /**
+   * Replaces {@code new ArrayList<>(s.collect(toList()))} with {@code s.collect(Collectors.toCollection(ArrayList::new))}.
+   */
+  private static final class CollectToCollectionFix implements LocalQuickFix {
+    @NotNull
+    @Override
+    public String getFamilyName() {
+      return "Collect into the collection directly";
+    }
+
+    @Override
+    public void applyFix(@NotNull Project project, @NotNull ProblemDescriptor descriptor) {
+      PsiElement element = descriptor.getPsiElement();
+      if (!(element instanceof PsiNewExpression)) return;
+      PsiNewExpression expression = (PsiNewExpression)element;
+      PsiExpressionList arguments = expression.getArgumentList();
+      PsiJavaCodeReferenceElement classReference = expression.getClassReference();
+      PsiClass psiClass = classReference != null ? (PsiClass)classReference.resolve() : null;
+      PsiMethodCallExpression collect = arguments != null && arguments.getExpressionCount() == 1
+                                        ? getListCollect(arguments.getExpressions()[0]) : null;
+      PsiExpression stream = collect != null ? collect.getMethodExpression().getQualifierExpression() : null;
+      if (stream == null || psiClass == null) return;
+      String text = stream.getText() + ".collect(java.util.stream.Collectors.toCollection(" + psiClass.getQualifiedName() + "::new))";
+      PsiElement result = expression.replace(JavaPsiFacade.getElementFactory(project).createExpressionFromText(text, expression));
+      JavaCodeStyleManager.getInstance(project).shortenClassReferences(result);
+    }
+  }
+}
@@ -0,0 +1,221 @@
+package org.examples.stream;
+
+import com.intellij.codeInspection.*;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.TextRange;
+import com.intellij.psi.*;
+import com.intellij.psi.codeStyle.JavaCodeStyleManager;
+import com.intellij.psi.tree.IElementType;
+import com.intellij.psi.util.InheritanceUtil;
+import com.intellij.psi.util.PsiTreeUtil;
+import com.intellij.psi.util.PsiUtil;
+import com.intellij.util.ObjectUtils;
+import org.jetbrains.annotations.NonNls;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reports stream shapes having a cheaper equivalent, each warning tells the complexity difference:
+ * <ul>
+ *   <li>{@code filter(p).findFirst().isPresent()} is {@code anyMatch(p)}</li>
+ *   <li>{@code count() > 0} is {@code anyMatch(p)} after a filter, {@code findAny().isPresent()} otherwise</li>
+ *   <li>{@code sorted().findFirst()} is {@code min()}</li>
+ *   <li>{@code collect(toList()).size()} is {@code count()}</li>
+ * </ul>
+ * Warnings about the operations having examples also offer to show the example.
+ */
+public class StreamShortCircuitInspection extends AbstractBaseJavaLocalInspectionTool {
+  @NotNull
+  @Override
+  public PsiElementVisitor buildVisitor(@NotNull ProblemsHolder holder, boolean isOnTheFly) {
+    return new JavaElementVisitor() {
+      @Override
+      public void visitMethodCallExpression(PsiMethodCallExpression call) {
+        super.visitMethodCallExpression(call);
+        switch (StreamChain.getName(call)) {
+          case "isPresent":
+          case "isEmpty":
+            checkFindIsPresent(call);
+            break;
+          case "count":
+            checkCountComparison(call);
+            break;
+          case "findFirst":
+            checkSortedFindFirst(call);
+            break;
+          case "size":
+            checkCollectedSize(call);
+            break;
+        }
+      }
+
+      private void checkFindIsPresent(@NotNull PsiMethodCallExpression isPresent) {
+        PsiMethodCallExpression find = getQualifierOperation(isPresent, "findFirst", "findAny");
+        PsiMethodCallExpression filter = find != null ? getQualifierOperation(find, "filter") : null;
+        if (filter == null || filter.getArgumentList().getExpressionCount() != 1) return;
+        String match = "isPresent".equals(StreamChain.getName(isPresent)) ? "anyMatch" : "noneMatch";
+        register(isPresent, filter, replaceFilter(filter, match),
+                 "'filter()." + StreamChain.getName(find) + "()." + StreamChain.getName(isPresent) + "()' can be '" + match +
+                 "()': the same O(n) scan without an Optional", "java.util.stream.Stream." + match + "1");
+      }
+
+      private void checkCountComparison(@NotNull PsiMethodCallExpression count) {
+        if (!StreamChain.isOperation(count) || count.getArgumentList().getExpressionCount() != 0) return;
+        PsiElement parent = PsiUtil.skipParenthesizedExprUp(count.getParent());
+        if (!(parent instanceof PsiBinaryExpression)) return;
+        PsiBinaryExpression comparison = (PsiBinaryExpression)parent;
+        Boolean any = isNonEmptyCheck(comparison, count);
+        if (any == null) return;
+        String match = any ? "anyMatch" : "noneMatch";
+        PsiMethodCallExpression filter = getQualifierOperation(count, "filter");
+        PsiExpression stream = count.getMethodExpression().getQualifierExpression();
+        if (stream == null) return;
+        if (filter != null && filter.getArgumentList().getExpressionCount() == 1) {
+          register(comparison, filter, replaceFilter(filter, match),
+                   "'count()' compared with zero can be '" + match + "()': it stops at the first match instead of counting all n elements",
+                   "java.util.stream.Stream." + match + "1");
+        }
+        else {
+          register(comparison, count, (any ? "" : "!") + stream.getText() + ".findAny().isPresent()",
+                   "'count()' compared with zero can be 'findAny()': it stops at the first element instead of counting all n elements",
+                   null);
+        }
+      }
+
+      private void checkSortedFindFirst(@NotNull PsiMethodCallExpression findFirst) {
+        PsiMethodCallExpression sorted = getQualifierOperation(findFirst, "sorted");
+        PsiExpression stream = sorted != null ? sorted.getMethodExpression().getQualifierExpression() : null;
+        if (stream == null || findFirst.getArgumentList().getExpressionCount() != 0) return;
+        PsiExpression[] arguments = sorted.getArgumentList().getExpressions();
+        String comparator;
+        if (arguments.length == 1) {
+          comparator = arguments[0].getText();
+        }
+        else if (arguments.length == 0) {
+          PsiType elementType = StreamChain.getElementType(stream.getType());
+          if (elementType instanceof PsiPrimitiveType) {
+            comparator = "";
+          }
+          else if (InheritanceUtil.isInheritor(elementType, CommonClassNames.JAVA_LANG_COMPARABLE)) {
+            comparator = "java.util.Comparator.naturalOrder()";
+          }
+          else {
+            return;
+          }
+        }
+        else {
+          return;
+        }
+        register(findFirst, sorted, stream.getText() + ".min(" + comparator + ")",
+                 "'sorted().findFirst()' can be 'min()': O(n) instead of O(n log n) time and no buffer of n elements", null);
+      }
+
+      private void checkCollectedSize(@NotNull PsiMethodCallExpression size) {
+        if (size.getArgumentList().getExpressionCount() != 0) return;
+        PsiMethodCallExpression collect = getQualifierOperation(size, "collect");
+        PsiExpression collector = collect != null ? StreamChain.getSingleArgument(collect) : null;
+        PsiExpression stream = collect != null ? collect.getMethodExpression().getQualifierExpression() : null;
+        if (!(collector instanceof PsiMethodCallExpression) || stream == null ||
+            !StreamChain.isCall((PsiMethodCallExpression)collector, "java.util.stream.Collectors.toList0")) {
+          return;
+        }
+        register(size, collect, "(int) " + stream.getText() + ".count()",
+                 "'collect(toList()).size()' can be 'count()': no list of n elements is allocated", null);
+      }
+
+      private void register(@NotNull PsiExpression replaced, @NotNull PsiMethodCallExpression first, @NotNull String replacement,
+                            @NotNull String message, @Nullable @NonNls String exampleKey) {
+        PsiElement name = first.getMethodExpression().getReferenceNameElement();
+        if (name == null) return;
+        int start = Math.max(0, name.getTextRange().getStartOffset() - replaced.getTextRange().getStartOffset());
+        List<LocalQuickFix> fixes = new ArrayList<>();
+        fixes.add(new ReplaceFix(replacement));
+        ShowExampleFix showExample = exampleKey != null ? ShowExampleFix.create(exampleKey) : null;
+        if (showExample != null) fixes.add(showExample);
+        holder.registerProblem(replaced, new TextRange(start, replaced.getTextLength()), message, fixes.toArray(LocalQuickFix.EMPTY_ARRAY));
+      }
+    };
+  }
+
+  /**
+   * @return stream operation the call is made on, if it has one of the names
+   */
+  @Nullable
+  private static PsiMethodCallExpression getQualifierOperation(@NotNull PsiMethodCallExpression call, @NonNls String... names) {
+    PsiExpression qualifier = PsiUtil.skipParenthesizedExprDown(call.getMethodExpression().getQualifierExpression());
+    if (!(qualifier instanceof PsiMethodCallExpression) || !StreamChain.isOperation((PsiMethodCallExpression)qualifier)) return null;
+    String name = StreamChain.getName((PsiMethodCallExpression)qualifier);
+    for (String expected : names) {
+      if (expected.equals(name)) return (PsiMethodCallExpression)qualifier;
+    }
+    return null;
+  }
+
+  @NotNull
+  private static String replaceFilter(@NotNull PsiMethodCallExpression filter, @NotNull String match) {
+    PsiExpression stream = filter.getMethodExpression().getQualifierExpression();
+    return (stream != null ? stream.getText() + "." : "") + match + filter.getArgumentList().getText();
+  }
+
+  /**
+   * @return true for {@code count > 0}, false for {@code count == 0} and the equivalent comparisons, null for other ones
+   */
+  @Nullable
+  private static Boolean isNonEmptyCheck(@NotNull PsiBinaryExpression comparison, @NotNull PsiExpression count) {
+    IElementType operation = comparison.getOperationTokenType();
+    boolean countLeft = PsiTreeUtil.isAncestor(comparison.getLOperand(), count, false);
+    Object value = getConstant(countLeft ? comparison.getROperand() : comparison.getLOperand());
+    if (!(value instanceof Number)) return null;
+    long bound = ((Number)value).longValue();
+    if (!countLeft) {
+      // 0 < count is count > 0
+      if (operation == JavaTokenType.LT) operation = JavaTokenType.GT;
+      else if (operation == JavaTokenType.GT) operation = JavaTokenType.LT;
+      else if (operation == JavaTokenType.LE) operation = JavaTokenType.GE;
+      else if (operation == JavaTokenType.GE) operation = JavaTokenType.LE;
+    }
+    if (bound == 0 && (operation == JavaTokenType.GT || operation == JavaTokenType.NE)) return true;
+    if (bound == 1 && operation == JavaTokenType.GE) return true;
+    if (bound == 0 && (operation == JavaTokenType.EQEQ || operation == JavaTokenType.LE)) return false;
+    if (bound == 1 && operation == JavaTokenType.LT) return false;
+    return null;
+  }
+
+  @Nullable
+  private static Object getConstant(@Nullable PsiExpression expression) {
+    PsiLiteralExpression literal = ObjectUtils.tryCast(PsiUtil.skipParenthesizedExprDown(expression), PsiLiteralExpression.class);
+    return literal != null ? literal.getValue() : null;
+  }
+
+  private static final class ReplaceFix implements LocalQuickFix {
+    private final String myReplacement;
+
+    ReplaceFix(@NotNull String replacement) {
+      myReplacement = replacement;
+    }
+
+    @NotNull
+    @Override
+    public String getName() {
+      String text = myReplacement.length() > 60 ? "..." + myReplacement.substring(myReplacement.length() - 57) : myReplacement;
+      return "Replace with '" + text + "'";
+    }
+
+    @NotNull
+    @Override
+    public String getFamilyName() {
+      return "Replace with cheaper stream operation";
+    }
+
+    @Override
+    public void applyFix(@NotNull Project project, @NotNull ProblemDescriptor descriptor) {
+      PsiElement element = descriptor.getPsiElement();
+      if (!(element instanceof PsiExpression)) return;
+      PsiExpression replacement = JavaPsiFacade.getElementFactory(project).createExpressionFromText(myReplacement, element);
+      JavaCodeStyleManager.getInstance(project).shortenClassReferences(element.replace(replacement));
+    }
+  }
+}
@@ -0,0 +1,518 @@
+package org.examples.stream;
+
+import com.intellij.codeInsight.hint.HintManager;
+import com.intellij.codeInsight.intention.PsiElementBaseIntentionAction;
+import com.intellij.ide.highlighter.JavaFileType;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.command.WriteCommandAction;
+import com.intellij.openapi.editor.Editor;
+import com.intellij.openapi.editor.EditorFactory;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.ui.DialogWrapper;
+import com.intellij.psi.*;
+import com.intellij.psi.codeStyle.CodeStyleManager;
+import com.intellij.psi.codeStyle.JavaCodeStyleManager;
+import com.intellij.psi.codeStyle.VariableKind;
+import com.intellij.psi.tree.IElementType;
+import com.intellij.psi.util.InheritanceUtil;
+import com.intellij.psi.util.PsiTreeUtil;
+import com.intellij.psi.util.PsiUtil;
+import com.intellij.ui.EditorTextField;
+import com.intellij.ui.components.JBLabel;
+import com.intellij.util.ui.JBUI;
+import org.jetbrains.annotations.NonNls;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.swing.*;
+import java.awt.*;
+import java.util.*;
+import java.util.List;
+
+/**
+ * Replaces a stream pipeline with an equivalent loop, for hot paths where the pipeline allocations matter.
+ * <p>
+ * Supported are {@code Collection.stream()} and {@code Arrays.stream()} sources, {@code filter}, {@code map}, {@code mapToInt}
+ * and {@code flatMap} operations with lambda arguments and the {@code anyMatch}, {@code allMatch}, {@code noneMatch} and
+ * {@code collect(groupingBy(...))} terminal operations. Operations are recognized by resolving the calls, like the example
+ * popup does, so the primitive stream variants after {@code mapToInt} are supported too. Before the loop is inserted, both forms are shown side by side with their estimated allocations.
+ * <p>
+ * The intention is offered by the shape of the chain, checked by names; the loop is generated only when it's invoked.
+ */
+public class StreamToLoopIntention extends PsiElementBaseIntentionAction {
+  @NotNull
+  @Override
+  public String getFamilyName() {
+    return "Replace stream with loop";
+  }
+
+  @NotNull
+  @Override
+  public String getText() {
+    return getFamilyName();
+  }
+
+  @Override
+  public boolean isAvailable(@NotNull Project project, Editor editor, @NotNull PsiElement element) {
+    StreamChain chain = StreamChain.atIdentifier(element);
+    return chain != null && Conversion.hasSupportedShape(chain);
+  }
+
+  @Override
+  public boolean startInWriteAction() {
+    return false;
+  }
+
+  @Override
+  public void invoke(@NotNull Project project, Editor editor, @NotNull PsiElement element) {
+    StreamChain chain = StreamChain.atIdentifier(element);
+    Conversion conversion = chain != null ? Conversion.create(chain) : null;
+    if (conversion == null) {
+      if (editor != null) HintManager.getInstance().showErrorHint(editor, "The stream can't be replaced with an equivalent loop");
+      return;
+    }
+    if (!ApplicationManager.getApplication().isUnitTestMode() && !new PreviewDialog(project, conversion).showAndGet()) return;
+    WriteCommandAction.writeCommandAction(project, element.getContainingFile()).withName(getText()).run(() -> {
+      if (conversion.isValid()) conversion.apply();
+    });
+  }
+
+  /**
+   * Loop text generated for a chain, and where it goes.
+   */
+  static final class Conversion {
+    private static final Set<String> SUPPORTED_OPERATIONS = Set.of("filter", "map", "mapToInt", "flatMap");
+    private static final Set<String> SUPPORTED_TERMINALS = Set.of("anyMatch", "allMatch", "noneMatch", "collect");
+
+    private final StreamChain myChain;
+    private final PsiStatement myAnchor;
+    private final String myResult;
+    private final boolean myReplaceAnchor;
+    final String loopText;
+    final AllocationEstimate streamAllocations;
+    final AllocationEstimate loopAllocations;
+
+    private Conversion(@NotNull StreamChain chain, @NotNull PsiStatement anchor, @NotNull String result, boolean replaceAnchor,
+                       @NotNull String loopText, @NotNull AllocationEstimate streamAllocations, @NotNull AllocationEstimate loopAllocations) {
+      myChain = chain;
+      myAnchor = anchor;
+      myResult = result;
+      myReplaceAnchor = replaceAnchor;
+      this.loopText = loopText;
+      this.streamAllocations = streamAllocations;
+      this.loopAllocations = loopAllocations;
+    }
+
+    @Nullable
+    static Conversion create(@NotNull StreamChain chain) {
+      PsiMethodCallExpression terminal = chain.getTerminal();
+      PsiStatement anchor = terminal != null ? getAnchor(terminal) : null;
+      return anchor != null ? new Generator(chain, terminal, anchor).generate() : null;
+    }
+
+    /**
+     * @return true if the chain is built of the supported operations with lambda arguments. It's checked by names only, so it
+     * doesn't resolve or search anything: {@link #create} may still refuse the chain
+     */
+    static boolean hasSupportedShape(@NotNull StreamChain chain) {
+      PsiMethodCallExpression terminal = chain.getTerminal();
+      if (terminal == null || !SUPPORTED_TERMINALS.contains(StreamChain.getName(terminal)) || getAnchor(terminal) == null) return false;
+      PsiExpression source = chain.getSource();
+      if (!(source instanceof PsiMethodCallExpression) || !"stream".equals(StreamChain.getName((PsiMethodCallExpression)source))) {
+        return false;
+      }
+      List<PsiMethodCallExpression> operations = chain.getOperations();
+      for (int i = 0; i < operations.size() - 1; i++) {
+        PsiMethodCallExpression operation = operations.get(i);
+        if (!SUPPORTED_OPERATIONS.contains(StreamChain.getName(operation))) return false;
+        PsiLambdaExpression lambda = StreamChain.getLambdaArgument(operation);
+        if (lambda == null || StreamChain.getLambdaResult(lambda) == null) return false;
+      }
+      return true;
+    }
+
+    @NotNull
+    String getStreamText() {
+      return myAnchor.getText();
+    }
+
+    boolean isValid() {
+      return myAnchor.isValid() && myChain.getLastCall().isValid();
+    }
+
+    void apply() {
+      Project project = myAnchor.getProject();
+      PsiElementFactory factory = JavaPsiFacade.getElementFactory(project);
+      PsiCodeBlock block = factory.createCodeBlockFromText("{\n" + loopText + "\n}", myAnchor);
+      PsiElement parent = myAnchor.getParent();
+      List<PsiElement> added = new ArrayList<>();
+      for (PsiStatement statement : block.getStatements()) {
+        added.add(parent.addBefore(statement, myAnchor));
+      }
+      if (myReplaceAnchor) {
+        myAnchor.delete();
+      }
+      else {
+        myChain.getLastCall().replace(factory.createExpressionFromText(myResult, myAnchor));
+      }
+      for (PsiElement element : added) {
+        CodeStyleManager.getInstance(project).reformat(JavaCodeStyleManager.getInstance(project).shortenClassReferences(element));
+      }
+    }
+
+    /**
+     * @return statement before which the loop can be inserted, if the terminal call is always evaluated by it exactly once
+     */
+    @Nullable
+    private static PsiStatement getAnchor(@NotNull PsiMethodCallExpression terminal) {
+      PsiElement current = terminal;
+      while (!(current instanceof PsiStatement)) {
+        PsiElement parent = current.getParent();
+        if (parent == null || parent instanceof PsiLambdaExpression || parent instanceof PsiConditionalExpression ||
+            parent instanceof PsiSwitchExpression || parent instanceof PsiMember) {
+          return null;
+        }
+        if (parent instanceof PsiPolyadicExpression) {
+          IElementType operation = ((PsiPolyadicExpression)parent).getOperationTokenType();
+          if ((operation == JavaTokenType.ANDAND || operation == JavaTokenType.OROR) &&
+              ((PsiPolyadicExpression)parent).getOperands()[0] != current) {
+            return null;
+          }
+        }
+        current = parent;
+      }
+      boolean supported = current instanceof PsiDeclarationStatement || current instanceof PsiExpressionStatement ||
+                          current instanceof PsiReturnStatement || current instanceof PsiThrowStatement ||
+                          current instanceof PsiIfStatement;
+      return supported && current.getParent() instanceof PsiCodeBlock ? (PsiStatement)current : null;
+    }
+  }
+
+  /**
+   * Writes the loop text stage by stage, every stage opens the scope of the next one.
+   */
+  private static final class Generator {
+    private static final @NonNls String INDENT = "    ";
+
+    private final StreamChain myChain;
+    private final PsiMethodCallExpression myTerminal;
+    private final PsiStatement myAnchor;
+    private final JavaCodeStyleManager myCodeStyleManager;
+    private final Set<String> myUsedNames = new HashSet<>();
+    private final StringBuilder myLoop = new StringBuilder();
+    private int myDepth;
+    private int myLoops;
+    private AllocationEstimate myStreamAllocations = AllocationEstimate.NONE;
+    private AllocationEstimate myLoopAllocations = AllocationEstimate.NONE;
+
+    private String myElement;
+    private String myResult;
+    private boolean myReplaceAnchor;
+
+    Generator(@NotNull StreamChain chain, @NotNull PsiMethodCallExpression terminal, @NotNull PsiStatement anchor) {
+      myChain = chain;
+      myTerminal = terminal;
+      myAnchor = anchor;
+      myCodeStyleManager = JavaCodeStyleManager.getInstance(anchor.getProject());
+    }
+
+    @Nullable
+    Conversion generate() {
+      List<PsiMethodCallExpression> operations = myChain.getOperations();
+      if (!generateSource(myChain.getSource(), getParameterName(operations.get(0)))) return null;
+      // spliterator and pipeline head
+      myStreamAllocations = myStreamAllocations.plus(2, 0, 0);
+
+      for (int i = 0; i < operations.size() - 1; i++) {
+        if (!generateOperation(operations.get(i), getParameterName(operations.get(i + 1)))) return null;
+      }
+      return generateTerminal();
+    }
+
+    private boolean generateSource(@NotNull PsiExpression source, @Nullable String name) {
+      PsiExpression iterated = getIterated(source);
+      if (iterated == null) return false;
+      PsiType type = StreamChain.getElementType(source.getType());
+      if (type == null) return false;
+      // iterator of a collection, arrays are iterated by index
+      if (!(iterated.getType() instanceof PsiArrayType)) myLoopAllocations = myLoopAllocations.plus(1, 0, 0);
+      myElement = newName(name, type);
+      open("for (" + type.getCanonicalText() + " " + myElement + " : " + iterated.getText() + ")");
+      myLoops++;
+      return true;
+    }
+
+    private boolean generateOperation(@NotNull PsiMethodCallExpression operation, @Nullable String nextName) {
+      PsiLambdaExpression lambda = StreamChain.getLambdaArgument(operation);
+      PsiExpression result = lambda != null ? StreamChain.getLambdaResult(lambda) : null;
+      if (result == null) return false;
+      // stage object and its sink
+      myStreamAllocations = myStreamAllocations.plus(2 + getCaptures(lambda), 0, 0);
+
+      if (isStreamCall(operation, "filter")) {
+        open("if (" + substitute(lambda, result) + ")");
+        return true;
+      }
+      if (isStreamCall(operation, "map") ||
+          isStreamCall(operation, "mapToInt")) {
+        PsiType streamType = StreamChain.getElementType(operation.getType());
+        PsiType resultType = result.getType();
+        if (streamType == null || resultType == null || PsiType.NULL.equals(resultType)) return false;
+        if (resultType instanceof PsiPrimitiveType && !(streamType instanceof PsiPrimitiveType)) {
+          // map of an object stream boxes every mapped element, the loop keeps the boxed type: later stages may call methods
+          // on it or compare it by reference
+          myStreamAllocations = myStreamAllocations.plus(0, 1, 0);
+          myLoopAllocations = myLoopAllocations.plus(0, 1, 0);
+        }
+        String name = newName(nextName, streamType);
+        line(streamType.getCanonicalText() + " " + name + " = " + substitute(lambda, result) + ";");
+        myElement = name;
+        return true;
+      }
+      if (isStreamCall(operation, "flatMap")) {
+        PsiExpression iterated = result instanceof PsiMethodCallExpression ? getIterated(result) : null;
+        PsiType type = StreamChain.getElementType(operation.getType());
+        if (iterated == null || type == null) return false;
+        // inner pipeline, its spliterator and sink per element
+        myStreamAllocations = myStreamAllocations.plus(0, 3, 0);
+        if (!(iterated.getType() instanceof PsiArrayType)) myLoopAllocations = myLoopAllocations.plus(0, 1, 0);
+        String name = newName(nextName, type);
+        open("for (" + type.getCanonicalText() + " " + name + " : " + substitute(lambda, iterated) + ")");
+        myLoops++;
+        myElement = name;
+        return true;
+      }
+      return false;
+    }
+
+    @Nullable
+    private Conversion generateTerminal() {
+      // terminal operation and its sink
+      myStreamAllocations = myStreamAllocations.plus(2, 0, 0);
+      String label = myLoops > 1 ? getLabel() : null;
+      String breakStatement = label != null ? "break " + label + ";" : "break;";
+
+      if (isStreamCall(myTerminal, "anyMatch") ||
+          isStreamCall(myTerminal, "allMatch") ||
+          isStreamCall(myTerminal, "noneMatch")) {
+        PsiLambdaExpression lambda = StreamChain.getLambdaArgument(myTerminal);
+        PsiExpression predicate = lambda != null ? StreamChain.getLambdaResult(lambda) : null;
+        if (predicate == null) return null;
+        myStreamAllocations = myStreamAllocations.plus(getCaptures(lambda), 0, 0);
+        String name = StreamChain.getName(myTerminal);
+        boolean any = "anyMatch".equals(name);
+        boolean all = "allMatch".equals(name);
+        String result = getResultName(any ? "found" : all ? "allMatch" : "noneMatch");
+        String condition = all ? negate(predicate, substitute(lambda, predicate)) : substitute(lambda, predicate);
+        open("if (" + condition + ")");
+        line(result + " = " + any + ";");
+        line(breakStatement);
+        return finish("boolean", String.valueOf(!any), label);
+      }
+      if (isStreamCall(myTerminal, "collect")) {
+        PsiExpression collector = StreamChain.getSingleArgument(myTerminal);
+        if (!(collector instanceof PsiMethodCallExpression) ||
+            !StreamChain.isCall((PsiMethodCallExpression)collector, "java.util.stream.Collectors.groupingBy1")) {
+          return null;
+        }
+        PsiLambdaExpression lambda = StreamChain.getLambdaArgument((PsiMethodCallExpression)collector);
+        PsiExpression classifier = lambda != null ? StreamChain.getLambdaResult(lambda) : null;
+        PsiType mapType = myTerminal.getType();
+        if (classifier == null || mapType == null) return null;
+        // collector, its supplier, accumulator and finisher functions on top of the map; list and map node per key
+        myStreamAllocations = myStreamAllocations.plus(4 + getCaptures(lambda), 0, 2);
+        myLoopAllocations = myLoopAllocations.plus(1, 0, 2);
+        String result = getResultName("groups");
+        String key = newName("k", null);
+        line(result + ".computeIfAbsent(" + substitute(lambda, classifier) + ", " + key + " -> new java.util.ArrayList<>()).add(" +
+             myElement + ");");
+        return finish(mapType.getCanonicalText(), "new java.util.HashMap<>()", label);
+      }
+      return null;
+    }
+
+    @NotNull
+    private String getResultName(@NotNull String defaultName) {
+      PsiLocalVariable variable = getAssignedVariable();
+      myReplaceAnchor = variable != null;
+      myResult = variable != null ? variable.getName() : newName(defaultName, null);
+      return myResult;
+    }
+
+    @NotNull
+    private Conversion finish(@NotNull String resultType, @NotNull String initializer, @Nullable String label) {
+      while (myDepth > 0) close();
+      PsiLocalVariable variable = getAssignedVariable();
+      String declaration = (variable != null ? variable.getType().getCanonicalText() : resultType) + " " + myResult + " = " + initializer + ";\n";
+      String loop = label != null ? label + ":\n" + myLoop : myLoop.toString();
+      return new Conversion(myChain, myAnchor, myResult, myReplaceAnchor, declaration + loop, myStreamAllocations, myLoopAllocations);
+    }
+
+    /**
+     * @return variable initialized by the whole chain, e.g. {@code boolean found = list.stream().anyMatch(...);}
+     */
+    @Nullable
+    private PsiLocalVariable getAssignedVariable() {
+      if (!(myAnchor instanceof PsiDeclarationStatement)) return null;
+      PsiElement[] declared = ((PsiDeclarationStatement)myAnchor).getDeclaredElements();
+      if (declared.length != 1 || !(declared[0] instanceof PsiLocalVariable)) return null;
+      PsiLocalVariable variable = (PsiLocalVariable)declared[0];
+      if (variable.hasModifierProperty(PsiModifier.FINAL)) return null;
+      return PsiUtil.skipParenthesizedExprDown(variable.getInitializer()) == myTerminal ? variable : null;
+    }
+
+    /**
+     * @return expression iterated by the loop replacing the stream source, {@code list} for {@code list.stream()} and
+     * {@code array} for {@code Arrays.stream(array)}
+     */
+    @Nullable
+    private static PsiExpression getIterated(@NotNull PsiExpression source) {
+      if (!(source instanceof PsiMethodCallExpression)) return null;
+      PsiMethodCallExpression call = (PsiMethodCallExpression)source;
+      PsiMethod method = call.resolveMethod();
+      if (method == null) return null;
+      String name = method.getName();
+      PsiExpression[] arguments = call.getArgumentList().getExpressions();
+      if ("stream".equals(name) && arguments.length == 0 &&
+          InheritanceUtil.isInheritor(method.getContainingClass(), false, CommonClassNames.JAVA_UTIL_COLLECTION)) {
+        return call.getMethodExpression().getQualifierExpression();
+      }
+      PsiClass psiClass = method.getContainingClass();
+      if ("stream".equals(name) && arguments.length == 1 && psiClass != null &&
+          CommonClassNames.JAVA_UTIL_ARRAYS.equals(psiClass.getQualifiedName())) {
+        return arguments[0];
+      }
+      return null;
+    }
+
+    /**
+     * @return true if the call is the single argument operation of any of the stream types, e.g. {@code IntStream.anyMatch}
+     * after {@code mapToInt}
+     */
+    private static boolean isStreamCall(@NotNull PsiMethodCallExpression call, @NotNull @NonNls String name) {
+      if (!name.equals(StreamChain.getName(call)) || call.getArgumentList().getExpressionCount() != 1) return false;
+      String className = StreamChain.getClassName(call);
+      return StreamChain.STREAM.equals(className) || StreamChain.INT_STREAM.equals(className) ||
+             StreamChain.LONG_STREAM.equals(className) || StreamChain.DOUBLE_STREAM.equals(className);
+    }
+
+    @Nullable
+    private static String getParameterName(@NotNull PsiMethodCallExpression operation) {
+      PsiLambdaExpression lambda = StreamChain.getLambdaArgument(operation);
+      return lambda != null ? lambda.getParameterList().getParameters()[0].getName() : null;
+    }
+
+    /**
+     * @return 1 if a new lambda object is created on each evaluation, non-capturing lambdas are created once
+     */
+    private static int getCaptures(@NotNull PsiLambdaExpression lambda) {
+      return isCapturing(lambda) ? 1 : 0;
+    }
+
+    static boolean isCapturing(@NotNull PsiLambdaExpression lambda) {
+      if (PsiTreeUtil.findChildOfAnyType(lambda, PsiThisExpression.class, PsiSuperExpression.class) != null) return true;
+      for (PsiReferenceExpression reference : PsiTreeUtil.findChildrenOfType(lambda, PsiReferenceExpression.class)) {
+        PsiElement target = reference.resolve();
+        if (target instanceof PsiVariable && !(target instanceof PsiField) && !PsiTreeUtil.isAncestor(lambda, target, true)) {
+          return true;
+        }
+        if (target instanceof PsiMember && !((PsiMember)target).hasModifierProperty(PsiModifier.STATIC) &&
+            reference.getQualifierExpression() == null && !(target instanceof PsiClass)) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    /**
+     * @return text of the part of the lambda body with the lambda parameter replaced with the current element variable
+     */
+    @NotNull
+    private String substitute(@NotNull PsiLambdaExpression lambda, @NotNull PsiElement part) {
+      PsiParameter parameter = lambda.getParameterList().getParameters()[0];
+      return myElement.equals(parameter.getName()) ? part.getText() : StreamChain.replaceReferences(part, parameter, myElement);
+    }
+
+    @NotNull
+    private static String negate(@NotNull PsiExpression expression, @NotNull String text) {
+      boolean simple = expression instanceof PsiMethodCallExpression || expression instanceof PsiReferenceExpression;
+      return simple ? "!" + text : "!(" + text + ")";
+    }
+
+    @NotNull
+    private String newName(@Nullable String preferred, @Nullable PsiType type) {
+      String base = preferred;
+      if (base == null && type != null) {
+        String[] names = myCodeStyleManager.suggestVariableName(VariableKind.LOCAL_VARIABLE, null, null, type).names;
+        base = names.length > 0 ? names[0] : null;
+      }
+      if (base == null) base = "e";
+      String name = myCodeStyleManager.suggestUniqueVariableName(base, myAnchor, true);
+      for (int i = 1; !myUsedNames.add(name); i++) {
+        name = myCodeStyleManager.suggestUniqueVariableName(base + i, myAnchor, true);
+      }
+      return name;
+    }
+
+    @NotNull
+    private String getLabel() {
+      Set<String> labels = new HashSet<>();
+      for (PsiLabeledStatement statement = PsiTreeUtil.getParentOfType(myAnchor, PsiLabeledStatement.class);
+           statement != null;
+           statement = PsiTreeUtil.getParentOfType(statement, PsiLabeledStatement.class)) {
+        labels.add(statement.getName());
+      }
+      String label = "outer";
+      for (int i = 1; labels.contains(label); i++) label = "outer" + i;
+      return label;
+    }
+
+    private void open(@NotNull String header) {
+      line(header + " {");
+      myDepth++;
+    }
+
+    private void close() {
+      myDepth--;
+      line("}");
+    }
+
+    private void line(@NotNull String text) {
+      for (int i = 0; i < myDepth; i++) myLoop.append(INDENT);
+      myLoop.append(text).append('\n');
+    }
+  }
+
+  private static final class PreviewDialog extends DialogWrapper {
+    private final Project myProject;
+    private final Conversion myConversion;
+
+    PreviewDialog(@NotNull Project project, @NotNull Conversion conversion) {
+      super(project);
+      myProject = project;
+      myConversion = conversion;
+      setTitle("Replace Stream with Loop");
+      setOKButtonText("Replace");
+      init();
+    }
+
+    @Override
+    protected JComponent createCenterPanel() {
+      JPanel panel = new JPanel(new GridLayout(1, 2, JBUI.scale(10), 0));
+      panel.add(createSide("Stream", myConversion.getStreamText(), myConversion.streamAllocations));
+      panel.add(createSide("Loop", myConversion.loopText, myConversion.loopAllocations));
+      return panel;
+    }
+
+    @NotNull
+    private JComponent createSide(@NotNull String title, @NotNull String text, @NotNull AllocationEstimate allocations) {
+      EditorTextField code = new EditorTextField(EditorFactory.getInstance().createDocument(text), myProject, JavaFileType.INSTANCE, true, false);
+      code.setPreferredSize(JBUI.size(400, 250));
+      JPanel side = new JPanel(new BorderLayout(0, JBUI.scale(4)));
+      side.add(new JBLabel(title), BorderLayout.NORTH);
+      side.add(code, BorderLayout.CENTER);
+      side.add(new JBLabel("Estimated allocations: " + allocations + " (n elements, k keys)"), BorderLayout.SOUTH);
+      return side;
+    }
+  }
+}
@@ -0,0 +1,162 @@
+package org.examples.stream;
+
+import com.intellij.lang.documentation.DocumentationMarkup;
+import com.intellij.openapi.util.text.StringUtil;
+import org.jetbrains.annotations.NonNls;
+import org.jetbrains.annotations.Nullable;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+
+/**
+ * Compares {@link DocumentationDecorator} with the chain of replacements {@link DocumentationComponent} used before it.
+ */
+public class DocumentationDecoratorTest {
+  private static final @NonNls String LOCATION = "<icon src='AllIcons.Nodes.PpLibFolder'>&nbsp;rt.jar";
+  private static final Pattern EXTERNAL_LINK_PATTERN = Pattern.compile("(<a\\s*href=[\"']http[^>]*>)([^>]*)(</a>)");
+  private static final @NonNls String EXTERNAL_LINK_REPLACEMENT = "$1$2<icon src='AllIcons.Ide.External_link_arrow'>$3";
+  private static final @NonNls List<String> FRAGMENTS = Arrays.asList(
+    "</html>", "</HTML>", "</ht", "ml>", "</body>", "</bo", "dy>", "<body>", "<BODY>", "<html>", "</head>", "</style>",
+    DocumentationMarkup.SECTIONS_START, DocumentationMarkup.SECTIONS_END, DocumentationMarkup.CONTENT_START,
+    DocumentationMarkup.CONTENT_END, DocumentationMarkup.DEFINITION_START, DocumentationMarkup.DEFINITION_END,
+    "<div class='con", "tent'>", "class='content'", "<p>", "<p", ">", " ", "\n", "<ul>", "<ol>", "<h2>", "<h>", "<pre>",
+    "<a href='http://example.org'>", "<a  href=\"https://example.org\">", "<a href='#local'>", "<a", " href='http", "</a>",
+    "</a", "text", "c", "<");
+
+  @Test
+  public void bundledExamples() throws IOException {
+    for (String path : new TreeSet<>(CodeExamples.classToFileMap.values())) {
+      String example;
+      try (InputStream stream = DocumentationDecoratorTest.class.getResourceAsStream(path)) {
+        assertNotNull(path, stream);
+        example = new String(stream.readAllBytes(), StandardCharsets.UTF_8);
+      }
+      assertDecoratedAsBefore(example);
+    }
+  }
+
+  @Test
+  public void edgeCases() {
+    List<String> texts = Arrays.asList(
+      "",
+      "text",
+      "<html><body><p>text</body></html>",
+      "<HTML><BODY>text</BODY></HTML>",
+      "<html><head><style>p {}</style></head>text</html>",
+      "<style>p {}</style>text",
+      "<html>text",
+      "text<body>",
+      // cascading removals: dropping a tag joins the text around it
+      "</bo</html>dy>text",
+      "<bo</html>dy>text",
+      DocumentationMarkup.SECTIONS_START + "</body>" + DocumentationMarkup.SECTIONS_END + "text",
+      DocumentationMarkup.SECTIONS_START + "<p></html>" + DocumentationMarkup.SECTIONS_END + "text",
+      DocumentationMarkup.DEFINITION_START + "int x" + DocumentationMarkup.DEFINITION_END +
+      DocumentationMarkup.SECTIONS_START + "</body>" + DocumentationMarkup.SECTIONS_END,
+      "<div class='con</body>tent'>text</div>",
+      "<a href='http://example.org'>te</body>xt</a>",
+      "<a href='http://example.org'>t<p> <p</a>",
+      "<a href='http://example.org<p> <ul>t</a>",
+      // paragraphs before blocks
+      "<p><p><p><ul>",
+      "<p>\n\t<h1>header</h1>",
+      "<p> <ol><li>item</ol>",
+      "<p><pre>code</pre>",
+      "<p><h>text",
+      "<p>",
+      // definition and content
+      DocumentationMarkup.DEFINITION_START + "int x" + DocumentationMarkup.DEFINITION_END,
+      DocumentationMarkup.DEFINITION_START.toUpperCase() + DocumentationMarkup.DEFINITION_START + "int x",
+      DocumentationMarkup.DEFINITION_START + "int x" + DocumentationMarkup.DEFINITION_END +
+      DocumentationMarkup.CONTENT_START + "text" + DocumentationMarkup.CONTENT_END,
+      DocumentationMarkup.DEFINITION_START + "int x" + DocumentationMarkup.DEFINITION_END + "<div class='content-only'>",
+      DocumentationMarkup.CONTENT_START + "class='content'" + DocumentationMarkup.CONTENT_END,
+      // links
+      "<a  href=\"https://example.org\">link</a> <a href='#local'>local</a> <a href='http://example.org'>a<b</a>",
+      "<a href='http://example.org'>link</a",
+      "<a href='http://example.org'>"
+    );
+    for (String text : texts) {
+      assertDecoratedAsBefore(text);
+    }
+  }
+
+  @Test
+  public void randomFragments() {
+    Random random = new Random(42);
+    for (int i = 0; i < 20000; i++) {
+      StringBuilder text = new StringBuilder();
+      int count = random.nextInt(12);
+      for (int j = 0; j < count; j++) {
+        text.append(FRAGMENTS.get(random.nextInt(FRAGMENTS.size())));
+      }
+      assertDecoratedAsBefore(text.toString());
+    }
+  }
+
+  private static void assertDecoratedAsBefore(String text) {
+    DocumentationDecorator decorator = new DocumentationDecorator();
+    for (String location : Arrays.asList(null, LOCATION)) {
+      String expected = decorateAsBefore(text, location);
+      assertEquals(text, expected, decorator.decorate(text, location));
+      assertEquals(text, expected, decorator.decorate(decorator.decorateInAdvance(text), location));
+    }
+  }
+
+  /**
+   * {@code DocumentationComponent.decorate} before {@link DocumentationDecorator} replaced it
+   */
+  private static String decorateAsBefore(String text, @Nullable String location) {
+    text = StringUtil.replaceIgnoreCase(text, "</html>", "");
+    text = StringUtil.replaceIgnoreCase(text, "</body>", "");
+    text = StringUtil.replaceIgnoreCase(text, DocumentationMarkup.SECTIONS_START + DocumentationMarkup.SECTIONS_END, "");
+    text = StringUtil.replaceIgnoreCase(text, DocumentationMarkup.SECTIONS_START + "<p>" + DocumentationMarkup.SECTIONS_END, "");
+    boolean hasContent = text.contains(DocumentationMarkup.CONTENT_START);
+    if (!hasContent) {
+      if (!text.contains(DocumentationMarkup.DEFINITION_START)) {
+        int bodyStart = findContentStart(text);
+        if (bodyStart > 0) {
+          text = text.substring(0, bodyStart) +
+                 DocumentationMarkup.CONTENT_START +
+                 text.substring(bodyStart) +
+                 DocumentationMarkup.CONTENT_END;
+        }
+        else {
+          text = DocumentationMarkup.CONTENT_START + text + DocumentationMarkup.CONTENT_END;
+        }
+        hasContent = true;
+      } else if (!text.contains(DocumentationMarkup.SECTIONS_START)){
+        text = StringUtil.replaceIgnoreCase(text, DocumentationMarkup.DEFINITION_START, "<div class='definition-only'><pre>");
+      }
+    }
+    if (!text.contains(DocumentationMarkup.DEFINITION_START)) {
+      text = text.replace("class='content'", "class='content-only'");
+    }
+    if (location != null) {
+      text = text + "<div class='" + (hasContent ? "bottom" : "bottom-no-content") + "'>" + location + "</div>";
+    }
+    text = text.replaceAll("<p>\\s*(<(?:[uo]l|h\\d|p))", "$1");
+    return EXTERNAL_LINK_PATTERN.matcher(text).replaceAll(EXTERNAL_LINK_REPLACEMENT);
+  }
+
+  private static int findContentStart(String text) {
+    int index = StringUtil.indexOfIgnoreCase(text, "<body>", 0);
+    if (index >= 0) return index + 6;
+    index = StringUtil.indexOfIgnoreCase(text, "</head>", 0);
+    if (index >= 0) return index + 7;
+    index = StringUtil.indexOfIgnoreCase(text, "</style>", 0);
+    if (index >= 0) return index + 8;
+    index = StringUtil.indexOfIgnoreCase(text, "<html>", 0);
+    if (index >= 0) return index + 6;
+    return -1;
+  }
+}
@@ -0,0 +1,118 @@
+package org.examples.stream;
+
+import com.intellij.openapi.ui.popup.JBPopup;
+import org.junit.After;
+import org.junit.Test;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+/**
+ * Hammers the {@link DocumentationManager.State} transitions from many threads, the way popup show, cancel and fetches race
+ * between EDT and the pooled threads.
+ */
+public class DocumentationManagerStateTest {
+  private static final int THREADS = 8;
+  private static final int ROUNDS = 2000;
+
+  private final ExecutorService myExecutor = Executors.newFixedThreadPool(THREADS);
+
+  @After
+  public void tearDown() throws InterruptedException {
+    myExecutor.shutdownNow();
+    assertTrue(myExecutor.awaitTermination(10, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void precalculatedDocumentationIsTakenOnce() throws Exception {
+    for (int round = 0; round < ROUNDS; round++) {
+      AtomicReference<DocumentationManager.State> state =
+        new AtomicReference<>(DocumentationManager.State.EMPTY.withPrecalculatedDocumentation("doc " + round));
+      AtomicInteger taken = new AtomicInteger();
+      runConcurrently(thread -> {
+        if (thread % 2 == 0) {
+          if (DocumentationManager.State.takePrecalculatedDocumentation(state) != null) taken.incrementAndGet();
+        }
+        else {
+          // show and cancel of the popup, which must neither lose nor restore the documentation
+          state.updateAndGet(current -> current.withDocInfoHint(new WeakReference<>(null)).withCloseOnSneeze(true));
+          state.updateAndGet(current -> current.withCloseOnSneeze(false).withEditor(null));
+        }
+      });
+      assertEquals("round " + round, 1, taken.get());
+      assertNull(state.get().precalculatedDocumentation);
+    }
+  }
+
+  @Test
+  public void documentationIsNeverTakenTwice() throws Exception {
+    AtomicReference<DocumentationManager.State> state = new AtomicReference<>(DocumentationManager.State.EMPTY);
+    Set<String> taken = ConcurrentHashMap.newKeySet();
+    AtomicInteger duplicates = new AtomicInteger();
+    runConcurrently(thread -> {
+      for (int i = 0; i < ROUNDS; i++) {
+        if (thread % 2 == 0) {
+          String documentation = "doc " + thread + " " + i;
+          state.updateAndGet(current -> current.withPrecalculatedDocumentation(documentation));
+        }
+        else {
+          String documentation = DocumentationManager.State.takePrecalculatedDocumentation(state);
+          if (documentation != null && !taken.add(documentation)) duplicates.incrementAndGet();
+        }
+      }
+    });
+    assertEquals(0, duplicates.get());
+  }
+
+  @Test
+  public void forgettingHiddenHintKeepsNewerOne() throws Exception {
+    for (int round = 0; round < ROUNDS; round++) {
+      WeakReference<JBPopup> hidden = new WeakReference<>(null);
+      WeakReference<JBPopup> newer = new WeakReference<>(null);
+      AtomicReference<DocumentationManager.State> state =
+        new AtomicReference<>(DocumentationManager.State.EMPTY.withDocInfoHint(hidden));
+      runConcurrently(thread -> {
+        if (thread == 0) {
+          DocumentationManager.State.forgetDocInfoHint(state, hidden);
+        }
+        else if (thread == 1) {
+          state.updateAndGet(current -> current.withDocInfoHint(newer));
+        }
+        else {
+          state.updateAndGet(current -> current.withCloseOnSneeze(thread % 2 == 0));
+        }
+      });
+      assertSame("round " + round, newer, state.get().docInfoHintRef);
+    }
+  }
+
+  private interface ThreadBody {
+    void run(int thread) throws Exception;
+  }
+
+  /**
+   * Starts the body in every thread at once and waits for all of them
+   */
+  private void runConcurrently(ThreadBody body) throws Exception {
+    CyclicBarrier start = new CyclicBarrier(THREADS);
+    List<Future<?>> futures = new ArrayList<>();
+    for (int thread = 0; thread < THREADS; thread++) {
+      int index = thread;
+      futures.add(myExecutor.submit(() -> {
+        start.await();
+        body.run(index);
+        return null;
+      }));
+    }
+    for (Future<?> future : futures) {
+      future.get(30, TimeUnit.SECONDS);
+    }
+  }
+}